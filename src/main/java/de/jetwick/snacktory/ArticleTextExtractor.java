@@ -4,17 +4,26 @@ import static de.jetwick.snacktory.utils.DateUtils.*;
 import static de.jetwick.snacktory.utils.Utf8Utils.*;
 
 import de.jetwick.snacktory.metadata.MetadataExtractor;
+import de.jetwick.snacktory.metadata.MetadataIndex;
 import de.jetwick.snacktory.output.OutputFormatter;
 import de.jetwick.snacktory.output.PlainTextOutputFormatter;
 import de.jetwick.snacktory.utils.SHelper;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
 import org.jsoup.select.Elements;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
 
 /**
@@ -36,6 +45,31 @@ public class ArticleTextExtractor {
 
     private BestNodeFinder bestNodeFinder = new BestNodeFinder();
     private MetadataExtractor metadataExtractor = new MetadataExtractor();
+    private ContentPathCache contentPathCache;
+
+    /**
+     * @param model weights the candidates of the best node, the default is
+     * LinearScoringModel.DEFAULT
+     */
+    public void setScoringModel(ScoringModel model) {
+        bestNodeFinder = new BestNodeFinder(model);
+    }
+
+    public ScoringModel getScoringModel() {
+        return bestNodeFinder.getScoringModel();
+    }
+
+    /**
+     * @param cache learns where the best node of the pages of a domain is,
+     * null to always search the whole document
+     */
+    public void setContentPathCache(ContentPathCache cache) {
+        this.contentPathCache = cache;
+    }
+
+    public ContentPathCache getContentPathCache() {
+        return contentPathCache;
+    }
 
     public JResult extractContent(String html) throws Exception {
         return extractContent(html, -1);
@@ -57,24 +91,154 @@ public class ArticleTextExtractor {
         return extractContent(res, html, DEFAULT_FORMATTER, true, maxContentSize);
     }
 
+    public JResult extractContent(String html, ExtractionOptions options) throws Exception {
+        return extractContent(new JResult(), html, options, -1);
+    }
+
+    public JResult extractContent(JResult res, String html, ExtractionOptions options, int maxContentSize) throws Exception {
+        return extractContent(res, html, DEFAULT_FORMATTER, options, maxContentSize);
+    }
+
     public JResult extractContent(JResult res, String html, OutputFormatter formatter,
                                   Boolean extractimages, int maxContentSize) throws Exception {
+        return extractContent(res, html, formatter, toOptions(extractimages), maxContentSize);
+    }
+
+    public JResult extractContent(JResult res, String html, OutputFormatter formatter,
+                                  ExtractionOptions options, int maxContentSize) throws Exception {
+        return extractContent(res, html, Collections.singletonList(formatter), options, maxContentSize);
+    }
+
+    /**
+     * Formats the best node with each of the formatters, the page is parsed,
+     * scored and its metadata extracted once for all of them. getText is the
+     * text of the first formatter, getTexts those of all. The links are taken
+     * from what the first formatter left over.
+     */
+    public JResult extractContent(JResult res, String html, List<OutputFormatter> formatters,
+                                  ExtractionOptions options, int maxContentSize) throws Exception {
         if (html.isEmpty())
             throw new IllegalArgumentException("html string is empty!?");
 
+        // scripts and styles are dropped before parsing, only the retry needs them
+        String filtered = HtmlPreFilter.filter(html);
         // http://jsoup.org/cookbook/extracting-data/selector-syntax
-        return extractContent(res, Jsoup.parse(html), formatter, extractimages, maxContentSize);
+        return extractContent(res, Jsoup.parse(filtered), filtered == html ? null : html, formatters,
+                options, maxContentSize, ExtractionBudget.start(options));
+    }
+
+    /**
+     * @param charsetHint the charset of the content type header or null. A
+     * charset declared in the page itself takes precedence.
+     */
+    public JResult extractContent(byte[] html, String charsetHint) throws Exception {
+        return extractContent(new JResult(), ByteBuffer.wrap(html), charsetHint, DEFAULT_FORMATTER,
+                ExtractionOptions.ALL, -1);
+    }
+
+    public JResult extractContent(ByteBuffer html, String charsetHint) throws Exception {
+        return extractContent(new JResult(), html, charsetHint, DEFAULT_FORMATTER, ExtractionOptions.ALL, -1);
+    }
+
+    /**
+     * Reads the complete stream and closes it.
+     */
+    public JResult extractContent(InputStream html, String charsetHint) throws Exception {
+        return extractContent(new JResult(), html, charsetHint, DEFAULT_FORMATTER, ExtractionOptions.ALL, -1);
+    }
+
+    public JResult extractContent(JResult res, InputStream html, String charsetHint, OutputFormatter formatter,
+                                  ExtractionOptions options, int maxContentSize) throws Exception {
+        ByteBuffer bytes = new Converter(res.getUrl()).streamToBytes(html, Integer.MAX_VALUE, Converter.K2 * 8);
+        return extractContent(res, bytes, charsetHint, formatter, options, maxContentSize);
+    }
+
+    public JResult extractContent(JResult res, ByteBuffer html, String charsetHint,
+                                  ExtractionOptions options, int maxContentSize) throws Exception {
+        return extractContent(res, html, charsetHint, DEFAULT_FORMATTER, options, maxContentSize);
+    }
+
+    /**
+     * Decodes the bytes straight into the string jsoup parses, there is no
+     * intermediate copy of the page.
+     */
+    public JResult extractContent(JResult res, ByteBuffer html, String charsetHint, OutputFormatter formatter,
+                                  ExtractionOptions options, int maxContentSize) throws Exception {
+        if (!html.hasRemaining())
+            throw new IllegalArgumentException("html bytes are empty!?");
+
+        return extractContent(res, new Converter(res.getUrl()).bytesToString(html, charsetHint), formatter,
+                options, maxContentSize);
     }
 
     public JResult extractContent(JResult res, Document doc, OutputFormatter formatter,
                                   Boolean extractimages, int maxContentSize) throws Exception {
-        Document origDoc = doc.clone();
-        JResult result = extractContent(res, doc, formatter, extractimages, maxContentSize, true);
+        return extractContent(res, doc, formatter, toOptions(extractimages), maxContentSize);
+    }
+
+    public JResult extractContent(JResult res, Document doc, OutputFormatter formatter,
+                                  ExtractionOptions options, int maxContentSize) throws Exception {
+        return extractContent(res, doc, Collections.singletonList(formatter), options, maxContentSize);
+    }
+
+    /**
+     * Like extractContent with a list of formatters for a html string.
+     */
+    public JResult extractContent(JResult res, Document doc, List<OutputFormatter> formatters,
+                                  ExtractionOptions options, int maxContentSize) throws Exception {
+        return extractContent(res, doc, null, formatters, options, maxContentSize, ExtractionBudget.start(options));
+    }
+
+    /**
+     * Like extractContent with a list of formatters for a document but with a
+     * budget which was started before, e.g. one which is already expired.
+     */
+    JResult extractContent(JResult res, Document doc, List<OutputFormatter> formatters, ExtractionOptions options,
+                           int maxContentSize, ExtractionBudget budget) throws Exception {
+        return extractContent(res, doc, null, formatters, options, maxContentSize, budget);
+    }
+
+    /**
+     * @param unfilteredHtml the html of doc before HtmlPreFilter removed the
+     * scripts and styles, null if doc is complete
+     * @param budget shared by both passes
+     */
+    private JResult extractContent(JResult res, Document doc, String unfilteredHtml, List<OutputFormatter> formatters,
+                                   ExtractionOptions options, int maxContentSize, ExtractionBudget budget)
+            throws Exception {
+        JResult result = extractContent(res, doc, formatters, options, maxContentSize, true, budget);
         //System.out.println("result.getText().length()="+result.getText().length());
-        if (result.getText().length() == 0) {
-            result = extractContent(res, origDoc, formatter, extractimages, maxContentSize, false);
+        if (!options.has(ExtractionOptions.TEXT) || !result.getTexts().contains(""))
+            return result;
+
+        if (budget.isExpired()) {
+            result.addSkippedStages(EnumSet.of(ExtractionStage.RETRY));
+            return result;
+        }
+
+        // only the formatters without text try again, as if each had extracted on its own
+        List<String> texts = new ArrayList<String>(result.getTexts());
+        List<OutputFormatter> retried = new ArrayList<OutputFormatter>();
+        for (int i = 0; i < formatters.size(); i++) {
+            if (texts.get(i).isEmpty())
+                retried.add(formatters.get(i));
+        }
+        // the document is not modified, so it only has to be parsed again if it was filtered
+        Document fullDoc = unfilteredHtml == null ? doc : Jsoup.parse(unfilteredHtml);
+        // the result belongs to the first formatter, the others retry into a result of their own
+        boolean first = texts.get(0).isEmpty();
+        JResult retry = extractContent(first ? res : new JResult().setUrl(res.getUrl()), fullDoc, retried,
+                options, maxContentSize, false, budget);
+        int next = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            if (texts.get(i).isEmpty())
+                texts.set(i, retry.getTexts().get(next++));
         }
-        return result;
+        return result.setTexts(texts);
+    }
+
+    private static ExtractionOptions toOptions(Boolean extractimages) {
+        return extractimages ? ExtractionOptions.ALL : ExtractionOptions.ALL_WITHOUT_IMAGES;
     }
 
     private static String getSnippet(String data){
@@ -84,23 +248,56 @@ public class ArticleTextExtractor {
             return data.substring(0, 50);
     }
 
-    // main workhorse
     public JResult extractContent(JResult res, Document doc, OutputFormatter formatter,
                                   Boolean extractimages, int maxContentSize, boolean cleanScripts) throws Exception {
+        return extractContent(res, doc, formatter, toOptions(extractimages), maxContentSize, cleanScripts);
+    }
+
+    public JResult extractContent(JResult res, Document doc, OutputFormatter formatter,
+                                  ExtractionOptions options, int maxContentSize, boolean cleanScripts) throws Exception {
+        return extractContent(res, doc, Collections.singletonList(formatter), options, maxContentSize, cleanScripts,
+                ExtractionBudget.start(options));
+    }
+
+    // main workhorse
+    private JResult extractContent(JResult res, Document doc, List<OutputFormatter> formatters, ExtractionOptions options,
+                                   int maxContentSize, boolean cleanScripts, ExtractionBudget budget) throws Exception {
         if (doc == null)
             throw new NullPointerException("missing document");
 
-        // get the easy stuff
-        res.setTitle(metadataExtractor.extractTitle(doc));
-        res.setDescription(metadataExtractor.extractDescription(doc));
-        res.setCanonicalUrl(metadataExtractor.extractCanonicalUrl(doc));
-        res.setType(metadataExtractor.extractType(doc));
-        res.setSitename(metadataExtractor.extractSitename(doc));
-        res.setLanguage(metadataExtractor.extractLanguage(doc));
+        // scores and removals of this pass, the document itself stays untouched
+        ExtractionContext ctx = new ExtractionContext(budget);
+        if (options.isTraced()) {
+            ctx.setTrace(new ExtractionTrace());
+            res.setTrace(ctx.getTrace());
+        }
+        // one traversal for all the meta, link and title lookups below
+        MetadataIndex meta = options.needsMetadata() ? new MetadataIndex(doc) : null;
+
+        // get the easy stuff, the title is also needed to decide if the text is worth keeping
+        if (options.has(ExtractionOptions.TITLE | ExtractionOptions.TEXT))
+            res.setTitle(metadataExtractor.extractTitle(meta));
+        if (options.has(ExtractionOptions.DESCRIPTION | ExtractionOptions.AUTHOR_DESCRIPTION))
+            res.setDescription(metadataExtractor.extractDescription(meta));
+        if (options.has(ExtractionOptions.CANONICAL_URL))
+            res.setCanonicalUrl(metadataExtractor.extractCanonicalUrl(meta));
+        if (options.has(ExtractionOptions.TYPE))
+            res.setType(metadataExtractor.extractType(meta));
+        if (options.has(ExtractionOptions.SITENAME))
+            res.setSitename(metadataExtractor.extractSitename(meta));
+        if (options.has(ExtractionOptions.LANGUAGE))
+            res.setLanguage(metadataExtractor.extractLanguage(meta));
 
         // get author information
-        res.setAuthorName(metadataExtractor.extractAuthorName(doc));
-        res.setAuthorDescription(metadataExtractor.extractAuthorDescription(doc, res.getAuthorName()));
+        if (options.has(ExtractionOptions.AUTHOR_NAME | ExtractionOptions.AUTHOR_DESCRIPTION)) {
+            res.setAuthorName(metadataExtractor.extractAuthorName(meta, ctx));
+            if (options.has(ExtractionOptions.AUTHOR_DESCRIPTION)) {
+                if (budget.isExpired())
+                    ctx.skip(ExtractionStage.AUTHOR_DESCRIPTION);
+                else
+                    res.setAuthorDescription(metadataExtractor.extractAuthorDescription(doc, res.getAuthorName(), ctx));
+            }
+        }
 
         // add extra selection gravity to any element containing author name
         // wasn't useful in the case I implemented it for, but might be later
@@ -113,72 +310,38 @@ public class ArticleTextExtractor {
         */
 
         // get date from document, if not present, extract from URL if possible
-        Date docdate = metadataExtractor.extractDate(doc);
-        if (docdate == null) {
-            String dateStr = SHelper.estimateDate(res.getUrl());
-            docdate = parseDate(dateStr);
-            res.setDate(docdate);
-        } else {
-            res.setDate(docdate);
-        }
-
-        // now remove the clutter
-        if (cleanScripts) {
-            removeScriptsAndStyles(doc);
-        }
-
-        Element bestMatchElement = bestNodeFinder.find(doc);
-
-        // do extraction from the best element
-        if (bestMatchElement != null) {
-            if (extractimages) {
-                List<ImageResult> images = new ArrayList<ImageResult>();
-                Element imgEl = ImageExtractor.extractImages(bestMatchElement, images);
-                if (imgEl != null) {
-                    res.setImageUrl(SHelper.replaceSpaces(imgEl.attr("src")));
-                    // TODO remove parent container of image if it is contained in bestMatchElement
-                    // to avoid image subtitles flooding in
-
-                    res.setImages(images);
-                }
-            }
-
-            // clean before grabbing text
-            String text = formatter.format(bestMatchElement);
-            // this fails for short facebook post and probably tweets: text.length() > res.getDescription().length()
-            if (text.length() > res.getTitle().length()) {
-                if (maxContentSize > 0){
-                    if (text.length() > maxContentSize){
-                        text = utf8truncate(text, maxContentSize);
-                    }
-                }
-                res.setText(text);
+        if (options.has(ExtractionOptions.DATE)) {
+            Date docdate = metadataExtractor.extractDate(meta);
+            if (docdate == null) {
+                String dateStr = SHelper.estimateDate(res.getUrl());
+                docdate = parseDate(dateStr);
+                res.setDate(docdate);
+            } else {
+                res.setDate(docdate);
             }
+        }
 
-            // extract links from the same best element
-            String fullhtml = bestMatchElement.toString();
-            Elements children = bestMatchElement.select("a[href]"); // a with href = link
-            String linkstr = "";
-            Integer linkpos = 0;
-            Integer lastlinkpos = 0;
-            for (Element child : children) {
-                linkstr = child.toString();
-                linkpos = fullhtml.indexOf(linkstr, lastlinkpos);
-                res.addLink(child.attr("abs:href"), child.text(), linkpos);
-                lastlinkpos = linkpos;
-            }
+        // without a best node none of the formatters has a text
+        if (options.has(ExtractionOptions.TEXT))
+            res.setTexts(Collections.nCopies(formatters.size(), ""));
+        if (options.needsBestNode()) {
+            extractFromBestNode(res, doc, ctx, formatters, options, maxContentSize, cleanScripts);
         }
 
-        if (extractimages) {
+        if (options.has(ExtractionOptions.IMAGES)) {
             if (res.getImageUrl().isEmpty()) {
-                res.setImageUrl(metadataExtractor.extractImageUrl(doc));
+                res.setImageUrl(metadataExtractor.extractImageUrl(meta));
             }
         }
 
-        res.setRssUrl(metadataExtractor.extractRssUrl(doc));
-        res.setVideoUrl(metadataExtractor.extractVideoUrl(doc));
-        res.setFaviconUrl(metadataExtractor.extractFaviconUrl(doc));
-        res.setKeywords(metadataExtractor.extractKeywords(doc));
+        if (options.has(ExtractionOptions.RSS_URL))
+            res.setRssUrl(metadataExtractor.extractRssUrl(meta));
+        if (options.has(ExtractionOptions.VIDEO_URL))
+            res.setVideoUrl(metadataExtractor.extractVideoUrl(meta));
+        if (options.has(ExtractionOptions.FAVICON_URL))
+            res.setFaviconUrl(metadataExtractor.extractFaviconUrl(meta));
+        if (options.has(ExtractionOptions.KEYWORDS))
+            res.setKeywords(metadataExtractor.extractKeywords(meta));
 
         // Sanity checks in author
         if (res.getAuthorName().length() > MAX_AUTHOR_NAME_LENGHT){
@@ -202,23 +365,136 @@ public class ArticleTextExtractor {
             res.setImageUrl("");
         }
 
+        res.addSkippedStages(ctx.getSkippedStages());
         return res;
     }
 
-    private Document removeScriptsAndStyles(Document doc) {
-        Elements scripts = doc.getElementsByTag("script");
-        for (Element item : scripts) {
-            item.remove();
+    /**
+     * Tries the learned path of the domain first, a traced extraction and the
+     * second pass always search the whole document.
+     */
+    private Element findBestNode(JResult res, Document doc, ExtractionContext ctx, ExtractionOptions options,
+                                 boolean cleanScripts) {
+        ContentPathCache cache = contentPathCache;
+        Element body = doc.body();
+        String domain = cache != null && cleanScripts && body != null && ctx.getTrace() == null
+                ? ContentPathCache.domainOf(res.getUrl()) : null;
+        if (domain != null) {
+            Element node = cache.find(domain, body, ctx);
+            if (node != null) {
+                bestNodeFinder.scoreSubtree(node, ctx);
+                return node;
+            }
         }
-        Elements noscripts = doc.getElementsByTag("noscript");
-        for (Element item : noscripts) {
-            item.remove();
+
+        Element bestMatchElement = bestNodeFinder.find(doc, ctx, options.getScoringPool(),
+                options.getParallelScoringThreshold());
+        // a search cut short by the budget is not worth learning
+        if (domain != null && bestMatchElement != null && !ctx.getSkippedStages().contains(ExtractionStage.CANDIDATES)
+                && !ctx.getSkippedStages().contains(ExtractionStage.SCORING))
+            cache.learn(domain, body, bestMatchElement);
+        return bestMatchElement;
+    }
+
+    private void extractFromBestNode(JResult res, Document doc, ExtractionContext ctx, List<OutputFormatter> formatters,
+                                     ExtractionOptions options, int maxContentSize, boolean cleanScripts) throws IOException {
+        // now remove the clutter
+        if (cleanScripts) {
+            removeScriptsAndStyles(doc, ctx);
+        }
+
+        Element bestMatchElement = findBestNode(res, doc, ctx, options, cleanScripts);
+        if (bestMatchElement == null)
+            return;
+
+        // do extraction from the best element, the image url still falls back to the meta tags
+        if (options.has(ExtractionOptions.IMAGES) && ctx.getBudget().isExpired()) {
+            ctx.skip(ExtractionStage.IMAGES);
+        } else if (options.has(ExtractionOptions.IMAGES)) {
+            List<ImageResult> images = new ArrayList<ImageResult>();
+            Element imgEl = ImageExtractor.extractImages(bestMatchElement, images, ctx);
+            if (imgEl != null) {
+                res.setImageUrl(SHelper.replaceSpaces(imgEl.attr("src")));
+                // TODO remove parent container of image if it is contained in bestMatchElement
+                // to avoid image subtitles flooding in
+
+                res.setImages(images);
+            }
+        }
+
+        // before the text is formatted, the blocks see the tree as the first formatter does
+        ExtractionContext blocksCtx = options.has(ExtractionOptions.BLOCKS) ? ctx.fork() : null;
+
+        // the links are taken from what the first formatter left over, so it also runs for them
+        if (options.has(ExtractionOptions.TEXT | ExtractionOptions.LINKS)) {
+            List<String> texts = new ArrayList<String>(formatters.size());
+            // the others format the same scored tree, each with removals of its own
+            List<ExtractionContext> contexts = new ArrayList<ExtractionContext>(formatters.size());
+            contexts.add(ctx);
+            for (int i = 1; i < formatters.size() && options.has(ExtractionOptions.TEXT); i++) {
+                contexts.add(ctx.fork());
+            }
+            for (int i = 0; i < contexts.size(); i++) {
+                String text = format(formatters.get(i), bestMatchElement, contexts.get(i), res, options, maxContentSize);
+                texts.add(text);
+                if (i == 0 && !text.isEmpty())
+                    res.setText(text);
+            }
+            if (options.has(ExtractionOptions.TEXT))
+                res.setTexts(texts);
         }
 
-        Elements styles = doc.getElementsByTag("style");
-        for (Element style : styles) {
-            style.remove();
+        if (blocksCtx != null)
+            res.setBlocks(formatters.get(0).formatBlocks(bestMatchElement, blocksCtx));
+
+        if (options.has(ExtractionOptions.LINKS) && ctx.getBudget().isExpired()) {
+            ctx.skip(ExtractionStage.LINKS);
+        } else if (options.has(ExtractionOptions.LINKS)) {
+            // extract links from the same best element
+            LinkExtractor.extractLinks(bestMatchElement, res, ctx);
+        }
+    }
+
+    /**
+     * @return the text of the formatter, empty if it is not longer than the title
+     */
+    private static String format(OutputFormatter formatter, Element bestMatchElement, ExtractionContext ctx,
+                                 JResult res, ExtractionOptions options, int maxContentSize) throws IOException {
+        // clean before grabbing text
+        String text;
+        boolean longerThanTitle;
+        if (options.has(ExtractionOptions.TEXT) && maxContentSize > 0) {
+            // the formatter stops once maxContentSize bytes are written, but a truncated
+            // text is longer than what was written. So it goes on counting up to the
+            // title length, the context is prepared only once.
+            StringBuilder sb = new StringBuilder();
+            int titleLength = res.getTitle().length();
+            int length = formatter.format(bestMatchElement, ctx, sb, maxContentSize, titleLength + 1);
+            text = sb.toString();
+            longerThanTitle = length > titleLength;
+        } else {
+            text = formatter.format(bestMatchElement, ctx);
+            longerThanTitle = text.length() > res.getTitle().length();
         }
+        // this fails for short facebook post and probably tweets: text.length() > res.getDescription().length()
+        if (options.has(ExtractionOptions.TEXT) && longerThanTitle)
+            return text;
+        return "";
+    }
+
+    // the same nodes HtmlPreFilter drops, in case the document was not filtered
+    private Document removeScriptsAndStyles(Document doc, final ExtractionContext ctx) {
+        new NodeTraversor(new NodeVisitor() {
+            @Override
+            public void head(Node node, int depth) {
+                if (HtmlPreFilter.isDropped(node))
+                    ctx.remove(node);
+            }
+
+            @Override
+            public void tail(Node node, int depth) {
+            }
+        }).traverse(doc);
 
         return doc;
     }
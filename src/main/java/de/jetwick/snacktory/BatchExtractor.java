@@ -0,0 +1,308 @@
+package de.jetwick.snacktory;
+
+import de.jetwick.snacktory.output.OutputFormatter;
+import de.jetwick.snacktory.output.PlainTextOutputFormatter;
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Extracts many pages in parallel with one ArticleTextExtractor:
+ *
+ * <pre>
+ * try (BatchExtractor batch = BatchExtractor.withFixedThreadPool(32)) {
+ *     for (BatchResult res : batch.extractAll(sources)) { ... }
+ * }
+ * </pre>
+ *
+ * The sources are submitted lazily, at most maxInFlight pages (and roughly
+ * maxInFlightChars characters of html) are queued or being extracted at any
+ * time, so a large or endless Stream of sources does not fill the heap. An
+ * exception of one page is reported in its BatchResult and does not stop
+ * the batch.
+ *
+ * Results are returned in input order by default, setOrdered(false) returns
+ * every result as soon as it is done instead.
+ */
+public class BatchExtractor implements Closeable {
+
+    private static final OutputFormatter DEFAULT_FORMATTER = new PlainTextOutputFormatter();
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private ArticleTextExtractor extractor = new ArticleTextExtractor();
+    private OutputFormatter formatter = DEFAULT_FORMATTER;
+    private ExtractionOptions options = ExtractionOptions.ALL;
+    private int maxContentSize = -1;
+    private boolean ordered = true;
+    private int maxInFlight;
+    private long maxInFlightChars = Long.MAX_VALUE;
+
+    /**
+     * Uses the common ForkJoinPool.
+     */
+    public BatchExtractor() {
+        this(ForkJoinPool.commonPool(), false);
+    }
+
+    /**
+     * @param executor is not shut down by close()
+     */
+    public BatchExtractor(ExecutorService executor) {
+        this(executor, false);
+    }
+
+    private BatchExtractor(ExecutorService executor, boolean ownsExecutor) {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    public static BatchExtractor withForkJoinPool(int parallelism) {
+        return new BatchExtractor(new ForkJoinPool(parallelism), true).setMaxInFlight(2 * parallelism);
+    }
+
+    public static BatchExtractor withFixedThreadPool(int threads) {
+        return new BatchExtractor(Executors.newFixedThreadPool(threads, new BatchThreadFactory()), true)
+                .setMaxInFlight(2 * threads);
+    }
+
+    /**
+     * One virtual thread per page if the JVM supports them (Java 21+), a
+     * cached thread pool otherwise. The extraction itself is CPU bound, so
+     * this only pays off if the sources block, e.g. while downloading.
+     */
+    public static BatchExtractor withVirtualThreads() {
+        ExecutorService executor;
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            executor = (ExecutorService) method.invoke(null);
+        } catch (Exception ex) {
+            executor = Executors.newCachedThreadPool(new BatchThreadFactory());
+        }
+        return new BatchExtractor(executor, true);
+    }
+
+    public BatchExtractor setExtractor(ArticleTextExtractor extractor) {
+        this.extractor = extractor;
+        return this;
+    }
+
+    public BatchExtractor setFormatter(OutputFormatter formatter) {
+        this.formatter = formatter;
+        return this;
+    }
+
+    public BatchExtractor setOptions(ExtractionOptions options) {
+        this.options = options;
+        return this;
+    }
+
+    public BatchExtractor setMaxContentSize(int maxContentSize) {
+        this.maxContentSize = maxContentSize;
+        return this;
+    }
+
+    /**
+     * @param ordered true to return the results in the order of the sources,
+     * false to return them in the order they are done
+     */
+    public BatchExtractor setOrdered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * @param maxInFlight the maximum number of submitted but not yet returned
+     * pages, defaults to twice the number of threads
+     */
+    public BatchExtractor setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("maxInFlight has to be positive but was " + maxInFlight);
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * @param maxInFlightChars the html characters of all submitted but not yet
+     * returned pages. A single larger page is still extracted.
+     */
+    public BatchExtractor setMaxInFlightChars(long maxInFlightChars) {
+        this.maxInFlightChars = maxInFlightChars;
+        return this;
+    }
+
+    /**
+     * Extracts all sources and waits for them.
+     */
+    public List<BatchResult> extractAll(Collection<Source> sources) {
+        List<BatchResult> results = new ArrayList<BatchResult>(sources.size());
+        ResultIterator iter = new ResultIterator(sources.iterator());
+        try {
+            while (iter.hasNext()) {
+                results.add(iter.next());
+            }
+        } finally {
+            iter.close();
+        }
+        return results;
+    }
+
+    /**
+     * Lazily extracts the sources while the returned stream is consumed.
+     * Closing the stream cancels the pages which are still in flight.
+     */
+    public Stream<BatchResult> extractAll(final Stream<Source> sources) {
+        final ResultIterator iter = new ResultIterator(sources.iterator());
+        int characteristics = Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iter, characteristics), false)
+                .onClose(new Runnable() {
+                    @Override
+                    public void run() {
+                        iter.close();
+                        sources.close();
+                    }
+                });
+    }
+
+    /**
+     * Shuts down the executor if it was created by this class.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor)
+            executor.shutdownNow();
+    }
+
+    private BatchResult extract(int index, Source source) {
+        try {
+            JResult res = new JResult();
+            if (source.getUrl() != null)
+                res.setUrl(source.getUrl());
+            extractor.extractContent(res, source.getHtml(), formatter, options, maxContentSize);
+            return new BatchResult(index, source, res, null);
+        } catch (Exception ex) {
+            return new BatchResult(index, source, null, ex);
+        } catch (StackOverflowError ex) {
+            // deeply nested pages
+            return new BatchResult(index, source, null, ex);
+        }
+    }
+
+    private class ResultIterator implements Iterator<BatchResult> {
+
+        private final Iterator<Source> sources;
+        // settings at the start of the batch
+        private final boolean inOrder = ordered;
+        private final int maxPending = maxInFlight;
+        private final long maxPendingChars = maxInFlightChars;
+        // in submission order
+        private final Deque<Future<BatchResult>> pending = new ArrayDeque<Future<BatchResult>>();
+        private final CompletionService<BatchResult> completion;
+        private long inFlightChars;
+        private int nextIndex;
+
+        ResultIterator(Iterator<Source> sources) {
+            this.sources = sources;
+            this.completion = inOrder ? null : new ExecutorCompletionService<BatchResult>(executor);
+        }
+
+        private void fill() {
+            while (pending.size() < maxPending && (pending.isEmpty() || inFlightChars < maxPendingChars)
+                    && sources.hasNext()) {
+                final Source source = sources.next();
+                final int index = nextIndex++;
+                Callable<BatchResult> task = new Callable<BatchResult>() {
+                    @Override
+                    public BatchResult call() {
+                        return extract(index, source);
+                    }
+                };
+                pending.add(inOrder ? executor.submit(task) : completion.submit(task));
+                inFlightChars += source.getHtml().length();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public BatchResult next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            Future<BatchResult> future;
+            if (inOrder) {
+                future = pending.poll();
+            } else {
+                try {
+                    future = completion.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while waiting for the batch", ex);
+                }
+                pending.remove(future);
+            }
+            BatchResult res = get(future);
+            inFlightChars -= res.getSource().getHtml().length();
+            return res;
+        }
+
+        private BatchResult get(Future<BatchResult> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for the batch", ex);
+            } catch (ExecutionException ex) {
+                // extract() keeps exceptions, so this is an Error like OutOfMemoryError
+                throw new IllegalStateException("batch extraction failed", ex.getCause());
+            }
+        }
+
+        void close() {
+            for (Future<BatchResult> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+            inFlightChars = 0;
+        }
+    }
+
+    private static class BatchThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+        private final int pool = POOL_COUNTER.incrementAndGet();
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "snacktory-batch-" + pool + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
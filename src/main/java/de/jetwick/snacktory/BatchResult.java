@@ -0,0 +1,54 @@
+package de.jetwick.snacktory;
+
+/**
+ * Outcome of a single Source of a batch. A failing page does not affect the
+ * other pages of the batch, its exception is kept here instead.
+ */
+public class BatchResult {
+
+    private final int index;
+    private final Source source;
+    private final JResult result;
+    private final Throwable error;
+
+    BatchResult(int index, Source source, JResult result, Throwable error) {
+        this.index = index;
+        this.source = source;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * @return the position of the source in the input
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * @return the extracted result or null if the extraction failed
+     */
+    public JResult getResult() {
+        return result;
+    }
+
+    /**
+     * @return the exception of a failed extraction or null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return index + " " + source + (isSuccess() ? "" : " failed: " + error);
+    }
+}
@@ -1,83 +1,251 @@
 package de.jetwick.snacktory;
 
-import de.jetwick.snacktory.utils.SHelper;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Pattern;
 
 public class BestNodeFinder {
 
-  // Interessting nodes
-  private static final Pattern NODES = Pattern.compile("p|div|td|h1|h2|article|section");
-
   // Unlikely candidates
-  private Pattern UNLIKELY;
+  private static final Pattern UNLIKELY = Pattern.compile(
+      "com(bx|ment|munity)|dis(qus|cuss)|e(xtra|[-]?mail)|foot|"
+      + "header|menu|re(mark|ply)|rss|sh(are|outbox)|sponsor"
+      + "a(d|ll|gegate|rchive|ttachment)|(pag(er|ination))|popup|print|"
+      + "login|si(debar|gn|ngle)");
   // Most likely positive candidates
-  private Pattern POSITIVE;
+  private static final Pattern POSITIVE = Pattern.compile(
+      "(^(body|content|h?entry|main|page|post|text|blog|story|haupt))"
+      + "|arti(cle|kel)|instapaper_body");
   // Most likely negative candidates
-  private Pattern NEGATIVE;
+  private static final Pattern NEGATIVE = Pattern.compile(
+      "nav($|igation)|user|com(ment|bx)|(^com-)|contact|"
+      + "foot|masthead|(me(dia|ta))|outbrain|promo|related|scroll|(sho(utbox|pping))|"
+      + "sidebar|sponsor|tags|tool|widget|player|disclaimer|toc|infobox|vcard");
 
   private static final Pattern NEGATIVE_STYLE =
       Pattern.compile("hidden|display: ?none|font-size: ?small");
 
-  public BestNodeFinder(){
-    setUnlikely("com(bx|ment|munity)|dis(qus|cuss)|e(xtra|[-]?mail)|foot|"
-        + "header|menu|re(mark|ply)|rss|sh(are|outbox)|sponsor"
-        + "a(d|ll|gegate|rchive|ttachment)|(pag(er|ination))|popup|print|"
-        + "login|si(debar|gn|ngle)");
-    setPositive("(^(body|content|h?entry|main|page|post|text|blog|story|haupt))"
-        + "|arti(cle|kel)|instapaper_body");
-    setNegative("nav($|igation)|user|com(ment|bx)|(^com-)|contact|"
-        + "foot|masthead|(me(dia|ta))|outbrain|promo|related|scroll|(sho(utbox|pping))|"
-        + "sidebar|sponsor|tags|tool|widget|player|disclaimer|toc|infobox|vcard");
-  }
+  // bits of the classifier masks
+  static final int POSITIVE_HIT = 1;
+  static final int UNLIKELY_HIT = 1 << 1;
+  static final int NEGATIVE_HIT = 1 << 2;
+  private static final int NEGATIVE_STYLE_HIT = 1;
+
+  // shared by all extractions, class names and ids repeat across the pages of a site
+  private static final TokenClassifier CLASSIFIER = new TokenClassifier(10000, POSITIVE, UNLIKELY, NEGATIVE);
+  private static final TokenClassifier STYLE_CLASSIFIER = new TokenClassifier(10000, NEGATIVE_STYLE);
+
+  // markers in the weights of the parallel scoring
+  private static final int NOT_WEIGHTED = Integer.MIN_VALUE;
+  private static final int PRUNED = Integer.MIN_VALUE + 1;
+  // candidates weighted by one task of the pool
+  private static final int MIN_CHUNK = 64;
 
-  private void setUnlikely(String unlikelyStr) {
-    UNLIKELY = Pattern.compile(unlikelyStr);
+  private final ScoringModel model;
+  // getMaxWeight is a bound of the default weights only
+  private final boolean prune;
+
+  public BestNodeFinder() {
+    this(LinearScoringModel.DEFAULT);
   }
 
-  private void setPositive(String positiveStr) {
-    POSITIVE = Pattern.compile(positiveStr);
+  /**
+   * @param model weights the features of the candidates
+   */
+  public BestNodeFinder(ScoringModel model) {
+    if (model == null)
+      throw new NullPointerException("missing scoring model");
+    this.model = model;
+    this.prune = model == LinearScoringModel.DEFAULT;
   }
 
-  private void setNegative(String negativeStr) {
-    NEGATIVE = Pattern.compile(negativeStr);
+  public ScoringModel getScoringModel() {
+    return model;
   }
 
   public Element find(Document doc){
-    Collection<Element> nodes = getNodes(doc);
-    return find(nodes);
+    return find(doc, new ExtractionContext());
   }
 
   /**
-   * @return a set of all important nodes
+   * Finds the best node without touching the DOM, the gravity scores are
+   * stored in the specified context.
    */
+  public Element find(Document doc, ExtractionContext ctx){
+    Collection<Element> nodes = getNodes(doc, ctx);
+    return find(nodes, ctx);
+  }
+
+  /**
+   * Like find(doc, ctx) but weights the candidates in the specified pool if
+   * there are at least minCandidates of them. The result and the scores are
+   * the same as with the sequential scoring.
+   *
+   * @param pool null to always weight in the calling thread
+   */
+  public Element find(Document doc, ExtractionContext ctx, ForkJoinPool pool, int minCandidates){
+    Collection<Element> nodes = getNodes(doc, ctx);
+    if (pool == null || nodes.size() < minCandidates || ctx.getTrace() != null)
+      return find(nodes, ctx);
+    return findParallel(new ArrayList<Element>(nodes), ctx, pool);
+  }
+
   public Collection<Element> getNodes(Document doc) {
-    Map<Element, Object> nodes = new LinkedHashMap<Element, Object>(64);
+    return getNodes(doc, new ExtractionContext());
+  }
+
+  /**
+   * @return all important nodes of the body in document order. The walk
+   * through the document stops when the deadline of the budget of the
+   * context passes or when it visited as many elements as the budget allows.
+   */
+  public Collection<Element> getNodes(Document doc, ExtractionContext ctx) {
+    ExtractionBudget budget = ctx.getBudget();
+    List<Element> nodes = new ArrayList<Element>(64);
     int score = 100;
-    for (Element el : doc.select("body").select("*")) {
-      if (NODES.matcher(el.tagName()).matches()) {
-        nodes.put(el, null);
-        setScore(el, score);
-        score = score / 2;
+    int visited = 0;
+    // select("body").select("*") used to drop elements equal to an earlier one, this has to stay as is
+    Set<Element> distinct = new HashSet<Element>();
+    // every element within a body once
+    int bodyDepth = 0;
+    Node node = doc;
+    while (node != null) {
+      boolean body = isBody(node);
+      if (body)
+        bodyDepth++;
+      if (bodyDepth > 0 && node instanceof Element) {
+        if (++visited > budget.getMaxNodes() || (visited & 0xff) == 0 && budget.isExpired()) {
+          ctx.skip(ExtractionStage.CANDIDATES);
+          break;
+        }
+        Element el = (Element) node;
+        if (TagCategories.is(el, TagCategories.CANDIDATE) && distinct.add(el) && !ctx.isRemoved(el, doc)) {
+          nodes.add(el);
+          ctx.setScore(el, score);
+          score = score / 2;
+        }
+      }
+
+      if (node.childNodeSize() > 0) {
+        node = node.childNode(0);
+        continue;
       }
+      if (body)
+        bodyDepth--;
+      while (node != doc && node.nextSibling() == null) {
+        node = node.parentNode();
+        if (isBody(node))
+          bodyDepth--;
+      }
+      node = node == doc ? null : node.nextSibling();
     }
-    return nodes.keySet();
+    return nodes;
+  }
+
+  private static boolean isBody(Node node) {
+    return node instanceof Element && ((Element) node).tagName().equals("body");
   }
 
   public Element find(Collection<Element> nodes){
+    return find(nodes, new ExtractionContext());
+  }
+
+  /**
+   * Weights the nodes and returns the heaviest one. If the budget of the
+   * context runs out the best node so far is returned.
+   *
+   * With the default model a node whose upper bound, see getMaxWeight, is
+   * not above the weight of the best node so far cannot win and is not
+   * weighted completely. The scores of its children are updated nevertheless,
+   * so the result is the same as with weighting all nodes. Nothing is pruned
+   * if the context has a trace.
+   */
+  public Element find(Collection<Element> nodes, ExtractionContext ctx){
+    return find(nodes, ctx, subtreeStats(nodes, ctx, null), true);
+  }
+
+  /**
+   * Like find(nodes, ctx) for nodes which are no content candidates, e.g.
+   * the author matches of MetadataExtractor. The scores of the context are
+   * updated the same way, but the nodes are neither recorded in the trace
+   * of the context nor counted as pruned candidates.
+   */
+  public Element findMatch(Collection<Element> nodes, ExtractionContext ctx){
+    return find(nodes, ctx, subtreeStats(nodes, ctx, null), false);
+  }
+
+  // only the subtrees of the nodes are measured, not the whole document
+  private NodeStats subtreeStats(Collection<Element> nodes, ExtractionContext ctx, ForkJoinPool pool) {
+    NodeStats stats = new NodeStats(ctx, CLASSIFIER, NEGATIVE_HIT, pool);
+    stats.indexSubtrees(nodes);
+    return stats;
+  }
+
+  /**
+   * Scores only the candidates within the specified node, e.g. a node which
+   * was found by its ContentPathCache path instead of a search through the
+   * whole document. Only the node and its descendants are weighted, so the
+   * scores of its children can differ from those of a full search where
+   * the parent of the node and the first candidates of the document are
+   * weighted too.
+   */
+  public void scoreSubtree(Element node, ExtractionContext ctx) {
+    NodeStats stats = new NodeStats(ctx, CLASSIFIER, NEGATIVE_HIT);
+    stats.indexSubtree(node);
+    List<Element> nodes = new ArrayList<Element>();
+    // in document order like getNodes
+    for (Element el : node.select("*")) {
+      if (TagCategories.is(el, TagCategories.CANDIDATE) && !ctx.isRemoved(el, node)) {
+        nodes.add(el);
+        // getNodes halves the start score from candidate to candidate, deep in
+        // the document it is 0. Like there the formatter only drops short
+        // elements which have a score.
+        ctx.setScore(el, 0);
+      }
+    }
+    find(nodes, ctx, stats, true);
+  }
+
+  /**
+   * @param candidates whether the nodes are content candidates, only these
+   * are traced and counted as pruned
+   */
+  private Element find(Collection<Element> nodes, ExtractionContext ctx, NodeStats stats, boolean candidates) {
+    ExtractionBudget budget = ctx.getBudget();
+    int[] features = new int[ScoringModel.FEATURE_COUNT];
+    ExtractionTrace trace = candidates ? ctx.getTrace() : null;
+    boolean prune = this.prune && trace == null;
     int maxWeight = -200;        // why -200 now instead of 0?
     Element bestMatchElement = null;
 
     boolean ignoreMaxWeightLimit = false;
     for (Element entry : nodes) {
+      if (bestMatchElement != null && budget.isExpired()) {
+        ctx.skip(ExtractionStage.SCORING);
+        break;
+      }
+
+      int index = stats.index(entry);
+      stats.weighted(index);
+      // has to run for every node, it changes the scores of the children
+      int headers = countHeaders(index, stats, ctx);
+      if (prune && bestMatchElement != null && getMaxWeight(entry, index, headers, stats) <= maxWeight) {
+        if (candidates)
+          ctx.addPrunedCandidate();
+        continue;
+      }
 
-      int currentWeight = getWeight(entry, false);
+      int currentWeight = getWeight(entry, index, headers, false, stats, features);
+      if (trace != null)
+        trace.candidate(entry, currentWeight, features);
 
       if (currentWeight > maxWeight) {
         maxWeight = currentWeight;
@@ -110,6 +278,49 @@ public class BestNodeFinder {
       }
     }
 
+    // the divs and ps get their share of the weight of every weighted parent and grandparent
+    stats.applyChildScores();
+    if (trace != null)
+      trace.pick(model, bestMatchElement, maxWeight);
+    return bestMatchElement;
+  }
+
+  /**
+   * The text statistics and the weights of the candidates are computed in the
+   * pool, everything which changes the scores runs in the calling thread.
+   * Every task prunes against the best node of its own chunk, which cannot
+   * be better than the overall one, and the weights are merged in document
+   * order, so the first heaviest node wins like in find.
+   */
+  private Element findParallel(List<Element> nodes, ExtractionContext ctx, ForkJoinPool pool) {
+    NodeStats stats = subtreeStats(nodes, ctx, pool);
+    int size = nodes.size();
+    int[] indices = new int[size];
+    int[] headers = new int[size];
+    for (int i = 0; i < size; i++) {
+      indices[i] = stats.index(nodes.get(i));
+      stats.weighted(indices[i]);
+      headers[i] = countHeaders(indices[i], stats, ctx);
+    }
+
+    int[] weights = new int[size];
+    int chunk = Math.max(MIN_CHUNK, size / (4 * pool.getParallelism()));
+    pool.invoke(new WeightTask(nodes, indices, headers, weights, 0, size, chunk, stats, ctx.getBudget()));
+
+    int maxWeight = -200;
+    Element bestMatchElement = null;
+    for (int i = 0; i < size; i++) {
+      if (weights[i] == NOT_WEIGHTED) {
+        ctx.skip(ExtractionStage.SCORING);
+      } else if (weights[i] == PRUNED) {
+        ctx.addPrunedCandidate();
+      } else if (weights[i] > maxWeight) {
+        maxWeight = weights[i];
+        bestMatchElement = nodes.get(i);
+      }
+    }
+
+    stats.applyChildScores();
     return bestMatchElement;
   }
 
@@ -120,13 +331,12 @@ public class BestNodeFinder {
    * child nodes
    *
    * @param e Element to weight, along with child nodes
+   * @param headers the result of countHeaders
+   * @param features the buffer for the features of the element
    */
-  private int getWeight(Element e, boolean checkextra) {
-    int weight = calcWeight(e);
-    int ownTextWeight = (int) Math.round(e.ownText().length() / 100.0 * 10);
-    weight+=ownTextWeight;
-    int childrenWeight = weightChildNodes(e);
-    weight+=childrenWeight;
+  private int getWeight(Element e, int index, int headers, boolean checkextra, NodeStats stats, int[] features) {
+    extractFeatures(e, index, headers, stats, features);
+    int weight = model.score(features);
 
     // add additional weight using possible 'extragravityscore' attribute
     if (checkextra) {
@@ -141,231 +351,146 @@ public class BestNodeFinder {
     return weight;
   }
 
-  private int calcWeight(Element e) {
+  /**
+   * @return an upper bound of getWeight with the default model. All markers
+   * of the class, id and itemprop are assumed to be positive and every
+   * grandchild group to be below a child which does not look negative.
+   */
+  private int getMaxWeight(Element e, int index, int headers, NodeStats stats) {
     int weight = 0;
-    if (POSITIVE.matcher(e.className()).find())
+    if (e.hasAttr("class"))
       weight += 35;
-
-    if (POSITIVE.matcher(e.id()).find())
+    if (e.hasAttr("id"))
       weight += 45;
-
-    if (UNLIKELY.matcher(e.className()).find())
-      weight -= 20;
-
-    if (UNLIKELY.matcher(e.id()).find())
-      weight -= 20;
-
-    if (NEGATIVE.matcher(e.className()).find())
-      weight -= 50;
-
-    if (NEGATIVE.matcher(e.id()).find())
-      weight -= 50;
-
-    String style = e.attr("style");
-    if (style != null && !style.isEmpty() && NEGATIVE_STYLE.matcher(style).find())
-      weight -= 50;
-
-    String itemprop = e.attr("itemprop");
-    if (itemprop != null && !itemprop.isEmpty() && POSITIVE.matcher(itemprop).find()){
+    if (e.hasAttr("itemprop"))
       weight += 100;
-    }
-
-    return weight;
+    weight += (int) Math.round(stats.ownTextLength(index) / 100.0 * 10);
+    weight += stats.maxChildrenWeight(index);
+    if (stats.hasCaption(index))
+      weight += 30;
+    return weight + 20 * headers;
   }
 
   /**
-   * Weights a child nodes of given Element. During tests some difficulties
-   * were met. For instance, not every single document has nested paragraph
-   * tags inside of the major article tag. Sometimes people are adding one
-   * more nesting level. So, we're adding 4 points for every 100 symbols
-   * contained in tag nested inside of the current weighted element, but only
-   * 3 points for every element that's nested 2 levels deep. This way we give
+   * Fills the features of the element, see ScoringModel. Not every single
+   * document has nested paragraph tags inside of the major article tag,
+   * sometimes people are adding one more nesting level. So the children
+   * count fully but the grandchildren only with a third. This way we give
    * more chances to extract the element that has less nested levels,
    * increasing probability of the correct extraction.
-   *
-   * @param rootEl Element, who's child nodes will be weighted
    */
-  private int weightChildNodes(Element rootEl) {
-    int weight = 0;
-    Element caption = null;
-    List<Element> pEls = new ArrayList<Element>(5);
+  private void extractFeatures(Element e, int index, int headers, NodeStats stats, int[] features) {
+    int classMask = CLASSIFIER.classify(e.className());
+    int idMask = CLASSIFIER.classify(e.id());
+    features[ScoringModel.POSITIVE_CLASS] = bit(classMask, POSITIVE_HIT);
+    features[ScoringModel.POSITIVE_ID] = bit(idMask, POSITIVE_HIT);
+    features[ScoringModel.UNLIKELY_CLASS] = bit(classMask, UNLIKELY_HIT);
+    features[ScoringModel.UNLIKELY_ID] = bit(idMask, UNLIKELY_HIT);
+    features[ScoringModel.NEGATIVE_CLASS] = bit(classMask, NEGATIVE_HIT);
+    features[ScoringModel.NEGATIVE_ID] = bit(idMask, NEGATIVE_HIT);
+    features[ScoringModel.NEGATIVE_STYLE] = bit(STYLE_CLASSIFIER.classify(e.attr("style")), NEGATIVE_STYLE_HIT);
+    features[ScoringModel.POSITIVE_ITEMPROP] = bit(CLASSIFIER.classify(e.attr("itemprop")), POSITIVE_HIT);
+
+    int ownTextLength = stats.ownTextLength(index);
+    features[ScoringModel.OWN_TEXT_WEIGHT] = (int) Math.round(ownTextLength / 100.0 * 10);
+    features[ScoringModel.OWN_TEXT_LENGTH] = ownTextLength;
+    features[ScoringModel.CHILDREN_WEIGHT] = stats.childrenWeight(index);
+    features[ScoringModel.GRANDCHILDREN_WEIGHT] = stats.grandChildrenWeight(index) / 3;
+    features[ScoringModel.HEADERS] = headers;
+    // use caption and image
+    features[ScoringModel.CAPTION] = stats.hasCaption(index) ? 1 : 0;
+
+    int textLength = stats.textLength(index);
+    features[ScoringModel.TEXT_LENGTH] = textLength;
+    features[ScoringModel.LINK_DENSITY] = textLength == 0 ? 0
+        : (int) (stats.linkTextLength(index) * 1000L / textLength);
+    features[ScoringModel.CHILD_COUNT] = stats.childCount(index);
+    features[ScoringModel.PARAGRAPH_COUNT] = stats.paragraphCount(index);
+  }
 
-    for (Element child : rootEl.children()) {
-      String ownText = child.ownText();
-      int ownTextLength = ownText.length();
-      if (ownTextLength < 20)
-        continue;
+  private static int bit(int mask, int bit) {
+    return (mask & bit) != 0 ? 1 : 0;
+  }
 
-//      if(logEntries!=null) {
-//        logEntries.add("\t      CHILD TAG: " + child.tagName());
-//      }
+  /**
+   * Counts the headers if the element has at least two paragraphs and
+   * changes the scores of the other children.
+   */
+  private int countHeaders(int rootIndex, NodeStats stats, ExtractionContext ctx) {
+    int headers = 0;
+    if (stats.paragraphCount(rootIndex) >= 2) {
+      for (int child = stats.lastChild(rootIndex); child >= 0; child = stats.previousSibling(child)) {
+        Element subEl = stats.element(child);
+        int categories = TagCategories.of(subEl);
+        if ((categories & TagCategories.HEADING) != 0) {
+          headers++;
+          // headerEls.add(subEl);
+        } else if ((categories & TagCategories.TABLE_OR_LIST) != 0) {
+          ctx.addScore(subEl, -30);
+        }
 
-      if (ownTextLength > 200){
-        int childOwnTextWeight = Math.max(50, ownTextLength / 10);
-//        if(logEntries!=null)
-//          logEntries.add("      CHILD TEXT WEIGHT:"
-//              + String.format("%3d", childOwnTextWeight));
-        weight += childOwnTextWeight;
+        if ((categories & TagCategories.PARAGRAPH) != 0)
+          ctx.addScore(subEl, 30);
       }
+    }
+    return headers;
+  }
 
-      if (child.tagName().equals("h1") || child.tagName().equals("h2")) {
-        int h2h1Weight = 30;
-        weight += h2h1Weight;
-//        if(logEntries!=null)
-//          logEntries.add("\t   H1/H2 WEIGHT:"
-//              + String.format("%3d", h2h1Weight));
-      } else if (child.tagName().equals("div") || child.tagName().equals("p")) {
-        int calcChildWeight = calcWeightForChild(child, ownText);
-        weight+=calcChildWeight;
-//        if(logEntries!=null)
-//          logEntries.add("\t   CHILD WEIGHT:"
-//              + String.format("%3d", calcChildWeight));
-        if (child.tagName().equals("p") && ownTextLength > 50)
-          pEls.add(child);
-
-        if (child.className().toLowerCase().equals("caption"))
-          caption = child;
-      }
+  private class WeightTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Element> nodes;
+    private final int[] indices;
+    private final int[] headers;
+    private final int[] weights;
+    private final int from;
+    private final int to;
+    private final int chunk;
+    private final NodeStats stats;
+    private final ExtractionBudget budget;
+
+    WeightTask(List<Element> nodes, int[] indices, int[] headers, int[] weights, int from, int to,
+        int chunk, NodeStats stats, ExtractionBudget budget) {
+      this.nodes = nodes;
+      this.indices = indices;
+      this.headers = headers;
+      this.weights = weights;
+      this.from = from;
+      this.to = to;
+      this.chunk = chunk;
+      this.stats = stats;
+      this.budget = budget;
     }
 
-    //
-    // Visit grandchildren, This section visits the grandchildren
-    // of the node and calculate their weights. Note that grandchildren
-    // weights are only worth 1/3 of children's
-    //
-    int grandChildrenWeight = 0;
-    int grandChildrenCount = 0;
-    for (Element child2 : rootEl.children()) {
-
-//      if(logEntries!=null) {
-//        logEntries.add("\t    CHILD TAG: " + child2.tagName());
-//        //logEntries.add(child2.outerHtml());
-//      }
-
-      // If the node looks negative don't include it in the weights
-      // instead penalize the grandparent. This is done to try to
-      // avoid giving weigths to navigation nodes, etc.
-      if (NEGATIVE.matcher(child2.id()).find() ||
-          NEGATIVE.matcher(child2.className()).find()){
-//        if(logEntries!=null){
-//          logEntries.add("\t  CHILD DISCARDED");
-//        }
-        grandChildrenWeight-=30;
-        continue;
+    @Override
+    protected void compute() {
+      if (to - from > chunk) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new WeightTask(nodes, indices, headers, weights, from, middle, chunk, stats, budget),
+            new WeightTask(nodes, indices, headers, weights, middle, to, chunk, stats, budget));
+        return;
       }
 
-      for (Element grandchild : child2.children()) {
-        int grandchildWeight = 0;
-        String ownText = grandchild.ownText();
-        int ownTextLength = ownText.length();
-        if (ownTextLength < 20)
+      int[] features = new int[ScoringModel.FEATURE_COUNT];
+      int maxWeight = -200;
+      boolean hasBest = false;
+      for (int i = from; i < to; i++) {
+        if (hasBest && budget.isExpired()) {
+          weights[i] = NOT_WEIGHTED;
           continue;
-
-//        if(logEntries!=null) {
-//          logEntries.add("\t    GRANDCHILD TAG: " + grandchild.tagName());
-//          //logEntries.add(grandchild.outerHtml());
-//        }
-        grandChildrenCount+=1;
-
-        if (ownTextLength > 200){
-          int childOwnTextWeight = Math.max(50, ownTextLength / 10);
-//          if(logEntries!=null)
-//            logEntries.add("    GRANDCHILD TEXT WEIGHT:"
-//                + String.format("%3d", childOwnTextWeight));
-          grandchildWeight += childOwnTextWeight;
         }
-
-        if (grandchild.tagName().equals("h1") || grandchild.tagName().equals("h2")) {
-          int h2h1Weight = 30;
-          grandchildWeight += h2h1Weight;
-//          if(logEntries!=null)
-//            logEntries.add("   GRANDCHILD H1/H2 WEIGHT:"
-//                + String.format("%3d", h2h1Weight));
-        } else if (grandchild.tagName().equals("div") || grandchild.tagName().equals("p")) {
-          int calcChildWeight = calcWeightForChild(grandchild, ownText);
-          grandchildWeight+=calcChildWeight;
-//          if(logEntries!=null)
-//            logEntries.add("   GRANDCHILD CHILD WEIGHT:"
-//                + String.format("%3d", calcChildWeight));
+        Element entry = nodes.get(i);
+        if (prune && hasBest && getMaxWeight(entry, indices[i], headers[i], stats) <= maxWeight) {
+          weights[i] = PRUNED;
+          continue;
         }
-
-//        if(logEntries!=null)
-//          logEntries.add("\t GRANDCHILD WEIGHT:"
-//              + String.format("%3d", grandchildWeight));
-        grandChildrenWeight += grandchildWeight;
-      }
-    }
-
-    if (grandChildrenCount <= 0)
-      grandChildrenCount = 1;
-    grandChildrenWeight = grandChildrenWeight / 3;
-//    if(logEntries!=null){
-//      logEntries.add("\t  GRANDCHILDREN WEIGHT:"
-//          + String.format("%3d", grandChildrenWeight));
-//      logEntries.add("\t   GRANDCHILDREN COUNT:"
-//          + String.format("%3d", grandChildrenCount));
-//    }
-    weight+=grandChildrenWeight;
-
-    // use caption and image
-    if (caption != null){
-      int captionWeight = 30;
-      weight+=captionWeight;
-//      if(logEntries!=null)
-//        logEntries.add("\t CAPTION WEIGHT:"
-//            + String.format("%3d", captionWeight));
-    }
-
-    if (pEls.size() >= 2) {
-      for (Element subEl : rootEl.children()) {
-        if ("h1;h2;h3;h4;h5;h6".contains(subEl.tagName())) {
-          int h1h2h3Weight = 20;
-          weight += h1h2h3Weight;
-//          if(logEntries!=null)
-//            logEntries.add("  h1;h2;h3;h4;h5;h6 WEIGHT:"
-//                + String.format("%3d", h1h2h3Weight));
-          // headerEls.add(subEl);
-        } else if ("table;li;td;th".contains(subEl.tagName())) {
-          addScore(subEl, -30);
+        weights[i] = getWeight(entry, indices[i], headers[i], false, stats, features);
+        if (weights[i] > maxWeight) {
+          maxWeight = weights[i];
+          hasBest = true;
         }
-
-        if ("p".contains(subEl.tagName()))
-          addScore(subEl, 30);
       }
     }
-    return weight;
-  }
-
-  private void addScore(Element el, int score) {
-    int old = getScore(el);
-    setScore(el, score + old);
-  }
-
-  private int getScore(Element el) {
-    int old = 0;
-    try {
-      old = Integer.parseInt(el.attr("gravityScore"));
-    } catch (Exception ex) {
-    }
-    return old;
-  }
-
-  private void setScore(Element el, int score) {
-    el.attr("gravityScore", Integer.toString(score));
-  }
-
-  private int calcWeightForChild(Element child, String ownText) {
-    int c = SHelper.count(ownText, "&quot;");
-    c += SHelper.count(ownText, "&lt;");
-    c += SHelper.count(ownText, "&gt;");
-    c += SHelper.count(ownText, "px");
-    int val;
-    if (c > 5)
-      val = -30;
-    else
-      val = (int) Math.round(ownText.length() / 35.0);
-
-    addScore(child, val);
-    return val;
   }
 }
@@ -0,0 +1,406 @@
+package de.jetwick.snacktory;
+
+import de.jetwick.snacktory.utils.SHelper;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers per domain where the best node of its pages is, as the chain of
+ * tag and class names from the body down to it. The pages of a site share
+ * their article container, so once the same path won often enough the
+ * extractor looks it up directly and only scores the nodes within it instead
+ * of searching the whole document:
+ *
+ * <pre>
+ * extractor.setContentPathCache(new ContentPathCache());
+ * </pre>
+ *
+ * A path is used after it won minConfirmations times in a row. If it cannot
+ * be found in a page or the node has less than minTextLength characters the
+ * extractor falls back to the full search and learns from its result, a
+ * different path starts over. Only pages with a url are cached.
+ *
+ * The cache is bounded, when it is full a rarely used domain is evicted. It
+ * can be saved with writeTo and loaded with readFrom. This class is thread
+ * safe.
+ */
+public class ContentPathCache {
+
+    public static final int DEFAULT_MAX_DOMAINS = 10000;
+    public static final int DEFAULT_MIN_CONFIRMATIONS = 2;
+    public static final int DEFAULT_MIN_TEXT_LENGTH = 200;
+
+    // entries compared when one has to be evicted
+    private static final int EVICTION_SAMPLES = 8;
+    private static final int MAX_DEPTH = 64;
+    private static final int MAX_CONFIRMATIONS = 1 << 20;
+    private static final String STEP_SEPARATOR = " > ";
+
+    private final ConcurrentMap<String, Entry> entries;
+    private final int maxDomains;
+    private final int minConfirmations;
+    private final int minTextLength;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong confidenceFailures = new AtomicLong();
+    // where evict goes on, guarded by this
+    private Iterator<Map.Entry<String, Entry>> hand;
+
+    public ContentPathCache() {
+        this(DEFAULT_MAX_DOMAINS, DEFAULT_MIN_CONFIRMATIONS, DEFAULT_MIN_TEXT_LENGTH);
+    }
+
+    /**
+     * @param maxDomains the number of domains kept
+     * @param minConfirmations how often a path has to win before it is used
+     * @param minTextLength the text a node found by its path needs at least
+     */
+    public ContentPathCache(int maxDomains, int minConfirmations, int minTextLength) {
+        if (maxDomains < 1)
+            throw new IllegalArgumentException("maxDomains has to be positive but was " + maxDomains);
+        if (minConfirmations < 1)
+            throw new IllegalArgumentException("minConfirmations has to be positive but was " + minConfirmations);
+        this.maxDomains = maxDomains;
+        this.minConfirmations = minConfirmations;
+        this.minTextLength = minTextLength;
+        this.entries = new ConcurrentHashMap<String, Entry>(Math.min(maxDomains, 1024));
+    }
+
+    /**
+     * @return the domain the pages of url are cached under, null if url is
+     * null or empty
+     */
+    public static String domainOf(String url) {
+        if (url == null || url.isEmpty())
+            return null;
+        String domain = SHelper.extractDomain(url, true);
+        return domain.isEmpty() ? null : domain.toLowerCase();
+    }
+
+    /**
+     * @return the node at the learned path of the domain or null if there is
+     * no confirmed path, it is not in the document or the node fails the
+     * confidence check
+     */
+    public Element find(String domain, Element body, ExtractionContext ctx) {
+        lookups.incrementAndGet();
+        Entry entry = entries.get(domain);
+        if (entry == null || entry.confirmations < minConfirmations)
+            return null;
+
+        Element node = resolve(body, entry.steps);
+        if (node == null || ctx.isRemoved(node, body)) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        if (!hasText(node, minTextLength, ctx)) {
+            confidenceFailures.incrementAndGet();
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        entry.uses.incrementAndGet();
+        hits.incrementAndGet();
+        return node;
+    }
+
+    /**
+     * Records the best node of a full search.
+     *
+     * @param body the body of the document of node
+     */
+    public void learn(String domain, Element body, Element node) {
+        String[] steps = pathOf(body, node);
+        if (steps == null)
+            return;
+
+        while (true) {
+            Entry old = entries.get(domain);
+            if (old == null) {
+                if (entries.size() >= maxDomains)
+                    evict();
+                if (entries.putIfAbsent(domain, new Entry(steps, 1, 0)) == null)
+                    return;
+            } else {
+                Entry entry = Arrays.equals(old.steps, steps)
+                        ? new Entry(old.steps, Math.min(old.confirmations + 1, MAX_CONFIRMATIONS), old.uses.get())
+                        : new Entry(steps, 1, 0);
+                if (entries.replace(domain, old, entry))
+                    return;
+            }
+        }
+    }
+
+    /**
+     * @return the learned path of the domain like "div.main > article.post",
+     * null if the domain is unknown
+     */
+    public String getPath(String domain) {
+        Entry entry = entries.get(domain);
+        return entry == null ? null : join(entry.steps);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of find calls
+     */
+    public long getLookupCount() {
+        return lookups.get();
+    }
+
+    /**
+     * @return the number of find calls which returned a node
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of find calls with a confirmed path which did not
+     * return a node
+     */
+    public long getFallbackCount() {
+        return fallbacks.get();
+    }
+
+    /**
+     * @return the number of fallbacks because the node had too little text
+     */
+    public long getConfidenceFailureCount() {
+        return confidenceFailures.get();
+    }
+
+    public double getHitRate() {
+        long count = lookups.get();
+        return count == 0 ? 0 : (double) hits.get() / count;
+    }
+
+    /**
+     * @return the share of the lookups with a confirmed path which fell back
+     * to the full search
+     */
+    public double getFallbackRate() {
+        long count = hits.get() + fallbacks.get();
+        return count == 0 ? 0 : (double) fallbacks.get() / count;
+    }
+
+    /**
+     * Writes one line per domain: the domain, the number of confirmations,
+     * the path and the number of uses separated by tabs.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            writer.write(e.getKey());
+            writer.write('\t');
+            writer.write(Integer.toString(e.getValue().confirmations));
+            writer.write('\t');
+            writer.write(join(e.getValue().steps));
+            writer.write('\t');
+            writer.write(Integer.toString(e.getValue().uses.get()));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Adds the domains written by writeTo, invalid lines are skipped. Lines
+     * without the number of uses are read with none, like the domains of
+     * caches written before it was added.
+     *
+     * @return the number of domains read
+     */
+    public int readFrom(Reader reader) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        int count = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] columns = line.split("\t");
+            if (columns.length < 3 || columns.length > 4 || columns[0].isEmpty() || columns[2].isEmpty())
+                continue;
+            int confirmations;
+            int uses;
+            try {
+                confirmations = Integer.parseInt(columns[1]);
+                uses = columns.length == 4 ? Integer.parseInt(columns[3]) : 0;
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+            if (confirmations < 1 || uses < 0)
+                continue;
+            if (entries.size() >= maxDomains && !entries.containsKey(columns[0]))
+                evict();
+            entries.put(columns[0], new Entry(columns[2].split(STEP_SEPARATOR), confirmations, uses));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the steps from body to node, null if node is not below body or
+     * too deep
+     */
+    static String[] pathOf(Element body, Element node) {
+        List<String> steps = new ArrayList<String>();
+        for (Element el = node; el != body; el = el.parent()) {
+            Element parent = el.parent();
+            if (parent == null || steps.size() == MAX_DEPTH)
+                return null;
+
+            String key = key(el);
+            int index = 0;
+            for (Element sibling : parent.children()) {
+                if (sibling == el)
+                    break;
+                if (key.equals(key(sibling)))
+                    index++;
+            }
+            // class names cannot contain white space
+            steps.add(index == 0 ? key : key + " " + index);
+        }
+        String[] res = new String[steps.size()];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = steps.get(res.length - 1 - i);
+        }
+        return res;
+    }
+
+    static Element resolve(Element body, String[] steps) {
+        Element current = body;
+        for (String step : steps) {
+            int space = step.lastIndexOf(' ');
+            String key = space < 0 ? step : step.substring(0, space);
+            int index = 0;
+            if (space >= 0) {
+                try {
+                    index = Integer.parseInt(step.substring(space + 1));
+                } catch (NumberFormatException ex) {
+                    return null;
+                }
+            }
+
+            Element next = null;
+            for (Element child : current.children()) {
+                if (key.equals(key(child)) && index-- == 0) {
+                    next = child;
+                    break;
+                }
+            }
+            if (next == null)
+                return null;
+            current = next;
+        }
+        return current;
+    }
+
+    /**
+     * @return the tag name with the sorted class names, ids often contain
+     * the id of the article and are left out
+     */
+    private static String key(Element el) {
+        String className = el.className().trim();
+        if (className.isEmpty())
+            return el.tagName();
+        String[] names = className.split("\\s+");
+        Arrays.sort(names);
+        StringBuilder sb = new StringBuilder(el.tagName());
+        for (String name : names) {
+            sb.append('.').append(name);
+        }
+        return sb.toString();
+    }
+
+    private static String join(String[] steps) {
+        StringBuilder sb = new StringBuilder();
+        for (String step : steps) {
+            if (sb.length() > 0)
+                sb.append(STEP_SEPARATOR);
+            sb.append(step);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return true if the text nodes below node which are not removed in the
+     * context, e.g. within scripts, have at least minLength characters
+     */
+    private static boolean hasText(Node node, int minLength, ExtractionContext ctx) {
+        int length = 0;
+        Node current = node;
+        while (current != null) {
+            boolean removed = current != node && ctx.isRemoved(current);
+            if (!removed && current instanceof TextNode) {
+                length += ((TextNode) current).getWholeText().length();
+                if (length >= minLength)
+                    return true;
+            }
+            if (!removed && current.childNodeSize() > 0) {
+                current = current.childNode(0);
+                continue;
+            }
+            while (current != node && current.nextSibling() == null) {
+                current = current.parent();
+            }
+            current = current == node ? null : current.nextSibling();
+        }
+        return length >= minLength;
+    }
+
+    private synchronized void evict() {
+        // the least used of the next few entries, good enough to keep the busy
+        // domains. Like a clock hand the samples go on where the last eviction
+        // stopped, so every domain is compared in turn and an eviction costs
+        // EVICTION_SAMPLES steps whatever the size.
+        String victim = null;
+        int victimUses = Integer.MAX_VALUE;
+        for (int i = 0; i < EVICTION_SAMPLES; i++) {
+            if (hand == null || !hand.hasNext()) {
+                hand = entries.entrySet().iterator();
+                if (!hand.hasNext())
+                    break;
+            }
+            Map.Entry<String, Entry> e = hand.next();
+            int uses = e.getValue().uses.get();
+            if (uses < victimUses) {
+                victim = e.getKey();
+                victimUses = uses;
+            }
+        }
+        if (victim != null)
+            entries.remove(victim);
+    }
+
+    private static class Entry {
+
+        final String[] steps;
+        final int confirmations;
+        final AtomicInteger uses;
+
+        Entry(String[] steps, int confirmations, int uses) {
+            this.steps = steps;
+            this.confirmations = confirmations;
+            this.uses = new AtomicInteger(uses);
+        }
+    }
+}
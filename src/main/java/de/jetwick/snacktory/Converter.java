@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
@@ -54,6 +55,10 @@ public class Converter {
         return this;
     }
 
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
     public static String extractEncoding(String contentType) {
         String[] values;
         if (contentType != null)
@@ -168,6 +173,114 @@ public class Converter {
         return "";
     }
 
+    /**
+     * Reads the stream into a byte buffer without decoding it, see
+     * bytesToString. Unlike a ByteArrayOutputStream the buffer is not copied
+     * at the end.
+     *
+     * @return the read bytes, empty if reading failed
+     */
+    public ByteBuffer streamToBytes(InputStream is) {
+        return streamToBytes(is, maxBytes, K2 * 8);
+    }
+
+    /**
+     * @param sizeHint the expected number of bytes, e.g. the content length
+     */
+    public ByteBuffer streamToBytes(InputStream is, int maxBytes, int sizeHint) {
+        if (sizeHint <= 0)
+            sizeHint = K2 * 8;
+        byte[] arr = new byte[Math.max(K2, Math.min(sizeHint, maxBytes))];
+        int bytesRead = 0;
+        try {
+            while (true) {
+                if (bytesRead >= maxBytes) {
+                    logger.warn("Maxbyte of " + maxBytes + " exceeded! Maybe html is now broken but try it nevertheless. Url: " + url);
+                    break;
+                }
+
+                if (bytesRead == arr.length) {
+                    // do not grow a buffer which matches the size hint exactly
+                    int b = is.read();
+                    if (b < 0)
+                        break;
+                    byte[] tmp = new byte[(int) Math.min((long) arr.length * 3 / 2, (long) maxBytes)];
+                    System.arraycopy(arr, 0, tmp, 0, bytesRead);
+                    arr = tmp;
+                    arr[bytesRead++] = (byte) b;
+                    continue;
+                }
+
+                int n = is.read(arr, bytesRead, Math.min(arr.length, maxBytes) - bytesRead);
+                if (n < 0)
+                    break;
+                bytesRead += n;
+            }
+        } catch (SocketTimeoutException e) {
+            logger.info(e.toString() + " url:" + url);
+            bytesRead = 0;
+        } catch (IOException e) {
+            logger.warn(e.toString() + " url:" + url);
+            bytesRead = 0;
+        } finally {
+            try {
+                is.close();
+            } catch (Exception e) {
+            }
+        }
+        return ByteBuffer.wrap(arr, 0, bytesRead);
+    }
+
+    public String bytesToString(byte[] bytes, String enc) {
+        return bytesToString(ByteBuffer.wrap(bytes), enc);
+    }
+
+    /**
+     * Decodes the bytes with the charset of the meta tag or xml declaration
+     * like streamToString does, but directly from the specified buffer.
+     *
+     * @param enc the charset hint, e.g. of the content type header
+     */
+    public String bytesToString(ByteBuffer bytes, String enc) {
+        encoding = enc;
+        if (encoding == null || encoding.isEmpty())
+            encoding = UTF8;
+
+        // the charset declaration is ascii, so look for it in the raw bytes
+        String tmpEnc = findCharset("charset=", head(bytes, K2));
+        if (tmpEnc == null) {
+            logger.debug("no charset found in first stage");
+            tmpEnc = findCharset("encoding=", head(bytes, K2 * 2));
+            if (tmpEnc == null)
+                logger.debug("no charset found in second stage");
+        }
+        if (tmpEnc != null)
+            encoding = tmpEnc;
+
+        Charset charset;
+        try {
+            charset = Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Using default encoding:" + UTF8
+                    + " problem:" + e.getMessage() + " encoding:" + encoding + " " + url);
+            encoding = UTF8;
+            charset = Charset.forName(UTF8);
+        }
+
+        if (bytes.hasArray())
+            return new String(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), charset);
+        return charset.decode(bytes.duplicate()).toString();
+    }
+
+    private static String head(ByteBuffer bytes, int length) {
+        length = Math.min(length, bytes.remaining());
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (bytes.get(bytes.position() + i) & 0xff);
+        }
+        return new String(chars);
+    }
+
     /**
      * This method detects the charset even if the first call only returns some
      * bytes. It will read until 4K bytes are reached and then try to determine
@@ -190,7 +303,25 @@ public class Converter {
             bos.write(arr, 0, n);
         }
 
-        String str = bos.toString(enc);
+        String tmpEnc = findCharset(key, bos.toString(enc));
+        if (tmpEnc != null) {
+            // re-read byte array with different encoding
+            try {
+                in.reset();
+                bos.reset();
+                return tmpEnc;
+            } catch (IOException ex) {
+                logger.warn("Couldn't reset stream to re-read with new encoding " + tmpEnc + " "
+                        + ex.toString());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the charset following the key, e.g. charset="utf-8", or null
+     */
+    private static String findCharset(String key, String str) {
         int encIndex = str.indexOf(key);
         int clength = key.length();
         if (encIndex > 0 && encIndex + clength < str.length()) {
@@ -220,19 +351,9 @@ public class Converter {
                     lastEncIndex = Math.min(lastEncIndex, third);
             }
 
-            // re-read byte array with different encoding
             // assume that the encoding string cannot be greater than 40 chars
-            if (lastEncIndex > encIndex + clength && lastEncIndex < encIndex + clength + 40) {
-                String tmpEnc = SHelper.encodingCleanup(str.substring(encIndex + clength, lastEncIndex));
-                try {
-                    in.reset();
-                    bos.reset();
-                    return tmpEnc;
-                } catch (IOException ex) {
-                    logger.warn("Couldn't reset stream to re-read with new encoding " + tmpEnc + " "
-                            + ex.toString());
-                }
-            }
+            if (lastEncIndex > encIndex + clength && lastEncIndex < encIndex + clength + 40)
+                return SHelper.encodingCleanup(str.substring(encIndex + clength, lastEncIndex));
         }
         return null;
     }
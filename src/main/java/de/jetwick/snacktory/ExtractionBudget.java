@@ -0,0 +1,43 @@
+package de.jetwick.snacktory;
+
+/**
+ * The time and node budget of one document, started when its extraction
+ * starts. Both passes of an extraction share the same budget.
+ */
+public class ExtractionBudget {
+
+    public static final ExtractionBudget UNLIMITED = new ExtractionBudget(0, 0);
+
+    private final long deadline;
+    private final boolean hasDeadline;
+    private final int maxNodes;
+
+    /**
+     * @param timeoutMillis 0 for no deadline
+     * @param maxNodes 0 for no node limit
+     */
+    public ExtractionBudget(long timeoutMillis, int maxNodes) {
+        this.hasDeadline = timeoutMillis > 0;
+        this.deadline = hasDeadline ? System.nanoTime() + timeoutMillis * 1000000L : 0;
+        this.maxNodes = maxNodes > 0 ? maxNodes : Integer.MAX_VALUE;
+    }
+
+    public static ExtractionBudget start(ExtractionOptions options) {
+        if (!options.hasBudget())
+            return UNLIMITED;
+        return new ExtractionBudget(options.getTimeoutMillis(), options.getMaxNodes());
+    }
+
+    public boolean isExpired() {
+        return hasDeadline && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * @return the number of elements a walk through the document may visit,
+     * Integer.MAX_VALUE if unlimited. The search for candidates and the
+     * formatter each have this many.
+     */
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+}
@@ -0,0 +1,466 @@
+package de.jetwick.snacktory;
+
+import de.jetwick.snacktory.utils.IdentityIntMap;
+import org.jsoup.helper.StringUtil;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Elements;
+import org.jsoup.select.NodeVisitor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holds everything a single extraction pass used to write into the DOM: the
+ * gravity scores of BestNodeFinder, the paragraph indices and the node removals
+ * of the OutputFormatter. The parsed Document itself is never modified, so a
+ * second pass (e.g. without script cleaning) can reuse the same tree with a
+ * fresh context.
+ *
+ * All traversal helpers behave like their jsoup counterparts on a tree where
+ * the removed nodes were detached. This class is not thread safe, use one
+ * instance per extraction pass.
+ */
+public class ExtractionContext {
+
+    // primitive values, scores change for every weighted child and would be boxed otherwise
+    private final IdentityIntMap<Element> scores;
+    private final IdentityIntMap<Element> paragraphIndices = new IdentityIntMap<Element>();
+    // removed nodes and the images which were put at their place
+    private final Map<Node, List<Element>> removed;
+    // ancestors of removed nodes, their jsoup serialization is out of date
+    private final Set<Node> modified = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+    // replacement image -> parent of the node it replaced
+    private final Map<Element, Element> replacementParents;
+    private final ExtractionBudget budget;
+    private final Set<ExtractionStage> skippedStages;
+    private int prunedCandidates;
+    private ExtractionTrace trace;
+
+    public ExtractionContext() {
+        this(ExtractionBudget.UNLIMITED);
+    }
+
+    public ExtractionContext(ExtractionBudget budget) {
+        this.budget = budget;
+        this.scores = new IdentityIntMap<Element>(256);
+        this.removed = new IdentityHashMap<Node, List<Element>>();
+        this.replacementParents = new IdentityHashMap<Element, Element>();
+        this.skippedStages = EnumSet.noneOf(ExtractionStage.class);
+    }
+
+    private ExtractionContext(ExtractionContext parent) {
+        this.budget = parent.budget;
+        this.scores = parent.scores;
+        this.removed = new IdentityHashMap<Node, List<Element>>(parent.removed);
+        this.modified.addAll(parent.modified);
+        this.replacementParents = new IdentityHashMap<Element, Element>(parent.replacementParents);
+        this.skippedStages = parent.skippedStages;
+        this.trace = parent.trace;
+    }
+
+    /**
+     * Creates a context to format the same scored tree once more, e.g. with
+     * another OutputFormatter. It shares the scores, the budget, the skipped
+     * stages and the trace with this context and starts with a copy of its
+     * removals, so the removals and paragraph indices one formatter records
+     * do not change the output of the other.
+     */
+    public ExtractionContext fork() {
+        return new ExtractionContext(this);
+    }
+
+    public ExtractionBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Records that a stage was skipped or cut short because the budget ran out.
+     */
+    public void skip(ExtractionStage stage) {
+        skippedStages.add(stage);
+    }
+
+    public Set<ExtractionStage> getSkippedStages() {
+        return skippedStages;
+    }
+
+    /**
+     * @param trace records how BestNodeFinder picks the best node, null to
+     * disable tracing
+     */
+    public void setTrace(ExtractionTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * @return the trace or null if tracing is disabled
+     */
+    public ExtractionTrace getTrace() {
+        return trace;
+    }
+
+    void addPrunedCandidate() {
+        prunedCandidates++;
+    }
+
+    /**
+     * @return the number of candidates BestNodeFinder did not weight completely
+     * because they could not beat the best node
+     */
+    public int getPrunedCandidates() {
+        return prunedCandidates;
+    }
+
+    public boolean hasScore(Element el) {
+        return scores.containsKey(el);
+    }
+
+    public int getScore(Element el) {
+        return scores.get(el, 0);
+    }
+
+    public void setScore(Element el, int score) {
+        scores.put(el, score);
+    }
+
+    public void addScore(Element el, int score) {
+        scores.add(el, score);
+    }
+
+    /**
+     * @return the paragraph index or -1 if the element is not a paragraph
+     */
+    public int getParagraphIndex(Element el) {
+        return paragraphIndices.get(el, -1);
+    }
+
+    public void setParagraphIndex(Element el, int index) {
+        paragraphIndices.put(el, index);
+    }
+
+    public void remove(Node node) {
+        remove(node, Collections.<Element>emptyList());
+    }
+
+    /**
+     * Marks the node as removed. The specified elements are treated as if
+     * they were inserted at the place of the removed node.
+     */
+    public void remove(Node node, List<Element> replacements) {
+        removed.put(node, replacements);
+        for (Element replacement : replacements) {
+            replacementParents.put(replacement, (Element) node.parent());
+        }
+        Node parent = node.parent();
+        while (parent != null && modified.add(parent)) {
+            parent = parent.parent();
+        }
+    }
+
+    public boolean isRemoved(Node node) {
+        return removed.containsKey(node);
+    }
+
+    /**
+     * @return the elements which replace the removed node, null if the node
+     * was not removed
+     */
+    List<Element> getReplacements(Node node) {
+        return removed.get(node);
+    }
+
+    /**
+     * @return true if a descendant of the node was removed
+     */
+    boolean isModified(Node node) {
+        return modified.contains(node);
+    }
+
+    /**
+     * @return true if the node or one of its ancestors below root was removed
+     */
+    public boolean isRemoved(Node node, Element root) {
+        while (node != null && node != root) {
+            if (isRemoved(node))
+                return true;
+            node = node.parent();
+        }
+        return false;
+    }
+
+    /**
+     * @return the parent element, also for replacement elements which are not
+     * part of the DOM
+     */
+    public Element parent(Element el) {
+        Element parent = replacementParents.get(el);
+        return parent != null ? parent : el.parent();
+    }
+
+    /**
+     * @return the child elements which were not removed
+     */
+    public List<Element> children(Element el) {
+        Elements children = el.children();
+        if (removed.isEmpty())
+            return children;
+
+        List<Element> res = new ArrayList<Element>(children.size());
+        for (Element child : children) {
+            if (!isRemoved(child))
+                res.add(child);
+        }
+        return res;
+    }
+
+    /**
+     * Like Element.select but skips removed nodes and includes their
+     * replacements. The root itself is never treated as removed.
+     */
+    public Elements select(Element root, final String query) {
+        Elements matches = root.select(query);
+        if (removed.isEmpty())
+            return matches;
+
+        final Set<Element> matchSet = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>());
+        matchSet.addAll(matches);
+        final Elements res = new Elements(matches.size());
+        traverse(root, new NodeVisitor() {
+            @Override
+            public void head(Node node, int depth) {
+                if (matchSet.contains(node)) {
+                    res.add((Element) node);
+                } else if (replacementParents.containsKey(node)) {
+                    // not part of the DOM, so match it on its own
+                    Element replacement = (Element) node;
+                    if (replacement.select(query).contains(replacement))
+                        res.add(replacement);
+                }
+            }
+
+            @Override
+            public void tail(Node node, int depth) {
+            }
+        }, true);
+        return res;
+    }
+
+    /**
+     * Like Element.text but skips removed nodes.
+     */
+    public String text(Element root) {
+        StringBuilder accum = new StringBuilder();
+        appendText(root, new TextAccumulator(accum));
+        return accum.toString().trim();
+    }
+
+    /**
+     * @return the same as text(root).length() without building the text
+     */
+    public int textLength(Element root) {
+        TextAccumulator accum = new TextAccumulator(null);
+        appendText(root, accum);
+        return accum.trimmedLength();
+    }
+
+    private void appendText(Element root, final TextAccumulator accum) {
+        traverse(root, new NodeVisitor() {
+            @Override
+            public void head(Node node, int depth) {
+                if (node instanceof TextNode) {
+                    appendNormalisedText(accum, (TextNode) node);
+                } else if (node instanceof Element) {
+                    Element element = (Element) node;
+                    if (accum.length() > 0 &&
+                            (element.isBlock() || TagCategories.is(element, TagCategories.LINE_BREAK)) &&
+                            !accum.lastCharIsWhitespace())
+                        accum.append(' ');
+                }
+            }
+
+            @Override
+            public void tail(Node node, int depth) {
+            }
+        }, false);
+    }
+
+    /**
+     * Like Element.outerHtml but without the removed nodes and with their
+     * replacements.
+     */
+    public String outerHtml(Element el) {
+        if (!modified.contains(el))
+            return el.outerHtml();
+
+        StringBuilder accum = new StringBuilder();
+        new OuterHtmlWriter(this, accum).write(el);
+        return accum.toString();
+    }
+
+    /**
+     * @return a detached copy of the element without the removed nodes and
+     * with their replacements. It is serialized with the output settings of the
+     * original document.
+     */
+    public Element copy(Element el) {
+        Element copy = el.clone();
+        Document ownerDocument = el.ownerDocument();
+        if (ownerDocument != null) {
+            // keep charset and escape mode of the original document
+            Document shell = Document.createShell(ownerDocument.baseUri());
+            shell.outputSettings(ownerDocument.outputSettings().clone());
+            shell.body().appendChild(copy);
+        }
+        if (modified.contains(el))
+            applyRemovals(el, copy);
+        return copy;
+    }
+
+    private void applyRemovals(Element orig, Element copy) {
+        // collect first as the copy gets modified
+        List<Node> origChildren = new ArrayList<Node>(orig.childNodes());
+        List<Node> copyChildren = new ArrayList<Node>(copy.childNodes());
+        for (int i = 0; i < origChildren.size(); i++) {
+            Node origChild = origChildren.get(i);
+            Node copyChild = copyChildren.get(i);
+            List<Element> replacements = removed.get(origChild);
+            if (replacements != null) {
+                for (Element replacement : replacements) {
+                    copyChild.before(replacement.clone());
+                }
+                copyChild.remove();
+            } else if (modified.contains(origChild)) {
+                applyRemovals((Element) origChild, (Element) copyChild);
+            }
+        }
+    }
+
+    /**
+     * Depth first traversal which does not descend into removed nodes. A node
+     * removed while visiting it is skipped as well.
+     */
+    private void traverse(Node root, NodeVisitor visitor, boolean withReplacements) {
+        Node node = root;
+        int depth = 0;
+        while (node != null) {
+            boolean skip = node != root && isRemoved(node);
+            if (skip) {
+                if (withReplacements) {
+                    for (Element replacement : removed.get(node)) {
+                        visitor.head(replacement, depth);
+                        visitor.tail(replacement, depth);
+                    }
+                }
+            } else {
+                visitor.head(node, depth);
+                skip = node != root && isRemoved(node);
+            }
+
+            if (!skip && node.childNodeSize() > 0) {
+                node = node.childNode(0);
+                depth++;
+            } else {
+                if (!skip)
+                    visitor.tail(node, depth);
+                while (node != root && node.nextSibling() == null && depth > 0) {
+                    node = node.parentNode();
+                    depth--;
+                    visitor.tail(node, depth);
+                }
+                if (node == root)
+                    break;
+                node = node.nextSibling();
+            }
+        }
+    }
+
+    // like StringUtil.appendNormalisedWhitespace, surrogates are never white space
+    private static void appendNormalisedText(TextAccumulator accum, TextNode textNode) {
+        String text = textNode.getWholeText();
+        if (preserveWhitespace(textNode.parentNode())) {
+            for (int i = 0; i < text.length(); i++) {
+                accum.append(text.charAt(i));
+            }
+            return;
+        }
+
+        boolean stripLeading = accum.lastCharIsWhitespace();
+        boolean lastWasWhite = false;
+        boolean reachedNonWhite = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (StringUtil.isWhitespace(c)) {
+                if (stripLeading && !reachedNonWhite || lastWasWhite)
+                    continue;
+                accum.append(' ');
+                lastWasWhite = true;
+            } else {
+                accum.append(c);
+                lastWasWhite = false;
+                reachedNonWhite = true;
+            }
+        }
+    }
+
+    private static boolean preserveWhitespace(Node node) {
+        if (node instanceof Element) {
+            Element element = (Element) node;
+            return element.tag().preserveWhitespace() ||
+                    element.parent() != null && element.parent().tag().preserveWhitespace();
+        }
+        return false;
+    }
+
+    /**
+     * Collects the text into a StringBuilder or, without one, only counts
+     * what String.trim would leave of it.
+     */
+    private static class TextAccumulator {
+
+        private final StringBuilder sb;
+        private int length;
+        private char last;
+        // chars up to ' ' before the first other char and after the last one
+        private int leading;
+        private int trailing;
+        private boolean reachedNonWhite;
+
+        TextAccumulator(StringBuilder sb) {
+            this.sb = sb;
+        }
+
+        void append(char c) {
+            if (sb != null)
+                sb.append(c);
+            length++;
+            last = c;
+            if (c > ' ') {
+                reachedNonWhite = true;
+                trailing = 0;
+            } else if (reachedNonWhite) {
+                trailing++;
+            } else {
+                leading++;
+            }
+        }
+
+        int length() {
+            return length;
+        }
+
+        boolean lastCharIsWhitespace() {
+            return length != 0 && last == ' ';
+        }
+
+        int trimmedLength() {
+            return reachedNonWhite ? length - leading - trailing : 0;
+        }
+    }
+}
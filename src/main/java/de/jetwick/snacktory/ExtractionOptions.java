@@ -0,0 +1,278 @@
+package de.jetwick.snacktory;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Selects the parts of a JResult which ArticleTextExtractor should compute.
+ * Every stage which is not needed for a selected field is skipped completely,
+ * e.g. a link preview with title, description and image never runs the
+ * formatter, the link extraction or the author search. Fields which were not
+ * selected keep their JResult defaults.
+ *
+ * A timeout and a node budget limit the work spent on a single document. When
+ * they are exceeded the extraction degrades instead of failing, see
+ * JResult.getSkippedStages.
+ *
+ * For large documents the candidates of the best node can be weighted in a
+ * ForkJoinPool, see Builder.parallelScoring. The result is the same as with
+ * the sequential scoring.
+ *
+ * Builder.trace records how the best node was picked, see ExtractionTrace.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public final class ExtractionOptions {
+
+    public static final int TITLE = 1;
+    public static final int DESCRIPTION = 1 << 1;
+    public static final int CANONICAL_URL = 1 << 2;
+    public static final int TYPE = 1 << 3;
+    public static final int SITENAME = 1 << 4;
+    public static final int LANGUAGE = 1 << 5;
+    public static final int AUTHOR_NAME = 1 << 6;
+    public static final int AUTHOR_DESCRIPTION = 1 << 7;
+    public static final int DATE = 1 << 8;
+    public static final int TEXT = 1 << 9;
+    /** the image url and the images of the best node */
+    public static final int IMAGES = 1 << 10;
+    public static final int LINKS = 1 << 11;
+    public static final int RSS_URL = 1 << 12;
+    public static final int VIDEO_URL = 1 << 13;
+    public static final int FAVICON_URL = 1 << 14;
+    public static final int KEYWORDS = 1 << 15;
+    /** the blocks of the best node, see JResult.getBlocks. It is not part of ALL. */
+    public static final int BLOCKS = 1 << 16;
+
+    private static final int ALL_FIELDS = (1 << 16) - 1;
+    private static final int KNOWN_FIELDS = ALL_FIELDS | BLOCKS;
+    // fields which need the MetadataIndex, the text is only kept if it is longer than
+    // the title and the image url falls back to the meta tags
+    private static final int METADATA = TITLE | DESCRIPTION | CANONICAL_URL | TYPE | SITENAME | LANGUAGE
+            | AUTHOR_NAME | AUTHOR_DESCRIPTION | DATE | TEXT | IMAGES | RSS_URL | VIDEO_URL | FAVICON_URL | KEYWORDS;
+    // fields which need the best matching node of the body
+    private static final int BEST_NODE = TEXT | IMAGES | LINKS | BLOCKS;
+
+    /** everything but the blocks, this is what the extractContent methods without options do */
+    public static final ExtractionOptions ALL = new ExtractionOptions(ALL_FIELDS);
+    /** everything except the images */
+    public static final ExtractionOptions ALL_WITHOUT_IMAGES = new ExtractionOptions(ALL_FIELDS & ~IMAGES);
+    /** title, description and image url, enough for a link preview */
+    public static final ExtractionOptions PREVIEW = new ExtractionOptions(TITLE | DESCRIPTION | IMAGES);
+    /** title and text */
+    public static final ExtractionOptions TEXT_ONLY = new ExtractionOptions(TITLE | TEXT);
+
+    private final int fields;
+    private final long timeoutMillis;
+    private final int maxNodes;
+    private final ForkJoinPool scoringPool;
+    private final int parallelScoringThreshold;
+    private final boolean traced;
+
+    private ExtractionOptions(int fields) {
+        this(fields, 0, 0, null, 0, false);
+    }
+
+    private ExtractionOptions(int fields, long timeoutMillis, int maxNodes, ForkJoinPool scoringPool,
+                              int parallelScoringThreshold, boolean traced) {
+        this.fields = fields;
+        this.timeoutMillis = timeoutMillis;
+        this.maxNodes = maxNodes;
+        this.scoringPool = scoringPool;
+        this.parallelScoringThreshold = parallelScoringThreshold;
+        this.traced = traced;
+    }
+
+    /**
+     * @param fields the selected fields, e.g. TITLE | TEXT
+     */
+    public static ExtractionOptions of(int fields) {
+        return new ExtractionOptions(checkFields(fields));
+    }
+
+    private static int checkFields(int fields) {
+        if ((fields & ~KNOWN_FIELDS) != 0)
+            throw new IllegalArgumentException("unknown fields " + Integer.toBinaryString(fields & ~KNOWN_FIELDS));
+        return fields;
+    }
+
+    public static Builder builder() {
+        return new Builder(0);
+    }
+
+    public Builder toBuilder() {
+        return new Builder(fields).timeout(timeoutMillis).maxNodes(maxNodes)
+                .parallelScoring(scoringPool, parallelScoringThreshold).trace(traced);
+    }
+
+    public int getFields() {
+        return fields;
+    }
+
+    /**
+     * @return the time in milliseconds one document may take, 0 if unlimited
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @return the number of elements the search for candidates and the
+     * formatter may each visit per document, 0 if unlimited
+     */
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * @return the pool the candidates are weighted in, null for the
+     * sequential scoring
+     */
+    public ForkJoinPool getScoringPool() {
+        return scoringPool;
+    }
+
+    /**
+     * @return the number of candidates from which on the scoring pool is used
+     */
+    public int getParallelScoringThreshold() {
+        return parallelScoringThreshold;
+    }
+
+    /**
+     * @return true if the results get an ExtractionTrace
+     */
+    public boolean isTraced() {
+        return traced;
+    }
+
+    /**
+     * @return true if at least one of the specified fields is selected
+     */
+    public boolean has(int field) {
+        return (fields & field) != 0;
+    }
+
+    boolean needsMetadata() {
+        return has(METADATA);
+    }
+
+    boolean needsBestNode() {
+        return has(BEST_NODE);
+    }
+
+    /**
+     * @return true if a timeout or a node limit is set, i.e. if the result
+     * may be degraded
+     */
+    boolean hasBudget() {
+        return timeoutMillis > 0 || maxNodes > 0;
+    }
+
+    public boolean isAll() {
+        return fields == ALL_FIELDS;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ExtractionOptions))
+            return false;
+        ExtractionOptions other = (ExtractionOptions) obj;
+        return fields == other.fields && timeoutMillis == other.timeoutMillis && maxNodes == other.maxNodes
+                && scoringPool == other.scoringPool && parallelScoringThreshold == other.parallelScoringThreshold
+                && traced == other.traced;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 31 * (31 * fields + (int) (timeoutMillis ^ (timeoutMillis >>> 32))) + maxNodes;
+        if (scoringPool != null)
+            hash = 31 * (31 * hash + System.identityHashCode(scoringPool)) + parallelScoringThreshold;
+        return traced ? 31 * hash + 1 : hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ExtractionOptions{" + Integer.toBinaryString(fields)
+                + (timeoutMillis > 0 ? ", timeout=" + timeoutMillis + "ms" : "")
+                + (maxNodes > 0 ? ", maxNodes=" + maxNodes : "")
+                + (scoringPool != null ? ", parallelScoring=" + parallelScoringThreshold : "")
+                + (traced ? ", traced" : "") + "}";
+    }
+
+    public static class Builder {
+
+        private int fields;
+        private long timeoutMillis;
+        private int maxNodes;
+        private ForkJoinPool scoringPool;
+        private int parallelScoringThreshold;
+        private boolean traced;
+
+        private Builder(int fields) {
+            this.fields = fields;
+        }
+
+        public Builder include(int field) {
+            fields |= checkFields(field);
+            return this;
+        }
+
+        public Builder exclude(int field) {
+            fields &= ~field;
+            return this;
+        }
+
+        /**
+         * @param timeoutMillis the time one document may take, 0 for no limit
+         */
+        public Builder timeout(long timeoutMillis) {
+            if (timeoutMillis < 0)
+                throw new IllegalArgumentException("timeout cannot be negative " + timeoutMillis);
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param maxNodes the number of elements the search for candidates
+         * and the formatter may each visit per document, 0 for no limit.
+         * Unlike the timeout it also bounds the work on a huge document
+         * before the first candidate is found.
+         */
+        public Builder maxNodes(int maxNodes) {
+            if (maxNodes < 0)
+                throw new IllegalArgumentException("maxNodes cannot be negative " + maxNodes);
+            this.maxNodes = maxNodes;
+            return this;
+        }
+
+        /**
+         * Weights the candidates of the best node in the specified pool if a
+         * document has at least minCandidates of them, e.g. 1000 for long
+         * wikipedia articles and forum archives. Only worth it for single
+         * large documents, a batch of pages is better split by page.
+         *
+         * @param pool null for the sequential scoring
+         */
+        public Builder parallelScoring(ForkJoinPool pool, int minCandidates) {
+            if (minCandidates < 0)
+                throw new IllegalArgumentException("minCandidates cannot be negative " + minCandidates);
+            this.scoringPool = pool;
+            this.parallelScoringThreshold = pool == null ? 0 : minCandidates;
+            return this;
+        }
+
+        /**
+         * @param traced true to explain the choice of the best node in
+         * JResult.getTrace, for debugging bad extractions
+         */
+        public Builder trace(boolean traced) {
+            this.traced = traced;
+            return this;
+        }
+
+        public ExtractionOptions build() {
+            return new ExtractionOptions(fields, timeoutMillis, maxNodes, scoringPool, parallelScoringThreshold,
+                    traced);
+        }
+    }
+}
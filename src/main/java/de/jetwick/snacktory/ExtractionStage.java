@@ -0,0 +1,20 @@
+package de.jetwick.snacktory;
+
+/**
+ * The parts of an extraction which are skipped or cut short when the budget
+ * of a document is exhausted, see ExtractionOptions.
+ */
+public enum ExtractionStage {
+
+    /** not all candidate nodes were collected, the rest of the page was ignored */
+    CANDIDATES,
+    /** not all candidates were weighted, the best one so far was used */
+    SCORING,
+    /** not all nodes of the best element were cleaned, the text may contain clutter */
+    FORMATTING,
+    AUTHOR_DESCRIPTION,
+    IMAGES,
+    LINKS,
+    /** the second pass without script removal for pages without text */
+    RETRY
+}
@@ -0,0 +1,227 @@
+package de.jetwick.snacktory;
+
+import org.jsoup.nodes.Element;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Explains how BestNodeFinder picked the best node: the features of the
+ * heaviest candidates, what each feature contributed to their weight and the
+ * final pick. Enable it per call with ExtractionOptions.Builder.trace, the
+ * trace is then available from JResult.getTrace:
+ *
+ * <pre>
+ * JResult res = extractor.extractContent(html, ExtractionOptions.ALL.toBuilder().trace(true).build());
+ * System.out.println(res.getTrace());
+ * </pre>
+ *
+ * Without a trace the finder only checks the context for null, it builds no
+ * strings and allocates nothing for it. With a trace every candidate is
+ * weighted completely in the calling thread, i.e. without pruning and
+ * without a scoring pool, the pick is the same.
+ *
+ * This class is not thread safe, use one instance per extraction.
+ */
+public class ExtractionTrace {
+
+    public static final int DEFAULT_TOP_CANDIDATES = 10;
+
+    private static final String[] FEATURE_NAMES = {
+        "positiveClass", "positiveId", "unlikelyClass", "unlikelyId", "negativeClass", "negativeId",
+        "negativeStyle", "positiveItemprop", "ownTextWeight", "childrenWeight", "grandChildrenWeight",
+        "headers", "caption", "ownTextLength", "textLength", "linkDensity", "childCount", "paragraphCount"
+    };
+
+    // the lightest candidate first, so it can be replaced by a heavier one
+    private static final Comparator<Candidate> LIGHTEST_FIRST = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate c1, Candidate c2) {
+            if (c1.weight != c2.weight)
+                return c1.weight < c2.weight ? -1 : 1;
+            // the later candidate loses a tie, like in BestNodeFinder
+            return c1.order > c2.order ? -1 : c1.order < c2.order ? 1 : 0;
+        }
+    };
+
+    private final int topCandidates;
+    private final PriorityQueue<Candidate> top;
+    private ScoringModel model;
+    private int candidateCount;
+    private Element pick;
+    private int pickWeight;
+
+    public ExtractionTrace() {
+        this(DEFAULT_TOP_CANDIDATES);
+    }
+
+    /**
+     * @param topCandidates the number of candidates whose features are kept
+     */
+    public ExtractionTrace(int topCandidates) {
+        if (topCandidates < 1)
+            throw new IllegalArgumentException("topCandidates has to be positive but was " + topCandidates);
+        this.topCandidates = topCandidates;
+        this.top = new PriorityQueue<Candidate>(topCandidates + 1, LIGHTEST_FIRST);
+    }
+
+    /**
+     * Called by BestNodeFinder for every weighted candidate in document order.
+     */
+    void candidate(Element element, int weight, int[] features) {
+        int order = candidateCount++;
+        if (top.size() == topCandidates) {
+            Candidate lightest = top.peek();
+            if (weight <= lightest.weight)
+                return;
+            top.poll();
+        }
+        top.add(new Candidate(element, order, weight, features.clone()));
+    }
+
+    /**
+     * Called by BestNodeFinder after all candidates are weighted.
+     *
+     * @param element the best node, null if no candidate was heavy enough
+     */
+    void pick(ScoringModel model, Element element, int weight) {
+        this.model = model;
+        this.pick = element;
+        this.pickWeight = weight;
+    }
+
+    /**
+     * @return the best node, null if there was none
+     */
+    public Element getPick() {
+        return pick;
+    }
+
+    public int getPickWeight() {
+        return pickWeight;
+    }
+
+    /**
+     * @return the number of weighted candidates
+     */
+    public int getCandidateCount() {
+        return candidateCount;
+    }
+
+    public ScoringModel getScoringModel() {
+        return model;
+    }
+
+    /**
+     * @return the heaviest candidates, the heaviest first
+     */
+    public List<Candidate> getTopCandidates() {
+        List<Candidate> list = new ArrayList<Candidate>(top);
+        Collections.sort(list, Collections.reverseOrder(LIGHTEST_FIRST));
+        return list;
+    }
+
+    /**
+     * @return the name of a feature of ScoringModel, e.g. "childrenWeight"
+     */
+    public static String getFeatureName(int feature) {
+        return FEATURE_NAMES[feature];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("picked ").append(pick == null ? "nothing" : describe(pick));
+        if (pick != null)
+            sb.append(" with weight ").append(pickWeight);
+        sb.append(" out of ").append(candidateCount).append(" candidates");
+        int rank = 1;
+        for (Candidate c : getTopCandidates()) {
+            sb.append('\n').append(rank++).append(". ");
+            c.appendTo(sb);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the tag name with the id and the class names, like a css selector
+     */
+    static String describe(Element el) {
+        StringBuilder sb = new StringBuilder(el.tagName());
+        if (!el.id().isEmpty())
+            sb.append('#').append(el.id());
+        for (String name : el.classNames()) {
+            if (!name.isEmpty())
+                sb.append('.').append(name);
+        }
+        return sb.toString();
+    }
+
+    public class Candidate {
+
+        private final Element element;
+        private final int order;
+        private final int weight;
+        private final int[] features;
+
+        Candidate(Element element, int order, int weight, int[] features) {
+            this.element = element;
+            this.order = order;
+            this.weight = weight;
+            this.features = features;
+        }
+
+        public Element getElement() {
+            return element;
+        }
+
+        /**
+         * @return the position of the candidate in document order
+         */
+        public int getOrder() {
+            return order;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * @param feature one of the feature constants of ScoringModel
+         */
+        public int getFeature(int feature) {
+            return features[feature];
+        }
+
+        /**
+         * @return the part of the weight which comes from the feature, NaN
+         * if the model is not a LinearScoringModel
+         */
+        public double getContribution(int feature) {
+            if (!(model instanceof LinearScoringModel))
+                return Double.NaN;
+            return ((LinearScoringModel) model).getWeight(feature) * features[feature];
+        }
+
+        void appendTo(StringBuilder sb) {
+            sb.append(describe(element)).append(" weight ").append(weight).append(':');
+            for (int i = 0; i < features.length; i++) {
+                if (features[i] == 0)
+                    continue;
+                sb.append(' ').append(FEATURE_NAMES[i]).append('=').append(features[i]);
+                double contribution = getContribution(i);
+                if (!Double.isNaN(contribution))
+                    sb.append(" (").append(contribution).append(')');
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            appendTo(sb);
+            return sb.toString();
+        }
+    }
+}
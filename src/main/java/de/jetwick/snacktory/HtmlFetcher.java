@@ -16,6 +16,7 @@
 package de.jetwick.snacktory;
 
 import de.jetwick.snacktory.utils.SHelper;
+import de.jetwick.snacktory.utils.TextNormalizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,6 +25,7 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -111,9 +113,21 @@ public class HtmlFetcher {
         }
     };
 
+    // subclasses which stub or wrap fetchAsString keep getting their pages through it
+    private final boolean fetchAsStringOverridden = overrides("fetchAsString", String.class, int.class)
+            || overrides("fetchAsString", String.class, int.class, boolean.class);
+
     public HtmlFetcher() {
     }
 
+    private boolean overrides(String name, Class<?>... parameterTypes) {
+        try {
+            return getClass().getMethod(name, parameterTypes).getDeclaringClass() != HtmlFetcher.class;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
     public void setExtractor(ArticleTextExtractor extractor) {
         this.extractor = extractor;
     }
@@ -202,9 +216,21 @@ public class HtmlFetcher {
         return fetchAndExtract(url, timeout, resolve, 0, false);
     }
 
-    // main workhorse to call externally
     public JResult fetchAndExtract(String url, int timeout, boolean resolve, 
                                    int maxContentSize, boolean forceReload) throws Exception {
+        return fetchAndExtract(url, timeout, resolve, maxContentSize, forceReload, ExtractionOptions.ALL);
+    }
+
+    // main workhorse to call externally
+    /**
+     * @param options the fields to extract. Only results of ExtractionOptions.ALL
+     * without a budget are put into the cache, but a cached result is returned
+     * for all options except traced ones.
+     */
+    public JResult fetchAndExtract(String url, int timeout, boolean resolve, int maxContentSize,
+                                   boolean forceReload, ExtractionOptions options) throws Exception {
+        // a partial or degraded result must not be served for a later complete request
+        SCache resultCache = options.isAll() && !options.hasBudget() && !options.isTraced() ? cache : null;
         String originalUrl = url;
         url = SHelper.removeHashbang(url);
         String gUrl = SHelper.getUrlFromUglyGoogleRedirect(url);
@@ -218,7 +244,7 @@ public class HtmlFetcher {
 
         if (resolve) {
             // check if we can avoid resolving the URL (which hits the website!)
-            JResult res = getFromCache(url, originalUrl);
+            JResult res = options.isTraced() ? null : getFromCache(url, originalUrl);
             if (res != null)
                 return res;
 
@@ -228,8 +254,8 @@ public class HtmlFetcher {
                     logger.warn("resolved url is empty. Url is: " + url);
 
                 JResult result = new JResult();
-                if (cache != null)
-                    cache.put(url, result);
+                if (resultCache != null)
+                    resultCache.put(url, result);
                 return result.setUrl(url);
             }
 
@@ -242,7 +268,7 @@ public class HtmlFetcher {
         }
 
         // check if we have the (resolved) URL in cache
-        JResult res = getFromCache(url, originalUrl);
+        JResult res = options.isTraced() ? null : getFromCache(url, originalUrl);
         if (res != null)
             return res;
 
@@ -252,9 +278,9 @@ public class HtmlFetcher {
         result.setOriginalUrl(originalUrl);
 
         // Immediately put the url into the cache as extracting content takes time.
-        if (cache != null) {
-            cache.put(originalUrl, result);
-            cache.put(url, result);
+        if (resultCache != null) {
+            resultCache.put(originalUrl, result);
+            resultCache.put(url, result);
         }
 
         // extract content to the extent appropriate for content type
@@ -271,12 +297,12 @@ public class HtmlFetcher {
                 if(forceReload){
                     urlToDownload = getURLtoBreakCache(url);
                 } 
-                extractor.extractContent(result, fetchAsString(urlToDownload, timeout), maxContentSize);
+                fetchAndExtractContent(result, urlToDownload, timeout, options, maxContentSize);
             } catch (IOException io){
                 // do nothing
                 String a = "403";
             }
-            if (result.getFaviconUrl().isEmpty())
+            if (options.has(ExtractionOptions.FAVICON_URL) && result.getFaviconUrl().isEmpty())
                 result.setFaviconUrl(SHelper.getDefaultFavicon(url));
 
             // some links are relative to root and do not include the domain of the url :(
@@ -317,10 +343,7 @@ public class HtmlFetcher {
         if (text == null)
             return "";
 
-        if (maxTextLength >= 0 && text.length() > maxTextLength)
-            return text.substring(0, maxTextLength);
-
-        return text;
+        return TextNormalizer.normalize(text, 0, -1, maxTextLength);
     }
 
     private static String fixUrl(String url, String urlOrPath) {
@@ -337,15 +360,7 @@ public class HtmlFetcher {
             throws MalformedURLException, IOException {
         HttpURLConnection hConn = createUrlConnection(urlAsString, timeout, includeSomeGooseOptions);
         hConn.setInstanceFollowRedirects(true);
-        String encoding = hConn.getContentEncoding();
-        InputStream is;
-        if (encoding != null && encoding.equalsIgnoreCase("gzip")) {
-            is = new GZIPInputStream(hConn.getInputStream());
-        } else if (encoding != null && encoding.equalsIgnoreCase("deflate")) {
-            is = new InflaterInputStream(hConn.getInputStream(), new Inflater(true));
-        } else {
-            is = hConn.getInputStream();
-        }
+        InputStream is = getInputStream(hConn);
 
         String enc = Converter.extractEncoding(hConn.getContentType());
         String res = createConverter(urlAsString).streamToString(is, enc);
@@ -354,6 +369,43 @@ public class HtmlFetcher {
         return res;
     }
 
+    /**
+     * Fetches the page and extracts it into result, called by fetchAndExtract.
+     * Like extracting the result of fetchAsString but the raw bytes are
+     * decoded by the extractor, which saves a copy of the page. The connection
+     * is opened with createUrlConnection. If a subclass overrides
+     * fetchAsString the page is fetched through it instead.
+     */
+    protected void fetchAndExtractContent(JResult result, String urlAsString, int timeout,
+                                          ExtractionOptions options, int maxContentSize) throws Exception {
+        if (fetchAsStringOverridden) {
+            extractor.extractContent(result, fetchAsString(urlAsString, timeout), options, maxContentSize);
+            return;
+        }
+
+        HttpURLConnection hConn = createUrlConnection(urlAsString, timeout, true);
+        hConn.setInstanceFollowRedirects(true);
+        InputStream is = getInputStream(hConn);
+
+        String enc = Converter.extractEncoding(hConn.getContentType());
+        Converter converter = createConverter(urlAsString);
+        ByteBuffer html = converter.streamToBytes(is, converter.getMaxBytes(), hConn.getContentLength());
+        if (logger.isDebugEnabled())
+            logger.debug(html.remaining() + " FetchAsBytes:" + urlAsString);
+        extractor.extractContent(result, html, enc, options, maxContentSize);
+    }
+
+    private InputStream getInputStream(HttpURLConnection hConn) throws IOException {
+        String encoding = hConn.getContentEncoding();
+        if (encoding != null && encoding.equalsIgnoreCase("gzip")) {
+            return new GZIPInputStream(hConn.getInputStream());
+        } else if (encoding != null && encoding.equalsIgnoreCase("deflate")) {
+            return new InflaterInputStream(hConn.getInputStream(), new Inflater(true));
+        } else {
+            return hConn.getInputStream();
+        }
+    }
+
     public Converter createConverter(String url) {
         return new Converter(url);
     }
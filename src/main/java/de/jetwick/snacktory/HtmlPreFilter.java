@@ -0,0 +1,246 @@
+package de.jetwick.snacktory;
+
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+
+/**
+ * Drops script, noscript, style and svg elements and comments from the html
+ * before it is parsed, so jsoup never tokenizes them. On many news pages these
+ * make up most of the bytes, e.g. inline json and style sheets.
+ *
+ * The filtered html is a copy, which only pays off if a good part of the page
+ * is dropped. Otherwise the html is returned as is and the extractor ignores
+ * the same nodes after parsing, see isDropped.
+ *
+ * This is a small scanner, not a parser. It skips the attributes of other
+ * tags with their quotes and keeps the content of title, textarea and the
+ * other raw text elements as is, so a "&lt;script" in there is not taken for
+ * a tag.
+ */
+public class HtmlPreFilter {
+
+    // below this share of dropped chars the copy allocates more than the parser saves
+    private static final int MIN_DROPPED_DIVISOR = 3;
+
+    /**
+     * @return the html without the dropped elements or the specified string
+     * itself if they are less than a third of it
+     */
+    public static String filter(String html) {
+        // start and end of every dropped range, so the result can be sized exactly
+        int[] ranges = null;
+        int count = 0;
+        int droppedChars = 0;
+        int len = html.length();
+        int minDropped = Math.max(1, len / MIN_DROPPED_DIVISOR);
+        int i = html.indexOf('<');
+        while (i >= 0 && i < len - 1) {
+            if (droppedChars + len - i < minDropped)
+                return html;
+
+            int end;
+            char c = html.charAt(i + 1);
+            if (c == '!' && html.startsWith("<!--", i)) {
+                end = skipComment(html, i + 4);
+            } else if (isLetter(c)) {
+                end = skipTag(html, i);
+                String name = specialTag(html, i, c);
+                if (name == null) {
+                    i = end >= len ? -1 : html.indexOf('<', end);
+                    continue;
+                } else if (name.equals("svg")) {
+                    end = skipSvg(html, end);
+                } else {
+                    end = skipElement(html, end, name);
+                    if (!isDropped(name)) {
+                        i = end >= len ? -1 : html.indexOf('<', end);
+                        continue;
+                    }
+                }
+            } else {
+                i = html.indexOf('<', i + 1);
+                continue;
+            }
+
+            if (ranges == null) {
+                ranges = new int[16];
+            } else if (count == ranges.length) {
+                int[] tmp = new int[count * 2];
+                System.arraycopy(ranges, 0, tmp, 0, count);
+                ranges = tmp;
+            }
+            ranges[count++] = i;
+            ranges[count++] = end;
+            droppedChars += end - i;
+            i = end >= len ? -1 : html.indexOf('<', end);
+        }
+
+        if (droppedChars < minDropped)
+            return html;
+        StringBuilder sb = new StringBuilder(len - droppedChars);
+        int copied = 0;
+        for (int r = 0; r < count; r += 2) {
+            sb.append(html, copied, ranges[r]);
+            copied = ranges[r + 1];
+        }
+        sb.append(html, copied, len);
+        return sb.toString();
+    }
+
+    /**
+     * @return the name of a dropped, svg or raw text element starting at pos,
+     * null for all other tags
+     */
+    private static String specialTag(String html, int pos, char first) {
+        switch (first) {
+            case 's':
+            case 'S':
+                return isTag(html, pos, "script") ? "script" : isTag(html, pos, "style") ? "style"
+                        : isTag(html, pos, "svg") ? "svg" : null;
+            case 'n':
+            case 'N':
+                return isTag(html, pos, "noscript") ? "noscript" : isTag(html, pos, "noembed") ? "noembed"
+                        : isTag(html, pos, "noframes") ? "noframes" : null;
+            case 't':
+            case 'T':
+                return isTag(html, pos, "title") ? "title" : isTag(html, pos, "textarea") ? "textarea" : null;
+            case 'x':
+            case 'X':
+                return isTag(html, pos, "xmp") ? "xmp" : null;
+            case 'i':
+            case 'I':
+                return isTag(html, pos, "iframe") ? "iframe" : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return true if the node is one of those which filter drops
+     */
+    public static boolean isDropped(Node node) {
+        if (node instanceof Comment)
+            return true;
+        if (!(node instanceof Element))
+            return false;
+        String name = ((Element) node).tagName();
+        return isDropped(name) || name.equals("svg");
+    }
+
+    // the other special tags are raw text elements whose content is kept as is
+    private static boolean isDropped(String name) {
+        return name.equals("script") || name.equals("noscript") || name.equals("style");
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    /**
+     * @return true if a start tag with the specified lower case name starts at pos
+     */
+    private static boolean isTag(String html, int pos, String name) {
+        if (!html.regionMatches(true, pos + 1, name, 0, name.length()))
+            return false;
+        int after = pos + 1 + name.length();
+        if (after >= html.length())
+            return true;
+        char c = html.charAt(after);
+        return c == '>' || c == '/' || Character.isWhitespace(c);
+    }
+
+    /**
+     * @param start the index after "&lt;!--"
+     * @return the index after the comment. Like in the tokenizer of jsoup
+     * "&lt;!--&gt;" and "&lt;!---&gt;" are complete comments and "--!&gt;"
+     * ends a comment too.
+     */
+    private static int skipComment(String html, int start) {
+        if (html.startsWith(">", start))
+            return start + 1;
+        if (html.startsWith("->", start))
+            return start + 2;
+
+        int dashes = html.indexOf("--", start);
+        while (dashes >= 0) {
+            if (html.startsWith(">", dashes + 2))
+                return dashes + 3;
+            if (html.startsWith("!>", dashes + 2))
+                return dashes + 4;
+            dashes = html.indexOf("--", dashes + 1);
+        }
+        return html.length();
+    }
+
+    /**
+     * @return the position after the '&gt;' of the tag starting at pos
+     */
+    private static int skipTag(String html, int pos) {
+        int len = html.length();
+        char prev = 0;
+        for (int i = pos + 1; i < len; i++) {
+            char c = html.charAt(i);
+            if (c == '>') {
+                return i + 1;
+            } else if ((c == '"' || c == '\'') && prev == '=') {
+                int close = html.indexOf(c, i + 1);
+                if (close < 0)
+                    return len;
+                i = close;
+                c = 0;
+            }
+            if (!Character.isWhitespace(c))
+                prev = c;
+        }
+        return len;
+    }
+
+    /**
+     * @return the position after the end tag of a raw text element with the
+     * specified name, the end of the input if it is never closed
+     */
+    private static int skipElement(String html, int contentStart, String name) {
+        int len = html.length();
+        int i = html.indexOf("</", contentStart);
+        while (i >= 0) {
+            if (html.regionMatches(true, i + 2, name, 0, name.length())) {
+                int after = i + 2 + name.length();
+                if (after >= len)
+                    return len;
+                char c = html.charAt(after);
+                if (c == '>' || c == '/' || Character.isWhitespace(c))
+                    return skipTag(html, i);
+            }
+            i = html.indexOf("</", i + 2);
+        }
+        return len;
+    }
+
+    /**
+     * @return the position after the matching &lt;/svg&gt;
+     */
+    private static int skipSvg(String html, int contentStart) {
+        if (html.charAt(contentStart - 2) == '/')
+            return contentStart;
+
+        int depth = 1;
+        int i = html.indexOf('<', contentStart);
+        while (i >= 0) {
+            if (html.startsWith("</", i) && html.regionMatches(true, i + 2, "svg", 0, 3)) {
+                int end = skipTag(html, i);
+                if (--depth == 0)
+                    return end;
+                i = html.indexOf('<', end);
+            } else if (isTag(html, i, "svg")) {
+                int end = skipTag(html, i);
+                if (html.charAt(end - 2) != '/')
+                    depth++;
+                i = html.indexOf('<', end);
+            } else {
+                i = html.indexOf('<', i + 1);
+            }
+        }
+        return html.length();
+    }
+}
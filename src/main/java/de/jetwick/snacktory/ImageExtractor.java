@@ -11,9 +11,13 @@ import java.util.List;
 public class ImageExtractor {
 
     public static Element extractImages(Element el, List<ImageResult> images) {
+        return extractImages(el, images, new ExtractionContext());
+    }
+
+    public static Element extractImages(Element el, List<ImageResult> images, ExtractionContext ctx) {
         int maxWeight = 0;
         Element maxNode = null;
-        Elements imgs = getImages(el);
+        Elements imgs = getImages(el, ctx);
 
         double score = 1;
         for (Element img : imgs) {
@@ -36,9 +40,13 @@ public class ImageExtractor {
     }
 
     public static Elements getImages(Element el){
-        Elements els = el.select("img");
+        return getImages(el, new ExtractionContext());
+    }
+
+    public static Elements getImages(Element el, ExtractionContext ctx){
+        Elements els = ctx.select(el, "img");
         if (els.isEmpty())
-            els = el.parent().select("img");
+            els = ctx.select(el.parent(), "img");
         return els;
     }
 
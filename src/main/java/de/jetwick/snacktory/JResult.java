@@ -15,14 +15,17 @@
  */
 package de.jetwick.snacktory;
 
+import de.jetwick.snacktory.output.TextBlocks;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -40,6 +43,8 @@ public class JResult implements Serializable {
     private String videoUrl;
     private String rssUrl;
     private String text;
+    private List<String> texts;
+    private TextBlocks blocks;
     private String faviconUrl;
     private String description;
     private String authorName;
@@ -51,6 +56,9 @@ public class JResult implements Serializable {
     private String type;
     private String sitename;
     private String language;
+    private Set<ExtractionStage> skippedStages = EnumSet.noneOf(ExtractionStage.class);
+    // references the parsed document, only for debugging
+    private transient ExtractionTrace trace;
 
     public JResult() {
     }
@@ -162,6 +170,39 @@ public class JResult implements Serializable {
         return this;
     }
 
+    /**
+     * @return the text of each formatter the extraction was called with, in
+     * their order and empty if the text was not extracted. The first one is
+     * the text of getText.
+     */
+    public List<String> getTexts() {
+        if (texts == null)
+            return Collections.emptyList();
+
+        return texts;
+    }
+
+    public JResult setTexts(List<String> texts) {
+        this.texts = texts;
+        return this;
+    }
+
+    /**
+     * @return the blocks of the best node as the first formatter sees them,
+     * empty unless ExtractionOptions.BLOCKS was selected
+     */
+    public TextBlocks getBlocks() {
+        if (blocks == null)
+            return TextBlocks.EMPTY;
+
+        return blocks;
+    }
+
+    public JResult setBlocks(TextBlocks blocks) {
+        this.blocks = blocks;
+        return this;
+    }
+
     public String getTitle() {
         if (title == null)
             return "";
@@ -267,6 +308,37 @@ public class JResult implements Serializable {
 		this.language = language;
 	}
 
+    /**
+     * @return the stages which were skipped or cut short because the budget of
+     * ExtractionOptions ran out, empty if the extraction is complete
+     */
+    public Set<ExtractionStage> getSkippedStages() {
+        return Collections.unmodifiableSet(skippedStages);
+    }
+
+    public void addSkippedStages(Collection<ExtractionStage> stages) {
+        skippedStages.addAll(stages);
+    }
+
+    /**
+     * @return true if the budget ran out and the result may be less accurate
+     */
+    public boolean isDegraded() {
+        return !skippedStages.isEmpty();
+    }
+
+    /**
+     * @return how the best node was picked if ExtractionOptions.Builder.trace
+     * was enabled, otherwise null
+     */
+    public ExtractionTrace getTrace() {
+        return trace;
+    }
+
+    public void setTrace(ExtractionTrace trace) {
+        this.trace = trace;
+    }
+
     @Override
     public String toString() {
         return "title:" + getTitle() + " imageUrl:" + getImageUrl() + " text:" + text;
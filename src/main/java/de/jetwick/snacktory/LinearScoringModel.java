@@ -0,0 +1,78 @@
+package de.jetwick.snacktory;
+
+import java.util.Arrays;
+
+/**
+ * Scores a candidate with the dot product of its features and a weight
+ * vector, rounded to an int. With integral weights the score is exact.
+ *
+ * DEFAULT holds the weights BestNodeFinder always used, a tuned model usually
+ * starts from a copy of them:
+ *
+ * <pre>
+ * double[] weights = LinearScoringModel.DEFAULT.getWeights();
+ * weights[ScoringModel.LINK_DENSITY] = -0.2;
+ * new LinearScoringModel(weights);
+ * </pre>
+ */
+public class LinearScoringModel implements ScoringModel {
+
+    public static final LinearScoringModel DEFAULT;
+
+    static {
+        double[] weights = new double[FEATURE_COUNT];
+        weights[POSITIVE_CLASS] = 35;
+        weights[POSITIVE_ID] = 45;
+        weights[UNLIKELY_CLASS] = -20;
+        weights[UNLIKELY_ID] = -20;
+        weights[NEGATIVE_CLASS] = -50;
+        weights[NEGATIVE_ID] = -50;
+        weights[NEGATIVE_STYLE] = -50;
+        weights[POSITIVE_ITEMPROP] = 100;
+        weights[OWN_TEXT_WEIGHT] = 1;
+        weights[CHILDREN_WEIGHT] = 1;
+        weights[GRANDCHILDREN_WEIGHT] = 1;
+        weights[HEADERS] = 20;
+        weights[CAPTION] = 30;
+        DEFAULT = new LinearScoringModel(weights);
+    }
+
+    private final double[] weights;
+
+    /**
+     * @param weights one weight per feature, see the constants of ScoringModel
+     */
+    public LinearScoringModel(double... weights) {
+        if (weights.length != FEATURE_COUNT)
+            throw new IllegalArgumentException("expected " + FEATURE_COUNT + " weights but got " + weights.length);
+        this.weights = weights.clone();
+    }
+
+    /**
+     * @return a copy of the weights
+     */
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * @param feature one of the feature constants of ScoringModel
+     */
+    public double getWeight(int feature) {
+        return weights[feature];
+    }
+
+    @Override
+    public int score(int[] features) {
+        double score = 0;
+        for (int i = 0; i < FEATURE_COUNT; i++) {
+            score += weights[i] * features[i];
+        }
+        return (int) Math.round(score);
+    }
+
+    @Override
+    public String toString() {
+        return "LinearScoringModel" + Arrays.toString(weights);
+    }
+}
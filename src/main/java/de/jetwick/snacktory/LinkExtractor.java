@@ -0,0 +1,46 @@
+package de.jetwick.snacktory;
+
+import de.jetwick.snacktory.utils.UrlResolver;
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the links of the best element together with the offset of each
+ * a tag in the outer html of the element.
+ */
+public class LinkExtractor {
+
+    public static void extractLinks(Element el, JResult res) {
+        extractLinks(el, res, new ExtractionContext());
+    }
+
+    /**
+     * Serializes the element once and records the offset of every link while
+     * its start tag is written, instead of searching the serialization of
+     * every link in the serialization of the element. The offsets are those
+     * of ctx.outerHtml(el).
+     */
+    public static void extractLinks(Element el, JResult res, ExtractionContext ctx) {
+        final List<Element> links = new ArrayList<Element>();
+        final List<Integer> offsets = new ArrayList<Integer>();
+        final StringBuilder html = new StringBuilder();
+        new OuterHtmlWriter(ctx, html) {
+            @Override
+            protected void startTag(Element tag) {
+                // same as select("a[href]"), a with href = link
+                if (tag.tagName().equals("a") && tag.hasAttr("href")) {
+                    links.add(tag);
+                    offsets.add(html.length());
+                }
+            }
+        }.write(el);
+
+        UrlResolver resolver = new UrlResolver(el.baseUri());
+        for (int i = 0; i < links.size(); i++) {
+            Element link = links.get(i);
+            res.addLink(resolver.resolve(link.attr("href")), ctx.text(link), offsets.get(i));
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package de.jetwick.snacktory;
+
+import de.jetwick.snacktory.utils.IdentityIntMap;
+import de.jetwick.snacktory.utils.SHelper;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The text statistics BestNodeFinder weights its candidates with, computed in
+ * one post-order traversal of the subtrees of the candidates, the rest of
+ * the document is not visited. Every element gets an index; its own text
+ * length, its score as child of a candidate and the sum over its children
+ * are kept in primitive arrays. So the ownText of every element is built
+ * once instead of once per candidate parent and grandparent. The negative
+ * check of the class and id only runs for the children of candidates.
+ *
+ * Only children which are not removed in the context count, like in
+ * ExtractionContext.children. Valid as long as the context does not remove
+ * further nodes.
+ *
+ * With a pool the own text of the elements is measured in parallel, the
+ * sums over the children are added up afterwards in post-order as before.
+ * Once built the statistics can be read from several threads as long as
+ * each element and its children are weighted by one thread only, see
+ * childrenWeight.
+ */
+class NodeStats {
+
+  private static final int QUALIFIES = 1;
+  private static final int DIV_OR_P = 1 << 1;
+  private static final int NEGATIVE = 1 << 2;
+  private static final int NEGATIVE_CHECKED = 1 << 3;
+  private static final int REMOVED = 1 << 4;
+  private static final int HAS_CAPTION = 1 << 5;
+  private static final int IS_CAPTION = 1 << 6;
+  private static final int LONG_PARAGRAPH = 1 << 7;
+  private static final int LINK = 1 << 8;
+
+  // elements measured by one task of the pool
+  private static final int MEASURE_CHUNK = 1024;
+
+  private final ExtractionContext ctx;
+  private final TokenClassifier classifier;
+  private final int negativeBit;
+  private final ForkJoinPool pool;
+  private final IdentityIntMap<Element> indices = new IdentityIntMap<Element>(1024);
+  private int size;
+
+  private Element[] elements = new Element[256];
+  private int[] parent = new int[256];
+  private int[] lastChild = new int[256];
+  private int[] previousSibling = new int[256];
+  private int[] ownTextLength = new int[256];
+  // the weight of a qualifying element for the weight of its parent
+  private int[] ownWeight = new int[256];
+  // the weight of a qualifying div or p for the weight of its parent and its score
+  private int[] childScore = new int[256];
+  private int[] flags = new int[256];
+  // sums over the children
+  private int[] childrenWeight = new int[256];
+  // the grandchildren weight if no child looked negative
+  private int[] maxGrandChildrenWeight = new int[256];
+  private int[] paragraphCount = new int[256];
+  private int[] childCount = new int[256];
+  // the own text of all descendants and the part of it within links
+  private int[] textLength = new int[256];
+  private int[] linkTextLength = new int[256];
+  // how often the element was weighted as candidate
+  private int[] weighted = new int[256];
+  // the indices in the order their subtrees end
+  private int[] postOrder = new int[256];
+
+  /**
+   * @param negativeBit the bit of classifier for class names and ids which
+   * look negative
+   */
+  NodeStats(ExtractionContext ctx, TokenClassifier classifier, int negativeBit) {
+    this(ctx, classifier, negativeBit, null);
+  }
+
+  /**
+   * @param pool measures the own text of the elements in parallel, null to
+   * do it in the calling thread
+   */
+  NodeStats(ExtractionContext ctx, TokenClassifier classifier, int negativeBit, ForkJoinPool pool) {
+    this.ctx = ctx;
+    this.classifier = classifier;
+    this.negativeBit = negativeBit;
+    this.pool = pool;
+  }
+
+  /**
+   * @return the index of the element, the subtree of the element is
+   * traversed on the first call if it is not within an indexed subtree
+   */
+  int index(Element el) {
+    int index = indices.get(el, -1);
+    if (index >= 0)
+      return index;
+
+    traverse(el);
+    return indices.get(el, -1);
+  }
+
+  /**
+   * Traverses only the tree below root, the statistics of these elements do
+   * not depend on the rest of the document.
+   */
+  void indexSubtree(Element root) {
+    if (indices.get(root, -1) < 0)
+      traverse(root);
+  }
+
+  /**
+   * Traverses the subtrees of the elements which are not within the subtree
+   * of another one of them, in any order. The rest of the document is not
+   * measured, the weights of the elements and the scores of their children
+   * and grandchildren only depend on their subtrees.
+   */
+  void indexSubtrees(Collection<Element> roots) {
+    Set<Element> set = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>(roots.size() * 2));
+    set.addAll(roots);
+    for (Element root : roots) {
+      if (indices.get(root, -1) >= 0)
+        continue;
+      boolean nested = false;
+      for (Element p = root.parent(); p != null && !nested; p = p.parent()) {
+        nested = set.contains(p);
+      }
+      if (!nested)
+        traverse(root);
+    }
+  }
+
+  Element element(int index) {
+    return elements[index];
+  }
+
+  int ownTextLength(int index) {
+    return ownTextLength[index];
+  }
+
+  /**
+   * @return the weight of the children
+   */
+  int childrenWeight(int index) {
+    return childrenWeight[index];
+  }
+
+  /**
+   * @return the weight of the grandchildren. Caches the negative check of the
+   * children, so the children of one element must not be weighted by two
+   * threads at the same time.
+   */
+  int grandChildrenWeight(int index) {
+    int grandChildrenWeight = 0;
+    for (int child = lastChild[index]; child >= 0; child = previousSibling[child]) {
+      // if the node looks negative don't include it in the weights instead
+      // penalize the grandparent, to avoid weighting navigation nodes
+      if (isNegative(child))
+        grandChildrenWeight -= 30;
+      else
+        grandChildrenWeight += childrenWeight[child];
+    }
+    return grandChildrenWeight;
+  }
+
+  /**
+   * @return an upper bound of the children weight plus a third of the
+   * grandchildren weight which needs no negative checks
+   */
+  int maxChildrenWeight(int index) {
+    return childrenWeight[index] + maxGrandChildrenWeight[index] / 3;
+  }
+
+  private boolean isNegative(int index) {
+    if ((flags[index] & NEGATIVE_CHECKED) == 0) {
+      Element el = elements[index];
+      flags[index] |= NEGATIVE_CHECKED;
+      if (classifier.matches(el.id(), negativeBit) || classifier.matches(el.className(), negativeBit))
+        flags[index] |= NEGATIVE;
+    }
+    return (flags[index] & NEGATIVE) != 0;
+  }
+
+  boolean hasCaption(int index) {
+    return (flags[index] & HAS_CAPTION) != 0;
+  }
+
+  /**
+   * @return the number of p children with more than 50 characters of own text
+   */
+  int paragraphCount(int index) {
+    return paragraphCount[index];
+  }
+
+  int childCount(int index) {
+    return childCount[index];
+  }
+
+  /**
+   * @return the own text length of the element and all its descendants
+   */
+  int textLength(int index) {
+    return textLength[index];
+  }
+
+  /**
+   * @return the part of textLength within links
+   */
+  int linkTextLength(int index) {
+    return linkTextLength[index];
+  }
+
+  /**
+   * @return the last child which is not removed or -1
+   */
+  int lastChild(int index) {
+    return lastChild[index];
+  }
+
+  /**
+   * @return the previous sibling which is not removed or -1
+   */
+  int previousSibling(int index) {
+    return previousSibling[index];
+  }
+
+  /**
+   * Records that the element was weighted as candidate, see applyChildScores.
+   */
+  void weighted(int index) {
+    weighted[index]++;
+  }
+
+  /**
+   * Adds the child scores of the divs and ps to the context, once for every
+   * time their parent or grandparent was weighted.
+   */
+  void applyChildScores() {
+    for (int i = 0; i < size; i++) {
+      if ((flags[i] & (QUALIFIES | DIV_OR_P | REMOVED)) != (QUALIFIES | DIV_OR_P))
+        continue;
+
+      int p = parent[i];
+      if (p < 0)
+        continue;
+      int times = weighted[p];
+      int g = parent[p];
+      if (g >= 0 && weighted[g] > 0 && (flags[p] & REMOVED) == 0 && !isNegative(p))
+        times += weighted[g];
+      if (times > 0)
+        ctx.addScore(elements[i], childScore[i] * times);
+    }
+  }
+
+  private void traverse(Element root) {
+    int start = size;
+    int end = start;
+    // post-order without recursion, deep pages would overflow the stack
+    int rootIndex = add(root, -1);
+    Node node = root.childNodeSize() > 0 ? root.childNode(0) : null;
+    int current = rootIndex;
+    while (node != null && node != root) {
+      if (node instanceof Element) {
+        Element el = (Element) node;
+        current = add(el, current);
+        if (el.childNodeSize() > 0) {
+          node = el.childNode(0);
+          continue;
+        }
+        postOrder[end++] = current;
+        current = parent[current];
+      }
+
+      // go up until there is a next sibling
+      while (node != root && node.nextSibling() == null) {
+        node = node.parent();
+        if (node != root) {
+          postOrder[end++] = current;
+          current = parent[current];
+        }
+      }
+      if (node == root)
+        break;
+      node = node.nextSibling();
+    }
+    postOrder[end++] = rootIndex;
+
+    if (pool != null && size - start > MEASURE_CHUNK)
+      pool.invoke(new MeasureTask(start, size));
+    else
+      measure(start, size);
+    for (int i = start; i < end; i++) {
+      finish(postOrder[i]);
+    }
+  }
+
+  private int add(Element el, int parentIndex) {
+    if (size == elements.length)
+      grow();
+    int index = size++;
+    indices.put(el, index);
+    elements[index] = el;
+    parent[index] = parentIndex;
+    lastChild[index] = -1;
+    previousSibling[index] = -1;
+    if (ctx.isRemoved(el))
+      flags[index] |= REMOVED;
+    return index;
+  }
+
+  /**
+   * Measures the own text of the elements in [from, to), independent of
+   * each other.
+   */
+  private void measure(int from, int to) {
+    for (int index = from; index < to; index++) {
+      Element el = elements[index];
+      int length = 0;
+      String ownText = null;
+      if (hasTextNode(el)) {
+        ownText = el.ownText();
+        length = ownText.length();
+      }
+      ownTextLength[index] = length;
+      textLength[index] = length;
+      int categories = TagCategories.of(el);
+      if ((categories & TagCategories.LINK) != 0)
+        flags[index] |= LINK;
+      if (length < 20)
+        continue;
+
+      int weight = 0;
+      flags[index] |= QUALIFIES;
+      if (length > 200)
+        weight += Math.max(50, length / 10);
+
+      if ((categories & TagCategories.MAJOR_HEADING) != 0) {
+        weight += 30;
+      } else if ((categories & (TagCategories.DIV | TagCategories.PARAGRAPH)) != 0) {
+        flags[index] |= DIV_OR_P;
+        childScore[index] = calcWeightForChild(ownText);
+        weight += childScore[index];
+        if ((categories & TagCategories.PARAGRAPH) != 0 && length > 50)
+          flags[index] |= LONG_PARAGRAPH;
+        if (el.className().toLowerCase().equals("caption"))
+          flags[index] |= IS_CAPTION;
+      }
+      ownWeight[index] = weight;
+    }
+  }
+
+  /**
+   * Called after all children of the element are finished.
+   */
+  private void finish(int index) {
+    if ((flags[index] & LINK) != 0)
+      linkTextLength[index] = textLength[index];
+    int p = parent[index];
+    if (p < 0 || (flags[index] & REMOVED) != 0)
+      return;
+
+    childCount[p]++;
+    textLength[p] += textLength[index];
+    linkTextLength[p] += linkTextLength[index];
+
+    // the children are finished in document order
+    previousSibling[index] = lastChild[p];
+    lastChild[p] = index;
+    // a negative child counts -30 instead of its children
+    maxGrandChildrenWeight[p] += Math.max(childrenWeight[index], -30);
+    if ((flags[index] & QUALIFIES) != 0) {
+      childrenWeight[p] += ownWeight[index];
+      if ((flags[index] & DIV_OR_P) != 0) {
+        if ((flags[index] & LONG_PARAGRAPH) != 0)
+          paragraphCount[p]++;
+        if ((flags[index] & IS_CAPTION) != 0)
+          flags[p] |= HAS_CAPTION;
+      }
+    }
+  }
+
+  private int calcWeightForChild(String ownText) {
+    // markup which leaked into the text, e.g. escaped html or css
+    int c = SHelper.count(ownText, "&quot;");
+    c += SHelper.count(ownText, "&lt;");
+    c += SHelper.count(ownText, "&gt;");
+    c += SHelper.count(ownText, "px");
+    if (c > 5)
+      return -30;
+    else
+      return (int) Math.round(ownText.length() / 35.0);
+  }
+
+  private static boolean hasTextNode(Element el) {
+    List<Node> children = el.childNodes();
+    for (int i = 0; i < children.size(); i++) {
+      if (children.get(i) instanceof TextNode)
+        return true;
+    }
+    return false;
+  }
+
+  private void grow() {
+    int capacity = elements.length * 2;
+    elements = Arrays.copyOf(elements, capacity);
+    parent = Arrays.copyOf(parent, capacity);
+    lastChild = Arrays.copyOf(lastChild, capacity);
+    previousSibling = Arrays.copyOf(previousSibling, capacity);
+    ownTextLength = Arrays.copyOf(ownTextLength, capacity);
+    ownWeight = Arrays.copyOf(ownWeight, capacity);
+    childScore = Arrays.copyOf(childScore, capacity);
+    flags = Arrays.copyOf(flags, capacity);
+    childrenWeight = Arrays.copyOf(childrenWeight, capacity);
+    paragraphCount = Arrays.copyOf(paragraphCount, capacity);
+    childCount = Arrays.copyOf(childCount, capacity);
+    textLength = Arrays.copyOf(textLength, capacity);
+    linkTextLength = Arrays.copyOf(linkTextLength, capacity);
+    maxGrandChildrenWeight = Arrays.copyOf(maxGrandChildrenWeight, capacity);
+    weighted = Arrays.copyOf(weighted, capacity);
+    postOrder = Arrays.copyOf(postOrder, capacity);
+  }
+
+  private class MeasureTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+
+    MeasureTask(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= MEASURE_CHUNK) {
+        measure(from, to);
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new MeasureTask(from, middle), new MeasureTask(middle, to));
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package de.jetwick.snacktory;
+
+import org.jsoup.helper.StringUtil;
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Entities;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes an element like Element.outerHtml, but on the tree of an
+ * ExtractionContext: removed nodes are skipped and their replacements are
+ * written at their place, so no copy of the element is needed. The output
+ * follows the rules of jsoup 1.8.3 including pretty printing and escaping.
+ *
+ * Subclasses get the offset of every start tag through startTag.
+ */
+class OuterHtmlWriter {
+
+    private final ExtractionContext ctx;
+    private final StringBuilder accum;
+    private int start;
+    private Document.OutputSettings out;
+    private Map<Character, String> escapes;
+    private CharsetEncoder encoder;
+    // like the CoreCharset of jsoup
+    private boolean ascii;
+    private boolean utf;
+
+    OuterHtmlWriter(ExtractionContext ctx, StringBuilder accum) {
+        this.ctx = ctx;
+        this.accum = accum;
+    }
+
+    /**
+     * Appends the outer html of el to the StringBuilder of this writer.
+     */
+    void write(Element el) {
+        Document doc = el.ownerDocument();
+        out = doc != null ? doc.outputSettings() : new Document("").outputSettings();
+        escapes = out.escapeMode().getMap();
+        encoder = out.charset().newEncoder();
+        String charset = encoder.charset().name();
+        ascii = charset.equals("US-ASCII");
+        utf = charset.startsWith("UTF-");
+        start = accum.length();
+        writeElement(el, ctx.parent(el), 0);
+    }
+
+    /**
+     * Called right before the start tag of el is appended, the length of the
+     * StringBuilder is the offset of the tag.
+     */
+    protected void startTag(Element el) {
+    }
+
+    private void writeElement(Element el, Element parent, int depth) {
+        if (accum.length() > start && out.prettyPrint() && (el.tag().formatAsBlock()
+                || parent != null && parent.tag().formatAsBlock() || out.outline()))
+            indent(depth);
+
+        startTag(el);
+        accum.append('<').append(el.tagName());
+        for (Attribute attribute : el.attributes()) {
+            accum.append(' ').append(attribute.getKey());
+            if (!collapse(attribute)) {
+                accum.append("=\"");
+                escape(attribute.getValue(), true, false);
+                accum.append('"');
+            }
+        }
+
+        List<Node> children = children(el);
+        boolean selfClosing = children.isEmpty() && el.tag().isSelfClosing();
+        if (selfClosing) {
+            if (out.syntax() == Document.OutputSettings.Syntax.html && el.tag().isEmpty())
+                accum.append('>');
+            else
+                accum.append(" />");
+            return;
+        }
+        accum.append('>');
+
+        for (int i = 0; i < children.size(); i++) {
+            Node child = children.get(i);
+            if (child instanceof Element)
+                writeElement((Element) child, el, depth + 1);
+            else if (child instanceof TextNode)
+                writeText((TextNode) child, el, i, children.size(), depth + 1);
+            else if (child instanceof DataNode)
+                accum.append(((DataNode) child).getWholeData());
+            else if (child instanceof Comment) {
+                if (out.prettyPrint())
+                    indent(depth + 1);
+                accum.append("<!--").append(((Comment) child).getData()).append("-->");
+            } else
+                accum.append(child.outerHtml());
+        }
+
+        if (out.prettyPrint() && !children.isEmpty() && (el.tag().formatAsBlock() || out.outline()
+                && (children.size() > 1 || !(children.get(0) instanceof TextNode))))
+            indent(depth);
+        accum.append("</").append(el.tagName()).append('>');
+    }
+
+    private void writeText(TextNode text, Element parent, int index, int siblings, int depth) {
+        if (out.prettyPrint() && !text.isBlank() && (index == 0 && parent.tag().formatAsBlock()
+                || out.outline() && siblings > 1))
+            indent(depth);
+
+        boolean normaliseWhite = out.prettyPrint() && !preserveWhitespace(parent);
+        escape(text.getWholeText(), false, normaliseWhite);
+    }
+
+    // the parent and the grandparent like Element.preserveWhitespace
+    private boolean preserveWhitespace(Element el) {
+        if (el.tag().preserveWhitespace())
+            return true;
+        Element parent = ctx.parent(el);
+        return parent != null && parent.tag().preserveWhitespace();
+    }
+
+    /**
+     * @return the child nodes without the removed ones and with their
+     * replacements
+     */
+    private List<Node> children(Element el) {
+        if (!ctx.isModified(el))
+            return el.childNodes();
+
+        List<Node> res = new ArrayList<Node>(el.childNodeSize());
+        for (Node child : el.childNodes()) {
+            List<Element> replacements = ctx.getReplacements(child);
+            if (replacements == null)
+                res.add(child);
+            else
+                res.addAll(replacements);
+        }
+        return res;
+    }
+
+    private boolean collapse(Attribute attribute) {
+        String value = attribute.getValue();
+        if (out.syntax() != Document.OutputSettings.Syntax.html
+                || !value.isEmpty() && !value.equalsIgnoreCase(attribute.getKey()))
+            return false;
+        // only boolean attributes are collapsed, html() uses the html syntax as well
+        return attribute.html().length() == attribute.getKey().length();
+    }
+
+    private void indent(int depth) {
+        accum.append('\n').append(StringUtil.padding(depth * out.indentAmount()));
+    }
+
+    // like Entities.escape, without stripping leading white space
+    private void escape(String string, boolean inAttribute, boolean normaliseWhite) {
+        boolean lastWasWhite = false;
+        int length = string.length();
+        int codePoint;
+        for (int offset = 0; offset < length; offset += Character.charCount(codePoint)) {
+            codePoint = string.codePointAt(offset);
+            if (normaliseWhite) {
+                if (StringUtil.isWhitespace(codePoint)) {
+                    if (!lastWasWhite) {
+                        accum.append(' ');
+                        lastWasWhite = true;
+                    }
+                    continue;
+                }
+                lastWasWhite = false;
+            }
+
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                String c = new String(Character.toChars(codePoint));
+                if (encoder.canEncode(c))
+                    accum.append(c);
+                else
+                    accum.append("&#x").append(Integer.toHexString(codePoint)).append(';');
+                continue;
+            }
+
+            char c = (char) codePoint;
+            switch (c) {
+                case '&':
+                    accum.append("&amp;");
+                    break;
+                case 0xA0:
+                    accum.append(out.escapeMode() != Entities.EscapeMode.xhtml ? "&nbsp;" : "&#xa0;");
+                    break;
+                case '<':
+                    if (!inAttribute || out.escapeMode() == Entities.EscapeMode.xhtml)
+                        accum.append("&lt;");
+                    else
+                        accum.append(c);
+                    break;
+                case '>':
+                    accum.append(inAttribute ? ">" : "&gt;");
+                    break;
+                case '"':
+                    accum.append(inAttribute ? "&quot;" : "\"");
+                    break;
+                default:
+                    if (ascii ? c < 0x80 : utf || encoder.canEncode(c)) {
+                        accum.append(c);
+                    } else {
+                        String name = escapes.get(c);
+                        if (name != null)
+                            accum.append('&').append(name).append(';');
+                        else
+                            accum.append("&#x").append(Integer.toHexString(codePoint)).append(';');
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package de.jetwick.snacktory;
+
+/**
+ * Turns the features of a candidate into the weight BestNodeFinder picks the
+ * best node with, the heaviest candidate wins. The features are extracted
+ * once per candidate into a reused int array indexed by the constants below,
+ * so a model should score without allocating.
+ *
+ * Implementations are shared by all extractions and must be thread safe.
+ *
+ * @see LinearScoringModel
+ */
+public interface ScoringModel {
+
+    /** 1 if the class name looks like content, e.g. "article" or "post" */
+    int POSITIVE_CLASS = 0;
+    /** 1 if the id looks like content */
+    int POSITIVE_ID = 1;
+    /** 1 if the class name looks like comments, menus, footers and the like */
+    int UNLIKELY_CLASS = 2;
+    /** 1 if the id looks like comments, menus, footers and the like */
+    int UNLIKELY_ID = 3;
+    /** 1 if the class name looks like navigation, sidebars or widgets */
+    int NEGATIVE_CLASS = 4;
+    /** 1 if the id looks like navigation, sidebars or widgets */
+    int NEGATIVE_ID = 5;
+    /** 1 if the style hides the element or uses a small font */
+    int NEGATIVE_STYLE = 6;
+    /** 1 if the itemprop looks like content, e.g. "articleBody" */
+    int POSITIVE_ITEMPROP = 7;
+    /** the own text length in tens of characters, rounded */
+    int OWN_TEXT_WEIGHT = 8;
+    /** the sum over the children with at least 20 characters of own text */
+    int CHILDREN_WEIGHT = 9;
+    /**
+     * a third of the sum over the grandchildren below children which do not
+     * look negative, about -10 for every negative child
+     */
+    int GRANDCHILDREN_WEIGHT = 10;
+    /** the number of h1-h6 children if there are at least two long paragraphs */
+    int HEADERS = 11;
+    /** 1 if a child div or p has the class "caption" */
+    int CAPTION = 12;
+    /** the own text length in characters */
+    int OWN_TEXT_LENGTH = 13;
+    /** the length of the own text of all descendants */
+    int TEXT_LENGTH = 14;
+    /** the share of TEXT_LENGTH within links in per mille */
+    int LINK_DENSITY = 15;
+    /** the number of child elements */
+    int CHILD_COUNT = 16;
+    /** the number of p children with more than 50 characters of own text */
+    int PARAGRAPH_COUNT = 17;
+
+    int FEATURE_COUNT = 18;
+
+    /**
+     * @param features the features of one candidate, only valid during the call
+     */
+    int score(int[] features);
+}
@@ -0,0 +1,42 @@
+package de.jetwick.snacktory;
+
+/**
+ * A page to extract in a batch, see BatchExtractor.
+ */
+public class Source {
+
+    private final String url;
+    private final String html;
+
+    public Source(String url, String html) {
+        if (html == null)
+            throw new NullPointerException("missing html");
+        this.url = url;
+        this.html = html;
+    }
+
+    public static Source of(String html) {
+        return new Source(null, html);
+    }
+
+    public static Source of(String url, String html) {
+        return new Source(url, html);
+    }
+
+    /**
+     * @return the url or null. It is used for the date estimation and is set
+     * as url of the JResult.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public String getHtml() {
+        return html;
+    }
+
+    @Override
+    public String toString() {
+        return url != null ? url : "Source{" + html.length() + " chars}";
+    }
+}
@@ -0,0 +1,83 @@
+package de.jetwick.snacktory;
+
+import de.jetwick.snacktory.utils.IdentityIntMap;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Tag;
+
+/**
+ * Maps a tag to the bitmask of the categories the scoring and the formatters
+ * branch on, so the per node loops test a bit instead of matching the tag
+ * name with a regex or comparing it with several strings. jsoup lower cases
+ * the tag names and shares the Tag instances of the known tags, so the masks
+ * are looked up by the identity of the Tag without hashing its name or
+ * boxing the mask. Unknown tags get a new Tag instance and are never found.
+ *
+ * Tags which are in no category, including all unknown tags, map to 0.
+ */
+public final class TagCategories {
+
+    /** p, div, td, h1, h2, article and section, the nodes BestNodeFinder weights */
+    public static final int CANDIDATE = 1;
+    /** h1 to h6 */
+    public static final int HEADING = 1 << 1;
+    /** h1 and h2 */
+    public static final int MAJOR_HEADING = 1 << 2;
+    /** table, li, td and th */
+    public static final int TABLE_OR_LIST = 1 << 3;
+    /** p */
+    public static final int PARAGRAPH = 1 << 4;
+    /** div */
+    public static final int DIV = 1 << 5;
+    /** br */
+    public static final int LINE_BREAK = 1 << 6;
+    /** a */
+    public static final int LINK = 1 << 7;
+    /** ol and ul */
+    public static final int LIST = 1 << 8;
+    /** img */
+    public static final int IMAGE = 1 << 9;
+
+    // only read after the static initializer, so it can be shared by all threads
+    private static final IdentityIntMap<Tag> CATEGORIES = new IdentityIntMap<Tag>(32);
+
+    static {
+        add(CANDIDATE | PARAGRAPH, "p");
+        add(CANDIDATE | DIV, "div");
+        add(CANDIDATE, "td", "h1", "h2", "article", "section");
+        add(HEADING, "h1", "h2", "h3", "h4", "h5", "h6");
+        add(MAJOR_HEADING, "h1", "h2");
+        add(TABLE_OR_LIST, "table", "li", "td", "th");
+        add(LINE_BREAK, "br");
+        add(LINK, "a");
+        add(LIST, "ol", "ul");
+        add(IMAGE, "img");
+    }
+
+    private TagCategories() {
+    }
+
+    private static void add(int category, String... names) {
+        for (String name : names) {
+            Tag tag = Tag.valueOf(name);
+            CATEGORIES.put(tag, CATEGORIES.get(tag, 0) | category);
+        }
+    }
+
+    /**
+     * @return the categories of the tag, 0 if it is in none
+     */
+    public static int of(Tag tag) {
+        return CATEGORIES.get(tag, 0);
+    }
+
+    public static int of(Element el) {
+        return of(el.tag());
+    }
+
+    /**
+     * @return true if the element is in at least one of the categories
+     */
+    public static boolean is(Element el, int categories) {
+        return (of(el.tag()) & categories) != 0;
+    }
+}
@@ -0,0 +1,75 @@
+package de.jetwick.snacktory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Matches class names, ids and similar attribute values against several
+ * patterns at once and returns a bitmask with bit i set if the i-th pattern
+ * was found. The same values repeat heavily within a page and across the
+ * pages of a site, so the masks are kept in a bounded cache which is shared
+ * by all extractions; a repeated value costs one hash lookup instead of one
+ * regex search per pattern.
+ *
+ * This class is thread safe.
+ */
+public class TokenClassifier {
+
+    private final Pattern[] patterns;
+    private final int maxCacheSize;
+    private final ConcurrentMap<String, Integer> cache;
+
+    /**
+     * @param maxCacheSize the cache is cleared when it exceeds this size
+     * @param patterns at most 31 patterns
+     */
+    public TokenClassifier(int maxCacheSize, Pattern... patterns) {
+        if (patterns.length > 31)
+            throw new IllegalArgumentException("at most 31 patterns are supported but got " + patterns.length);
+        this.patterns = patterns.clone();
+        this.maxCacheSize = maxCacheSize;
+        this.cache = new ConcurrentHashMap<String, Integer>(Math.min(maxCacheSize, 1024));
+    }
+
+    /**
+     * @return the bitmask of the patterns found in value, 0 for null or an
+     * empty value
+     */
+    public int classify(String value) {
+        if (value == null || value.isEmpty())
+            return 0;
+
+        Integer mask = cache.get(value);
+        if (mask != null)
+            return mask;
+
+        int res = match(value);
+        if (cache.size() >= maxCacheSize) {
+            // a cheap bound, the common values are back after a few pages
+            cache.clear();
+        }
+        cache.put(value, res);
+        return res;
+    }
+
+    /**
+     * @return true if the pattern with the specified bit was found in value
+     */
+    public boolean matches(String value, int bit) {
+        return (classify(value) & bit) != 0;
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    private int match(String value) {
+        int res = 0;
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].matcher(value).find())
+                res |= 1 << i;
+        }
+        return res;
+    }
+}
@@ -3,6 +3,7 @@ package de.jetwick.snacktory.metadata;
 import static de.jetwick.snacktory.utils.DateUtils.parseDate;
 
 import de.jetwick.snacktory.BestNodeFinder;
+import de.jetwick.snacktory.ExtractionContext;
 import de.jetwick.snacktory.utils.SHelper;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -41,17 +42,21 @@ public class MetadataExtractor {
   private BestNodeFinder bestNodeFinder = new BestNodeFinder();
 
   public String extractTitle(Document doc) {
-    String title = cleanTitle(doc.title());
+    return extractTitle(new MetadataIndex(doc));
+  }
+
+  public String extractTitle(MetadataIndex index) {
+    String title = cleanTitle(index.getTitle());
     if (title.isEmpty()) {
-      title = SHelper.innerTrim(doc.select("head title").text());
+      title = SHelper.innerTrim(index.getTitlesInHead().text());
       if (title.isEmpty()) {
-        title = SHelper.innerTrim(doc.select("head meta[name=title]").attr("content"));
+        title = SHelper.innerTrim(index.selectInHead("meta", "name", "title").attr("content"));
         if (title.isEmpty()) {
-          title = SHelper.innerTrim(doc.select("head meta[property=og:title]").attr("content"));
+          title = SHelper.innerTrim(index.selectInHead("meta", "property", "og:title").attr("content"));
           if (title.isEmpty()) {
-            title = SHelper.innerTrim(doc.select("head meta[name=twitter:title]").attr("content"));
+            title = SHelper.innerTrim(index.selectInHead("meta", "name", "twitter:title").attr("content"));
             if (title.isEmpty()) {
-              title = SHelper.innerTrim(doc.select("h1:first-of-type").text());
+              title = SHelper.innerTrim(index.getDocument().select("h1:first-of-type").text());
             }
           }
         }
@@ -86,22 +91,30 @@ public class MetadataExtractor {
   }
 
   public String extractCanonicalUrl(Document doc) {
-    String url = SHelper.replaceSpaces(doc.select("head link[rel=canonical]").attr("href"));
+    return extractCanonicalUrl(new MetadataIndex(doc));
+  }
+
+  public String extractCanonicalUrl(MetadataIndex index) {
+    String url = SHelper.replaceSpaces(index.selectInHead("link", "rel", "canonical").attr("href"));
     if (url.isEmpty()) {
-      url = SHelper.replaceSpaces(doc.select("head meta[property=og:url]").attr("content"));
+      url = SHelper.replaceSpaces(index.selectInHead("meta", "property", "og:url").attr("content"));
       if (url.isEmpty()) {
-        url = SHelper.replaceSpaces(doc.select("head meta[name=twitter:url]").attr("content"));
+        url = SHelper.replaceSpaces(index.selectInHead("meta", "name", "twitter:url").attr("content"));
       }
     }
     return url;
   }
 
   public String extractDescription(Document doc) {
-    String description = SHelper.innerTrim(doc.select("head meta[name=description]").attr("content"));
+    return extractDescription(new MetadataIndex(doc));
+  }
+
+  public String extractDescription(MetadataIndex index) {
+    String description = SHelper.innerTrim(index.selectInHead("meta", "name", "description").attr("content"));
     if (description.isEmpty()) {
-      description = SHelper.innerTrim(doc.select("head meta[property=og:description]").attr("content"));
+      description = SHelper.innerTrim(index.selectInHead("meta", "property", "og:description").attr("content"));
       if (description.isEmpty()) {
-        description = SHelper.innerTrim(doc.select("head meta[name=twitter:description]").attr("content"));
+        description = SHelper.innerTrim(index.selectInHead("meta", "name", "twitter:description").attr("content"));
       }
     }
     return description;
@@ -109,10 +122,14 @@ public class MetadataExtractor {
 
   // Returns the publication Date or null
   public Date extractDate(Document doc) {
+    return extractDate(new MetadataIndex(doc));
+  }
+
+  public Date extractDate(MetadataIndex index) {
     String dateStr = "";
 
     // try some locations that nytimes uses
-    Element elem = doc.select("meta[name=ptime]").first();
+    Element elem = index.select("meta", "name", "ptime").first();
     if (elem != null) {
       dateStr = SHelper.innerTrim(elem.attr("content"));
       //            elem.attr("extragravityscore", Integer.toString(100));
@@ -120,13 +137,13 @@ public class MetadataExtractor {
     }
 
     if (dateStr == "") {
-      dateStr = SHelper.innerTrim(doc.select("meta[name=utime]").attr("content"));
+      dateStr = SHelper.innerTrim(index.select("meta", "name", "utime").attr("content"));
     }
     if (dateStr == "") {
-      dateStr = SHelper.innerTrim(doc.select("meta[name=pdate]").attr("content"));
+      dateStr = SHelper.innerTrim(index.select("meta", "name", "pdate").attr("content"));
     }
     if (dateStr == "") {
-      dateStr = SHelper.innerTrim(doc.select("meta[property=article:published]").attr("content"));
+      dateStr = SHelper.innerTrim(index.select("meta", "property", "article:published").attr("content"));
     }
     if (dateStr != "") {
       return parseDate(dateStr);
@@ -134,7 +151,7 @@ public class MetadataExtractor {
 
     // taking this stuff directly from Juicer (and converted to Java)
     // opengraph (?)
-    Elements elems = doc.select("meta[property=article:published_time]");
+    Elements elems = index.select("meta", "property", "article:published_time");
     if (elems.size() > 0) {
       Element el = elems.get(0);
       if (el.hasAttr("content")) {
@@ -155,7 +172,7 @@ public class MetadataExtractor {
     }
 
     // rnews
-    elems = doc.select("meta[property=dateCreated], span[property=dateCreated]");
+    elems = selectMetaOrSpan(index, "property", "dateCreated");
     if (elems.size() > 0) {
       Element el = elems.get(0);
       if (el.hasAttr("content")) {
@@ -168,7 +185,7 @@ public class MetadataExtractor {
     }
 
     // schema.org creativework
-    elems = doc.select("meta[itemprop=datePublished], span[itemprop=datePublished]");
+    elems = selectMetaOrSpan(index, "itemprop", "datePublished");
     if (elems.size() > 0) {
       Element el = elems.get(0);
       if (el.hasAttr("content")) {
@@ -200,7 +217,7 @@ public class MetadataExtractor {
         */
 
     // BBC
-    elems = doc.select("meta[name=OriginalPublicationDate]");
+    elems = index.select("meta", "name", "OriginalPublicationDate");
     if (elems.size() > 0) {
       Element el = elems.get(0);
       if (el.hasAttr("content")) {
@@ -210,7 +227,7 @@ public class MetadataExtractor {
     }
 
     // wired
-    elems = doc.select("meta[name=DisplayDate]");
+    elems = index.select("meta", "name", "DisplayDate");
     if (elems.size() > 0) {
       Element el = elems.get(0);
       if (el.hasAttr("content")) {
@@ -220,7 +237,11 @@ public class MetadataExtractor {
     }
 
     // wildcard
-    elems = doc.select("meta[name*=date]");
+    elems = new Elements();
+    for (Element el : index.withAttribute("name")) {
+      if (el.tagName().equals("meta") && el.attr("name").toLowerCase().contains("date"))
+        elems.add(el);
+    }
     if (elems.size() > 0) {
       Element el = elems.get(0);
       if (el.hasAttr("content")) {
@@ -233,7 +254,7 @@ public class MetadataExtractor {
     }
 
     // blogger
-    elems = doc.select(".date-header");
+    elems = index.getDocument().select(".date-header");
     if (elems.size() > 0) {
       Element el = elems.get(0);
       dateStr = el.text();
@@ -246,10 +267,21 @@ public class MetadataExtractor {
 
   // Returns the author name or null
   public String extractAuthorName(Document doc) {
+    return extractAuthorName(new MetadataIndex(doc), new ExtractionContext());
+  }
+
+  public String extractAuthorName(MetadataIndex index, ExtractionContext ctx) {
+    Document doc = index.getDocument();
     String authorName = "";
 
     // first try the Google Author tag
-    Element result = doc.select("body [rel*=author]").first();
+    Element result = null;
+    for (Element el : index.withAttributeInBody("rel")) {
+      if (el.attr("rel").toLowerCase().contains("author")) {
+        result = el;
+        break;
+      }
+    }
     if (result != null)
       authorName = SHelper.innerTrim(result.ownText());
 
@@ -257,19 +289,19 @@ public class MetadataExtractor {
     if (authorName.isEmpty()) {
 
       // meta tag approaches, get content
-      result = doc.select("head meta[name=author]").first();
+      result = index.selectInHead("meta", "name", "author").first();
       if (result != null) {
         authorName = SHelper.innerTrim(result.attr("content"));
       }
 
       if (authorName.isEmpty()) {  // for "opengraph"
-        authorName = SHelper.innerTrim(doc.select("head meta[property=article:author]").attr("content"));
+        authorName = SHelper.innerTrim(index.selectInHead("meta", "property", "article:author").attr("content"));
       }
       if (authorName.isEmpty()) { // OpenGraph twitter:creator tag
-        authorName = SHelper.innerTrim(doc.select("head meta[property=twitter:creator]").attr("content"));
+        authorName = SHelper.innerTrim(index.selectInHead("meta", "property", "twitter:creator").attr("content"));
       }
       if (authorName.isEmpty()) {  // for "schema.org creativework"
-        authorName = SHelper.innerTrim(doc.select("meta[itemprop=author], span[itemprop=author]").attr("content"));
+        authorName = SHelper.innerTrim(selectMetaOrSpan(index, "itemprop", "author").attr("content"));
       }
 
       // other hacks
@@ -299,7 +331,7 @@ public class MetadataExtractor {
 
           // select the best element from them
           if(matches != null){
-            Element bestMatch = bestNodeFinder.find(matches);
+            Element bestMatch = bestNodeFinder.findMatch(matches, ctx);
 
             if(!(bestMatch == null))
             {
@@ -336,6 +368,10 @@ public class MetadataExtractor {
 
   // Returns the author description or null
   public String extractAuthorDescription(Document doc, String authorName){
+    return extractAuthorDescription(doc, authorName, new ExtractionContext());
+  }
+
+  public String extractAuthorDescription(Document doc, String authorName, ExtractionContext ctx){
 
     String authorDesc = "";
 
@@ -360,7 +396,7 @@ public class MetadataExtractor {
 
     try {
       Elements nodes = doc.select(":containsOwn(" + authorName + ")");
-      Element bestMatch = bestNodeFinder.find(nodes);
+      Element bestMatch = bestNodeFinder.findMatch(nodes, ctx);
       if (bestMatch != null)
         authorDesc = bestMatch.text();
     } catch(Selector.SelectorParseException se){
@@ -371,7 +407,11 @@ public class MetadataExtractor {
   }
 
   public Collection<String> extractKeywords(Document doc) {
-    String content = SHelper.innerTrim(doc.select("head meta[name=keywords]").attr("content"));
+    return extractKeywords(new MetadataIndex(doc));
+  }
+
+  public Collection<String> extractKeywords(MetadataIndex index) {
+    String content = SHelper.innerTrim(index.selectInHead("meta", "name", "keywords").attr("content"));
 
     if (content != null) {
       if (content.startsWith("[") && content.endsWith("]"))
@@ -391,15 +431,19 @@ public class MetadataExtractor {
    * @return image url or empty str
    */
   public String extractImageUrl(Document doc) {
+    return extractImageUrl(new MetadataIndex(doc));
+  }
+
+  public String extractImageUrl(MetadataIndex index) {
     // use open graph tag to get image
-    String imageUrl = SHelper.replaceSpaces(doc.select("head meta[property=og:image]").attr("content"));
+    String imageUrl = SHelper.replaceSpaces(index.selectInHead("meta", "property", "og:image").attr("content"));
     if (imageUrl.isEmpty()) {
-      imageUrl = SHelper.replaceSpaces(doc.select("head meta[name=twitter:image]").attr("content"));
+      imageUrl = SHelper.replaceSpaces(index.selectInHead("meta", "name", "twitter:image").attr("content"));
       if (imageUrl.isEmpty()) {
         // prefer link over thumbnail-meta if empty
-        imageUrl = SHelper.replaceSpaces(doc.select("link[rel=image_src]").attr("href"));
+        imageUrl = SHelper.replaceSpaces(index.select("link", "rel", "image_src").attr("href"));
         if (imageUrl.isEmpty()) {
-          imageUrl = SHelper.replaceSpaces(doc.select("head meta[name=thumbnail]").attr("content"));
+          imageUrl = SHelper.replaceSpaces(index.selectInHead("meta", "name", "thumbnail").attr("content"));
         }
       }
     }
@@ -407,44 +451,77 @@ public class MetadataExtractor {
   }
 
   public String extractRssUrl(Document doc) {
-    return SHelper.replaceSpaces(doc.select("link[rel=alternate]").select("link[type=application/rss+xml]").attr("href"));
+    return extractRssUrl(new MetadataIndex(doc));
+  }
+
+  public String extractRssUrl(MetadataIndex index) {
+    Elements feeds = new Elements();
+    for (Element el : index.select("link", "rel", "alternate")) {
+      if (el.attr("type").trim().equalsIgnoreCase("application/rss+xml"))
+        feeds.add(el);
+    }
+    return SHelper.replaceSpaces(feeds.attr("href"));
   }
 
   public String extractVideoUrl(Document doc) {
-    return SHelper.replaceSpaces(doc.select("head meta[property=og:video]").attr("content"));
+    return extractVideoUrl(new MetadataIndex(doc));
+  }
+
+  public String extractVideoUrl(MetadataIndex index) {
+    return SHelper.replaceSpaces(index.selectInHead("meta", "property", "og:video").attr("content"));
   }
 
   public String extractFaviconUrl(Document doc) {
-    String faviconUrl = SHelper.replaceSpaces(doc.select("head link[rel=icon]").attr("href"));
+    return extractFaviconUrl(new MetadataIndex(doc));
+  }
+
+  public String extractFaviconUrl(MetadataIndex index) {
+    String faviconUrl = SHelper.replaceSpaces(index.selectInHead("link", "rel", "icon").attr("href"));
     if (faviconUrl.isEmpty()) {
-      faviconUrl = SHelper.replaceSpaces(doc.select("head link[rel^=shortcut],link[rel$=icon]").attr("href"));
+      // head link[rel^=shortcut],link[rel$=icon]
+      Elements icons = new Elements();
+      for (Element el : index.withAttribute("rel")) {
+        if (!el.tagName().equals("link"))
+          continue;
+        String rel = el.attr("rel").toLowerCase();
+        if ((index.isInHead(el) && rel.startsWith("shortcut")) || rel.endsWith("icon"))
+          icons.add(el);
+      }
+      faviconUrl = SHelper.replaceSpaces(icons.attr("href"));
     }
     return faviconUrl;
   }
 
   public String extractType(Document doc) {
-    String type = cleanTitle(doc.title());
-    type = SHelper.innerTrim(doc.select("head meta[property=og:type]").attr("content"));
-    return type;
+    return extractType(new MetadataIndex(doc));
+  }
+
+  public String extractType(MetadataIndex index) {
+    return SHelper.innerTrim(index.selectInHead("meta", "property", "og:type").attr("content"));
   }
 
   public String extractSitename(Document doc) {
-    String sitename = SHelper.innerTrim(doc.select("head meta[property=og:site_name]").attr("content"));
-    if (sitename.isEmpty()) {
-      sitename = SHelper.innerTrim(doc.select("head meta[name=twitter:site]").attr("content"));
-    }
+    return extractSitename(new MetadataIndex(doc));
+  }
+
+  public String extractSitename(MetadataIndex index) {
+    String sitename = SHelper.innerTrim(index.selectInHead("meta", "property", "og:site_name").attr("content"));
     if (sitename.isEmpty()) {
-      sitename = SHelper.innerTrim(doc.select("head meta[property=og:site_name]").attr("content"));
+      sitename = SHelper.innerTrim(index.selectInHead("meta", "name", "twitter:site").attr("content"));
     }
     return sitename;
   }
 
   public String extractLanguage(Document doc) {
-    String language = SHelper.innerTrim(doc.select("head meta[property=language]").attr("content"));
+    return extractLanguage(new MetadataIndex(doc));
+  }
+
+  public String extractLanguage(MetadataIndex index) {
+    String language = SHelper.innerTrim(index.selectInHead("meta", "property", "language").attr("content"));
     if (language.isEmpty()) {
-      language = SHelper.innerTrim(doc.select("html").attr("lang"));
+      language = SHelper.innerTrim(index.getHtmlElements().attr("lang"));
       if (language.isEmpty()) {
-        language = SHelper.innerTrim(doc.select("head meta[property=og:locale]").attr("content"));
+        language = SHelper.innerTrim(index.selectInHead("meta", "property", "og:locale").attr("content"));
       }
     }
     if (!language.isEmpty()) {
@@ -455,5 +532,13 @@ public class MetadataExtractor {
     return language;
   }
 
-
+  // same as select("meta[key=value], span[key=value]")
+  private Elements selectMetaOrSpan(MetadataIndex index, String key, String value) {
+    Elements res = new Elements();
+    for (Element el : index.select(key, value)) {
+      if (el.tagName().equals("meta") || el.tagName().equals("span"))
+        res.add(el);
+    }
+    return res;
+  }
 }
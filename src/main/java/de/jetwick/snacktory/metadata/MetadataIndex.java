@@ -0,0 +1,200 @@
+package de.jetwick.snacktory.metadata;
+
+import org.jsoup.helper.StringUtil;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Elements;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the elements the MetadataExtractor is interested in, built in one
+ * pass over the document. Elements are looked up by the value of their name,
+ * property, itemprop or rel attribute instead of running a CSS query per
+ * field. Values are compared like jsoup does for [key=value]: trimmed and
+ * case insensitive. All results are in document order.
+ */
+public class MetadataIndex {
+
+  private static final String[] KEYS = {"name", "property", "itemprop", "rel"};
+
+  private final Document doc;
+  // attribute key -> lower case value -> elements
+  private final Map<String, Map<String, List<Element>>> byValue = new HashMap<String, Map<String, List<Element>>>();
+  // attribute key -> all elements having that attribute
+  private final Map<String, List<Element>> byKey = new HashMap<String, List<Element>>();
+  // attribute key -> the elements of byKey which are inside the body
+  private final Map<String, List<Element>> byKeyInBody = new HashMap<String, List<Element>>();
+  // the head is small, so all its elements are kept
+  private final Set<Element> inHead = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>());
+  private final List<Element> titles = new ArrayList<Element>(2);
+  private final List<Element> htmls = new ArrayList<Element>(1);
+
+  public MetadataIndex(Document doc) {
+    this.doc = doc;
+    for (String key : KEYS) {
+      byValue.put(key, new HashMap<String, List<Element>>());
+      byKey.put(key, new ArrayList<Element>());
+      byKeyInBody.put(key, new ArrayList<Element>());
+    }
+    new NodeTraversor(new NodeVisitor() {
+      int headDepth = 0;
+      int bodyDepth = 0;
+
+      @Override
+      public void head(Node node, int depth) {
+        if (!(node instanceof Element))
+          return;
+
+        Element el = (Element) node;
+        String tagName = el.tagName();
+        if (headDepth > 0)
+          inHead.add(el);
+        boolean inBody = bodyDepth > 0;
+
+        if (tagName.equals("head"))
+          headDepth++;
+        else if (tagName.equals("body"))
+          bodyDepth++;
+        else if (tagName.equals("title"))
+          titles.add(el);
+        else if (tagName.equals("html"))
+          htmls.add(el);
+
+        for (String key : KEYS) {
+          if (el.hasAttr(key)) {
+            add(key, el.attr(key), el);
+            if (inBody)
+              byKeyInBody.get(key).add(el);
+          }
+        }
+      }
+
+      @Override
+      public void tail(Node node, int depth) {
+        if (!(node instanceof Element))
+          return;
+
+        String tagName = ((Element) node).tagName();
+        if (tagName.equals("head"))
+          headDepth--;
+        else if (tagName.equals("body"))
+          bodyDepth--;
+      }
+    }).traverse(doc);
+  }
+
+  private void add(String key, String value, Element el) {
+    byKey.get(key).add(el);
+    String normalized = normalize(value);
+    Map<String, List<Element>> values = byValue.get(key);
+    List<Element> els = values.get(normalized);
+    if (els == null) {
+      els = new ArrayList<Element>(1);
+      values.put(normalized, els);
+    }
+    els.add(el);
+  }
+
+  private static String normalize(String value) {
+    return value.trim().toLowerCase();
+  }
+
+  public Document getDocument() {
+    return doc;
+  }
+
+  /**
+   * Same as doc.select("[key=value]")
+   *
+   * @param key one of name, property, itemprop or rel
+   */
+  public Elements select(String key, String value) {
+    List<Element> els = byValue.get(key).get(normalize(value));
+    return els == null ? new Elements(0) : new Elements(els);
+  }
+
+  /**
+   * Same as doc.select("tagName[key=value]")
+   *
+   * @param key one of name, property, itemprop or rel
+   */
+  public Elements select(String tagName, String key, String value) {
+    return select(tagName, key, value, false);
+  }
+
+  /**
+   * Same as doc.select("head tagName[key=value]")
+   */
+  public Elements selectInHead(String tagName, String key, String value) {
+    return select(tagName, key, value, true);
+  }
+
+  private Elements select(String tagName, String key, String value, boolean headOnly) {
+    List<Element> els = byValue.get(key).get(normalize(value));
+    if (els == null)
+      return new Elements(0);
+
+    Elements res = new Elements(els.size());
+    for (Element el : els) {
+      if (el.tagName().equals(tagName) && (!headOnly || inHead.contains(el)))
+        res.add(el);
+    }
+    return res;
+  }
+
+  /**
+   * @return all elements with the specified attribute, used for prefix,
+   * suffix and substring matches on its value
+   */
+  public List<Element> withAttribute(String key) {
+    return byKey.get(key);
+  }
+
+  /**
+   * Same as doc.select("body [key]")
+   */
+  public List<Element> withAttributeInBody(String key) {
+    return byKeyInBody.get(key);
+  }
+
+  public boolean isInHead(Element el) {
+    return inHead.contains(el);
+  }
+
+  /**
+   * Same as doc.title()
+   */
+  public String getTitle() {
+    if (titles.isEmpty())
+      return "";
+    return StringUtil.normaliseWhitespace(titles.get(0).text()).trim();
+  }
+
+  /**
+   * Same as doc.select("head title")
+   */
+  public Elements getTitlesInHead() {
+    Elements res = new Elements(titles.size());
+    for (Element el : titles) {
+      if (inHead.contains(el))
+        res.add(el);
+    }
+    return res;
+  }
+
+  /**
+   * Same as doc.select("html")
+   */
+  public Elements getHtmlElements() {
+    return new Elements(htmls);
+  }
+}
@@ -1,19 +1,38 @@
 package de.jetwick.snacktory.output;
 
+import de.jetwick.snacktory.ExtractionContext;
 import de.jetwick.snacktory.utils.SHelper;
+import de.jetwick.snacktory.utils.Utf8BudgetAppendable;
 import org.jsoup.nodes.Element;
+import java.io.IOException;
+import java.util.Set;
 
 public class HTMLOutputFormater extends OutputFormatter {
 
   private final static String NODES_TO_KEEP = "p, ol, img";
 
   @Override
-  public String doFormat(Element node) {
-    int paragraphWithTextIndex = 0;
+  public String doFormat(Element node, ExtractionContext ctx) {
     StringBuilder sb = new StringBuilder();
+    try {
+      doFormat(node, ctx, new Utf8BudgetAppendable(sb, -1));
+    } catch (IOException ex) {
+      // a StringBuilder does not throw
+      throw new IllegalStateException(ex);
+    }
+    return sb.toString();
+  }
+
+  @Override
+  protected void doFormat(Element node, ExtractionContext ctx, Utf8BudgetAppendable out) throws IOException {
+    int paragraphWithTextIndex = 0;
+    Set<Element> unlikely = findUnlikely(node, ctx);
     // is select more costly then getElementsByTag?
-    for (Element element : node.select(getNodesToKeep())) {
-      boolean isUnlikely = isUnlikely(element, node);
+    for (Element element : ctx.select(node, getNodesToKeep())) {
+      if (out.isFull())
+        break;
+
+      boolean isUnlikely = isUnlikely(element, node, unlikely, ctx);
       if (isUnlikely){
         continue;
       }
@@ -25,7 +44,7 @@ public class HTMLOutputFormater extends OutputFormatter {
 //                    sb.append(img.toString());
 //                }
 //            }
-      String text = element.toString();
+      String text = ctx.outerHtml(element);
       if (text.isEmpty() || text.length() < getMinParagraph(paragraphWithTextIndex)
           || text.length() > SHelper.countLetters(text) * 2){
         continue;
@@ -35,12 +54,10 @@ public class HTMLOutputFormater extends OutputFormatter {
 //        paragraphCounter++;
 //      }
 
-      sb.append(text);
-      sb.append("\n\n");
+      out.append(text);
+      out.append("\n\n");
       paragraphWithTextIndex+=1;
     }
-
-    return sb.toString();
   }
 
   @Override
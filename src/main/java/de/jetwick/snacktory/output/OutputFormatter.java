@@ -1,13 +1,26 @@
 package de.jetwick.snacktory.output;
 
+import de.jetwick.snacktory.ExtractionBudget;
+import de.jetwick.snacktory.ExtractionContext;
+import de.jetwick.snacktory.ExtractionStage;
 import de.jetwick.snacktory.ImageExtractor;
 import de.jetwick.snacktory.ImageResult;
+import de.jetwick.snacktory.TagCategories;
+import de.jetwick.snacktory.utils.IdentityIntMap;
+import de.jetwick.snacktory.utils.SHelper;
+import de.jetwick.snacktory.utils.Utf8BudgetAppendable;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
 import org.jsoup.parser.Tag;
 import org.jsoup.select.Elements;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 public abstract class OutputFormatter {
@@ -33,67 +46,199 @@ public abstract class OutputFormatter {
   }
 
   public String format(Element node){
-    setParagraphIndex(node, getNodesToKeep());
-    removeNodesWithNegativeScores(node);
+    return format(node, new ExtractionContext());
+  }
+
+  /**
+   * Formats the node without modifying it, scores are read from and
+   * removals are recorded in the specified context.
+   */
+  public String format(Element node, ExtractionContext ctx){
+    prepare(node, ctx);
+    return doFormat(node, ctx);
+  }
+
+  /**
+   * Like format but writes at most maxBytes bytes of the UTF-8 encoding of
+   * the text to out, i.e. the same as Utf8Utils.utf8truncate of the result
+   * of format. The formatters stop producing text once the budget is used
+   * up, so a small budget does not pay for formatting a large node.
+   *
+   * @param maxBytes a negative value for no limit
+   * @return true if the text was written completely, false if it was truncated
+   */
+  public boolean format(Element node, ExtractionContext ctx, Appendable out, int maxBytes) throws IOException {
+    prepare(node, ctx);
+    Utf8BudgetAppendable budget = new Utf8BudgetAppendable(out, maxBytes);
+    doFormat(node, ctx, budget);
+    return !budget.isTruncated();
+  }
+
+  /**
+   * Like format(node, ctx, out, maxBytes) but also measures the text which
+   * does not fit, up to minLength chars. So a caller can compare the length
+   * of the whole text with e.g. the title without formatting the node again,
+   * which would prepare the context a second time.
+   *
+   * @return the length of the text of format if it is below minLength,
+   * otherwise a value of at least minLength
+   */
+  public int format(Element node, ExtractionContext ctx, Appendable out, int maxBytes, int minLength)
+      throws IOException {
+    prepare(node, ctx);
+    Utf8BudgetAppendable budget = new Utf8BudgetAppendable(out, maxBytes, minLength);
+    doFormat(node, ctx, budget);
+    return budget.getLength();
+  }
+
+  /**
+   * Formats the node into blocks instead of one text: the paragraphs and
+   * lists this formatter keeps, as plain text, the headings and, if the
+   * formatter keeps images, the src of the images. The blocks are in
+   * document order. Like all scored nodes, h1 and h2 are removed if they
+   * are too short for a paragraph.
+   */
+  public TextBlocks formatBlocks(Element node, ExtractionContext ctx) {
+    prepare(node, ctx);
+    return doFormatBlocks(node, ctx);
+  }
 
-    return doFormat(node);
+  protected void prepare(Element node, ExtractionContext ctx) {
+    setParagraphIndex(node, getNodesToKeep(), ctx);
+    removeNodesWithNegativeScores(node, ctx);
   }
 
-  protected abstract String doFormat(Element node);
+  protected abstract String doFormat(Element node, ExtractionContext ctx);
+
+  /**
+   * Writes the text of doFormat to out. Formatters which can produce their
+   * text piece by piece override it and stop once out is truncated.
+   */
+  protected void doFormat(Element node, ExtractionContext ctx, Utf8BudgetAppendable out) throws IOException {
+    out.append(doFormat(node, ctx));
+  }
   protected abstract String getNodesToKeep();
 
-  protected void setParagraphIndex(Element node, String tagName) {
+  /**
+   * @return the nodes to keep and the headings
+   */
+  protected String getBlockNodes() {
+    return getNodesToKeep() + ", h1, h2, h3, h4, h5, h6";
+  }
+
+  /**
+   * Selects the paragraphs like the formatters do, so a paragraph is a
+   * block if the text of doFormat has it. Headings only need a text.
+   */
+  protected TextBlocks doFormatBlocks(Element node, ExtractionContext ctx) {
+    TextBlocks.Builder blocks = new TextBlocks.Builder();
+    StringBuilder text = new StringBuilder();
+    int paragraphWithTextIndex = 0;
+    Set<Element> unlikely = findUnlikely(node, ctx);
+    for (Element element : ctx.select(node, getBlockNodes())) {
+      if (isUnlikely(element, node, unlikely, ctx))
+        continue;
+
+      int categories = TagCategories.of(element);
+      if ((categories & TagCategories.IMAGE) != 0) {
+        blocks.add(TextBlocks.IMAGE, element.attr("src"));
+        continue;
+      }
+
+      text.setLength(0);
+      appendNotHiddenText(element, unlikely, ctx, text);
+      if ((categories & TagCategories.HEADING) != 0) {
+        blocks.add(TextBlocks.HEADING, text);
+        continue;
+      }
+      if (text.length() == 0 || text.length() < getMinParagraph(paragraphWithTextIndex)
+          || text.length() > SHelper.countLetters(text, 0, text.length()) * 2)
+        continue;
+
+      blocks.add((categories & TagCategories.LIST) != 0 ? TextBlocks.LIST : TextBlocks.PARAGRAPH, text);
+      paragraphWithTextIndex++;
+    }
+    return blocks.build();
+  }
+
+  protected void setParagraphIndex(Element node, String tagName, ExtractionContext ctx) {
     int paragraphIndex = 0;
-    for (Element e : node.select(tagName)) {
-      e.attr("paragraphIndex", Integer.toString(paragraphIndex++));
+    for (Element e : ctx.select(node, tagName)) {
+      ctx.setParagraphIndex(e, paragraphIndex++);
     }
   }
 
   /**
    * If there are elements inside our top node that have a negative gravity
-   * score remove them
+   * score remove them. Stops early if the budget of the context runs out.
+   *
+   * One top down pass which does not descend into removed nodes. The text
+   * lengths are bounded once bottom up, see TextBounds, and only a node
+   * whose bounds straddle the minimum builds its text. Removing a node
+   * changes the text of its ancestors only and those were checked before.
    */
-  protected void removeNodesWithNegativeScores(Element topNode) {
-    Elements gravityItems = topNode.select("*[gravityScore]");
-
-    for (Element item : gravityItems) {
-      int score = getScore(item);
-      int paragraphIndex = getParagraphIndex(item);
-      if (score < 0 || item.text().length() < getMinParagraph(paragraphIndex)){
-//                Elements imgs = ImageExtractor.getImages(item);
-        Elements imgs = item.select("img");
-        for (Element img : imgs){
-          ImageResult image = ImageExtractor.analyzeImage(img);
-          if (image == null){
-            continue;
-          }
-          boolean tooSmall = (image.weight != 0 && image.width < 100) ||
-              (image.height != 0 && image.height < 50);
-          if (!tooSmall) {
-            Element imgToAdd = new Element(Tag.valueOf("img"), "");
-            imgToAdd.attr("src", image.src);
-            item.after(imgToAdd);
-          }
+  protected void removeNodesWithNegativeScores(Element topNode, ExtractionContext ctx) {
+    ExtractionBudget budget = ctx.getBudget();
+    TextBounds bounds = new TextBounds(topNode, ctx);
+    int visited = 0;
+    Node node = topNode;
+    while (node != null) {
+      boolean descend = true;
+      if (node instanceof Element && ++visited > budget.getMaxNodes()) {
+        ctx.skip(ExtractionStage.FORMATTING);
+        break;
+      }
+      // removing the top node itself would only detach it from the document
+      if (node != topNode && ctx.isRemoved(node)) {
+        descend = false;
+      } else if (node != topNode && node instanceof Element && ctx.hasScore((Element) node)) {
+        Element item = (Element) node;
+        if (budget.isExpired()) {
+          ctx.skip(ExtractionStage.FORMATTING);
+          break;
+        }
+
+        int score = ctx.getScore(item);
+        int paragraphIndex = ctx.getParagraphIndex(item);
+        if (score < 0 || bounds.isShorter(item, getMinParagraph(paragraphIndex), ctx)) {
+          remove(item, ctx);
+          descend = false;
         }
-        item.remove();
       }
-    }
-  }
 
-  protected int getParagraphIndex(Element el){
-    try {
-      return Integer.parseInt(el.attr("paragraphIndex"));
-    } catch(NumberFormatException ex) {
-      return -1;
+      if (descend && node.childNodeSize() > 0) {
+        node = node.childNode(0);
+        continue;
+      }
+      while (node != topNode && node.nextSibling() == null) {
+        node = node.parentNode();
+      }
+      node = node == topNode ? null : node.nextSibling();
     }
   }
 
-  protected int getScore(Element el) {
-    try {
-      return Integer.parseInt(el.attr("gravityScore"));
-    } catch (Exception ex) {
-      return 0;
+  /**
+   * Removes the item and puts its images which are not too small at its place.
+   */
+  private void remove(Element item, ExtractionContext ctx) {
+//    Elements imgs = ImageExtractor.getImages(item);
+    Elements imgs = ctx.select(item, "img");
+    List<Element> imgsToAdd = new ArrayList<Element>();
+    for (Element img : imgs){
+      ImageResult image = ImageExtractor.analyzeImage(img);
+      if (image == null){
+        continue;
+      }
+      boolean tooSmall = (image.weight != 0 && image.width < 100) ||
+          (image.height != 0 && image.height < 50);
+      if (!tooSmall) {
+        Element imgToAdd = new Element(Tag.valueOf("img"), "");
+        imgToAdd.attr("src", image.src);
+        // every image used to be inserted directly after the item
+        imgsToAdd.add(0, imgToAdd);
+      }
     }
+    ctx.remove(item, imgsToAdd);
   }
 
   protected int getMinParagraph(int paragraphIndex){
@@ -104,16 +249,100 @@ public abstract class OutputFormatter {
     }
   }
 
-  protected boolean isUnlikely(Element node, Element root){
+  protected boolean isUnlikely(Element node, Element root, ExtractionContext ctx){
     // check all elements until 'root'
     while (node != null && !node.equals(root)) {
       if (unlikely(node))
         return true;
-      node = node.parent();
+      node = ctx.parent(node);
     }
     return false;
   }
 
+  /**
+   * Like isUnlikely but looks the element up in the result of findUnlikely
+   * instead of checking its ancestors again.
+   */
+  protected boolean isUnlikely(Element node, Element root, Set<Element> unlikely, ExtractionContext ctx){
+    if (node == root)
+      return false;
+    if (unlikely.contains(node))
+      return true;
+    Element parent = ctx.parent(node);
+    if (parent == node.parent())
+      return false;
+    // a replacement of a removed node, it is not part of the DOM and was not traversed
+    return unlikely(node) || parent != root && unlikely.contains(parent);
+  }
+
+  /**
+   * Collects the elements below root which are unlikely or have an unlikely
+   * ancestor below root. One depth first traversal passes the state down
+   * from parent to child, so every element is checked once. Removed nodes
+   * are skipped.
+   */
+  protected Set<Element> findUnlikely(Element root, ExtractionContext ctx){
+    Set<Element> res = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>());
+    Node node = root;
+    while (node != null) {
+      boolean descend = true;
+      if (node != root && node instanceof Element) {
+        Element el = (Element) node;
+        if (ctx.isRemoved(el))
+          descend = false;
+        else if (res.contains(el.parent()) || unlikely(el))
+          res.add(el);
+      }
+
+      if (descend && node.childNodeSize() > 0) {
+        node = node.childNode(0);
+        continue;
+      }
+      while (node != root && node.nextSibling() == null) {
+        node = node.parentNode();
+      }
+      node = node == root ? null : node.nextSibling();
+    }
+    return res;
+  }
+
+  /**
+   * Appends the text of node to sb without the removed and unlikely nodes
+   * and with a space before block elements and br.
+   *
+   * @param unlikely the result of findUnlikely, node is not in it and so
+   * its children are in it only if they are unlikely themselves
+   */
+  protected void appendNotHiddenText(Element node, Set<Element> unlikely, ExtractionContext ctx, StringBuilder sb) {
+    int start = sb.length();
+    for (Node child : node.childNodes()) {
+      if (ctx.isRemoved(child) || child instanceof Element && unlikely.contains(child)){
+        continue;
+      }
+      if (child instanceof TextNode) {
+        TextNode textNode = (TextNode) child;
+        String txt = textNode.text();
+        sb.append(txt);
+      } else if (child instanceof Element) {
+        Element childElement = (Element) child;
+        boolean isBr = TagCategories.is(childElement, TagCategories.LINE_BREAK);
+        if (sb.length() > start && childElement.isBlock()
+            && !lastCharIsWhitespace(sb))
+          sb.append(" ");
+        else if (isBr)
+//        if (isBr)
+          sb.append(" ");
+        appendNotHiddenText(childElement, unlikely, ctx, sb);
+      }
+    }
+  }
+
+  boolean lastCharIsWhitespace(StringBuilder accum) {
+    if (accum.length() == 0)
+      return false;
+    return Character.isWhitespace(accum.charAt(accum.length() - 1));
+  }
+
   protected boolean unlikely(Node node) {
     if (isCaption(node) || isHidden(node)){
       return true;
@@ -122,7 +351,8 @@ public abstract class OutputFormatter {
   }
 
   protected boolean isCaption(Node node){
-    if (node.attr("class") != null && node.attr("class").toLowerCase().contains("caption"))
+    String clazz = node.attr("class");
+    if (!clazz.isEmpty() && clazz.toLowerCase().contains("caption"))
       return true;
     return false;
   }
@@ -130,8 +360,99 @@ public abstract class OutputFormatter {
   protected boolean isHidden(Node node){
     String style = node.attr("style");
     String clazz = node.attr("class");
-    if (HIDDEN_PATTERN.matcher(style).find() || HIDDEN_PATTERN.matcher(clazz).find())
+    // most elements have neither, skip the matchers
+    if (!style.isEmpty() && HIDDEN_PATTERN.matcher(style).find()
+        || !clazz.isEmpty() && HIDDEN_PATTERN.matcher(clazz).find())
       return true;
     return false;
   }
+
+  /**
+   * Bounds of the length of ExtractionContext.text for the scored elements
+   * below a root, computed in one post-order traversal which skips removed
+   * nodes. The text normalises white space and puts a space before block
+   * elements and br, so it has at least as many characters as there are non
+   * white space characters and at most as many as there are characters plus
+   * block elements. Valid until a node below the element is removed.
+   */
+  private static class TextBounds {
+
+    private final IdentityIntMap<Element> lower = new IdentityIntMap<Element>();
+    private final IdentityIntMap<Element> upper = new IdentityIntMap<Element>();
+
+    TextBounds(Element root, ExtractionContext ctx) {
+      // the sums of the elements on the path from the root to the current node
+      int[] lowerSums = new int[16];
+      int[] upperSums = new int[16];
+      int depth = 0;
+      Node node = root;
+      while (node != null) {
+        boolean descend = false;
+        if (node instanceof TextNode && !ctx.isRemoved(node)) {
+          String text = ((TextNode) node).getWholeText();
+          upperSums[depth] += text.length();
+          lowerSums[depth] += countNonWhitespace(text);
+        } else if (node == root || node instanceof Element && !ctx.isRemoved(node)) {
+          descend = node.childNodeSize() > 0;
+          if (descend) {
+            if (++depth == lowerSums.length) {
+              lowerSums = Arrays.copyOf(lowerSums, depth * 2);
+              upperSums = Arrays.copyOf(upperSums, depth * 2);
+            }
+            lowerSums[depth] = 0;
+            upperSums[depth] = 0;
+          } else {
+            finish((Element) node, depth, 0, 0, lowerSums, upperSums, ctx);
+          }
+        }
+
+        if (descend) {
+          node = node.childNode(0);
+          continue;
+        }
+        while (node != root && node.nextSibling() == null) {
+          node = node.parentNode();
+          depth--;
+          finish((Element) node, depth, lowerSums[depth + 1], upperSums[depth + 1], lowerSums, upperSums, ctx);
+        }
+        node = node == root ? null : node.nextSibling();
+      }
+    }
+
+    /**
+     * Stores the sums of el and adds them to those of its parent at depth.
+     */
+    private void finish(Element el, int depth, int lowerSum, int upperSum,
+        int[] lowerSums, int[] upperSums, ExtractionContext ctx) {
+      if (ctx.hasScore(el)) {
+        lower.put(el, lowerSum);
+        upper.put(el, upperSum);
+      }
+      lowerSums[depth] += lowerSum;
+      upperSums[depth] += upperSum;
+      if (el.isBlock() || TagCategories.is(el, TagCategories.LINE_BREAK))
+        upperSums[depth]++;
+    }
+
+    /**
+     * @return true if the text of the scored element el is shorter than minLength
+     */
+    boolean isShorter(Element el, int minLength, ExtractionContext ctx) {
+      if (lower.get(el, 0) >= minLength)
+        return false;
+      if (upper.get(el, Integer.MAX_VALUE) < minLength)
+        return true;
+      return ctx.text(el).length() < minLength;
+    }
+
+    // String.trim removes all characters up to ' ', jsoup white space included
+    private static int countNonWhitespace(String text) {
+      int count = 0;
+      for (int i = 0; i < text.length(); i++) {
+        if (text.charAt(i) > ' ')
+          count++;
+      }
+      return count;
+    }
+  }
 }
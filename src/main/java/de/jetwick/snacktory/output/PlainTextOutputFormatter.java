@@ -1,10 +1,14 @@
 package de.jetwick.snacktory.output;
 
+import de.jetwick.snacktory.ExtractionContext;
+import de.jetwick.snacktory.TagCategories;
+import de.jetwick.snacktory.utils.HtmlTextStripper;
 import de.jetwick.snacktory.utils.SHelper;
-import org.jsoup.Jsoup;
+import de.jetwick.snacktory.utils.TextNormalizer;
+import de.jetwick.snacktory.utils.Utf8BudgetAppendable;
 import org.jsoup.nodes.Element;
-import org.jsoup.nodes.Node;
-import org.jsoup.nodes.TextNode;
+import java.io.IOException;
+import java.util.Set;
 
 /**
  * @author goose | jim
@@ -27,44 +31,161 @@ public class PlainTextOutputFormatter extends OutputFormatter{
      * takes an element and turns the P tags into \n\n
      */
     @Override
-    public String doFormat(Element node) {
-        ExtractResult extractResult = extractText(node);
-        String text = SHelper.innerTrim(extractResult.text);
+    public String doFormat(Element node, ExtractionContext ctx) {
+        ExtractResult extractResult = extractText(node, ctx);
+        String text = TextNormalizer.normalize(extractResult.text, TextNormalizer.COLLAPSE_WHITESPACE, -1, -1);
+        return chooseText(node, ctx, text, extractResult.paragraphCount);
+    }
 
-        int topNodeLength = node.text().length();
+    /**
+     * @return text if the paragraphs make up enough of the node, otherwise
+     * the text of the node itself
+     */
+    private String chooseText(Element node, ExtractionContext ctx, String text, int paragraphCount) {
+        String nodeText = ctx.text(node);
+        int topNodeLength = nodeText.length();
         if (topNodeLength == 0) {
             topNodeLength = 1;
         }
 
         boolean lowTextRatio = ((text.length() / (topNodeLength * 1.0)) < 0.25);
-        if (text.length() > MIN_TEXT_LENGTH && extractResult.paragraphCount > 0 && !lowTextRatio){
+        if (text.length() > MIN_TEXT_LENGTH && paragraphCount > 0 && !lowTextRatio){
             return text;
         }
 
         // no subelements
-        boolean noSubelements = text.isEmpty() || (!node.text().isEmpty()
+        boolean noSubelements = text.isEmpty() || (!nodeText.isEmpty()
             && text.length() <= node.ownText().length())
-            || extractResult.paragraphCount == 0 || lowTextRatio;
+            || paragraphCount == 0 || lowTextRatio;
         if (noSubelements){
-            text = node.text();
+            text = nodeText;
         }
 
-        // if jsoup failed to parse the whole html now parse this smaller 
-        // snippet again to avoid html tags disturbing our text:
-        return Jsoup.parse(text).text();
+        // if jsoup failed to parse the whole html strip the tags from this
+        // smaller snippet to avoid them disturbing our text:
+        return HtmlTextStripper.text(text);
+    }
+
+    /**
+     * The blocks of the paragraphs if doFormat takes its text from them,
+     * otherwise one paragraph with the text doFormat falls back to.
+     */
+    @Override
+    protected TextBlocks doFormatBlocks(Element node, ExtractionContext ctx) {
+        TextBlocks blocks = super.doFormatBlocks(node, ctx);
+        StringBuilder sb = new StringBuilder();
+        int paragraphCount = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            int type = blocks.getType(i);
+            if (type == TextBlocks.HEADING)
+                continue;
+            if (type == TextBlocks.PARAGRAPH)
+                paragraphCount++;
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append(blocks.getBlock(i));
+        }
+        String paragraphs = sb.toString();
+        // the same instance if the text is that of the paragraphs
+        String text = chooseText(node, ctx, paragraphs, paragraphCount);
+        if (text == paragraphs)
+            return blocks;
+
+        TextBlocks.Builder fallback = new TextBlocks.Builder();
+        fallback.add(TextBlocks.PARAGRAPH, text);
+        return fallback.build();
     }
 
-    protected ExtractResult extractText(Element node) {
+    /**
+     * Like doFormat but the paragraphs are trimmed as they come and only
+     * until the budget is full and they are long enough compared to the whole
+     * text of the node, see lowTextRatio. Otherwise it falls back to the text
+     * of the node, which is formatted completely.
+     */
+    @Override
+    protected void doFormat(Element node, ExtractionContext ctx, Utf8BudgetAppendable out) throws IOException {
+        if (!out.isLimited()) {
+            out.append(doFormat(node, ctx));
+            return;
+        }
+
+        int nodeTextLength = ctx.textLength(node);
+        int topNodeLength = Math.max(nodeTextLength, 1);
+        // with more chars than bytes the budget is exceeded in any case, the
+        // chars up to the min length of out are counted nevertheless
+        int maxChars = Math.max(Math.max(out.getMaxBytes(), out.getMinLength()), MIN_TEXT_LENGTH) + 1;
+        TextNormalizer text = new TextNormalizer(TextNormalizer.COLLAPSE_WHITESPACE, -1, maxChars);
+        StringBuilder paragraph = new StringBuilder();
+        int paragraphCounter = 0;
+        int paragraphWithTextIndex = 0;
+        Set<Element> unlikely = findUnlikely(node, ctx);
+        for (Element element : ctx.select(node, getNodesToKeep())) {
+            paragraph.setLength(0);
+            if (!appendParagraph(element, node, unlikely, paragraphWithTextIndex, ctx, paragraph))
+                continue;
+
+            if (TagCategories.is(element, TagCategories.PARAGRAPH))
+                paragraphCounter++;
+            text.append(paragraph);
+            text.append("\n\n");
+            paragraphWithTextIndex += 1;
+            // no later paragraph can change the decision or the written text
+            if (text.isFull() && paragraphCounter > 0 && !lowTextRatio(text.length(), topNodeLength))
+                break;
+        }
+
+        boolean lowTextRatio = lowTextRatio(text.length(), topNodeLength);
+        if (text.length() > MIN_TEXT_LENGTH && paragraphCounter > 0 && !lowTextRatio) {
+            out.append(text.toString());
+            return;
+        }
+
+        // all paragraphs were appended and text holds at most MIN_TEXT_LENGTH chars
+        boolean noSubelements = text.length() == 0 || (nodeTextLength > 0
+            && text.length() <= node.ownText().length())
+            || paragraphCounter == 0 || lowTextRatio;
+        String res = noSubelements ? ctx.text(node) : text.toString();
+        out.append(HtmlTextStripper.text(res));
+    }
+
+    private static boolean lowTextRatio(int textLength, int topNodeLength) {
+        return (textLength / (topNodeLength * 1.0)) < 0.25;
+    }
+
+    protected ExtractResult extractText(Element node, ExtractionContext ctx) {
         int paragraphCounter = 0; // Number of P elements in the article
         int paragraphWithTextIndex = 0;
 
         StringBuilder sb = new StringBuilder();
+        Set<Element> unlikely = findUnlikely(node, ctx);
         // is select more costly then getElementsByTag?
-        for (Element element : node.select(getNodesToKeep())) {
-            boolean isUnlikely = isUnlikely(element, node);
-            if (isUnlikely){
+        for (Element element : ctx.select(node, getNodesToKeep())) {
+            if (!appendParagraph(element, node, unlikely, paragraphWithTextIndex, ctx, sb))
                 continue;
+
+            if (TagCategories.is(element, TagCategories.PARAGRAPH)){
+                paragraphCounter++;
             }
+
+            sb.append("\n\n");
+            paragraphWithTextIndex+=1;
+        }
+
+        return new ExtractResult(sb, paragraphCounter);
+    }
+
+    /**
+     * Appends the text of the element to sb unless it is unlikely or its text
+     * is too short or not mostly letters.
+     *
+     * @return true if the text was appended
+     */
+    private boolean appendParagraph(Element element, Element node, Set<Element> unlikely,
+                                    int paragraphWithTextIndex, ExtractionContext ctx, StringBuilder sb) {
+        boolean isUnlikely = isUnlikely(element, node, unlikely, ctx);
+        if (isUnlikely){
+            return false;
+        }
 //            if (inlineImages){
 //                boolean isImage = element.tagName().equals("img");
 //                if (isImage){
@@ -73,64 +194,39 @@ public class PlainTextOutputFormatter extends OutputFormatter{
 //                    sb.append(img.toString());
 //                }
 //            }
-            String text = node2Text(element);
-            if (text.isEmpty() || text.length() < getMinParagraph(paragraphWithTextIndex) 
-                || text.length() > SHelper.countLetters(text) * 2){
-                continue;
-            }
-
-            if (element.tagName().equals("p")){
-                paragraphCounter++;
-            }
-
-            sb.append(text);
-            sb.append("\n\n");
-            paragraphWithTextIndex+=1;
+        int start = sb.length();
+        appendNode2Text(element, unlikely, ctx, sb);
+        int length = sb.length() - start;
+        if (length == 0 || length < getMinParagraph(paragraphWithTextIndex)
+            || length > SHelper.countLetters(sb, start, sb.length()) * 2){
+            sb.setLength(start);
+            return false;
         }
+        return true;
+    }
 
-        return new ExtractResult(sb.toString(), paragraphCounter);
+    protected String node2Text(Element el, ExtractionContext ctx) {
+        return node2Text(el, findUnlikely(el, ctx), ctx);
     }
 
-    private String notHiddenText(Element node) {
+    protected String node2Text(Element el, Set<Element> unlikely, ExtractionContext ctx) {
         StringBuilder sb = new StringBuilder();
-        for (Node child : node.childNodes()) {
-            if (unlikely(child)){
-                continue;
-            }
-            if (child instanceof TextNode) {
-                TextNode textNode = (TextNode) child;
-                String txt = textNode.text();
-                sb.append(txt);
-            } else if (child instanceof Element) {
-                Element childElement = (Element) child;
-                boolean isBr = childElement.tagName().equals("br");
-                if (sb.length() > 0 && childElement.isBlock()
-                    && !lastCharIsWhitespace(sb))
-                    sb.append(" ");
-                else if (isBr)
-//                if (isBr)
-                    sb.append(" ");
-                String childText = notHiddenText(childElement);
-                sb.append(childText);
-            }
-        }
+        appendNode2Text(el, unlikely, ctx, sb);
         return sb.toString();
     }
 
-    boolean lastCharIsWhitespace(StringBuilder accum) {
-        if (accum.length() == 0)
-            return false;
-        return Character.isWhitespace(accum.charAt(accum.length() - 1));
-    }
-
-    protected String node2Text(Element el) {
-        return notHiddenText(el);
+    /**
+     * Like node2Text but appends the text to sb, without a string for it and
+     * each of its descendants.
+     */
+    protected void appendNode2Text(Element el, Set<Element> unlikely, ExtractionContext ctx, StringBuilder sb) {
+        appendNotHiddenText(el, unlikely, ctx, sb);
     }
 
     private class ExtractResult {
-        String text;
+        CharSequence text;
         int paragraphCount;
-        ExtractResult(String text, int paragraphCount){
+        ExtractResult(CharSequence text, int paragraphCount){
             this.text = text;
             this.paragraphCount = paragraphCount;
         }
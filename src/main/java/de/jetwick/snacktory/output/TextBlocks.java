@@ -0,0 +1,163 @@
+package de.jetwick.snacktory.output;
+
+import de.jetwick.snacktory.utils.TextNormalizer;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The text of the best node as a sequence of blocks, e.g. its paragraphs,
+ * lists, headings and images, see OutputFormatter.formatBlocks. All blocks
+ * are stored one after the other in one char array and a table holds the
+ * end and the type of each block, so a block is a span of the text which
+ * can be read without splitting the text or copying it.
+ *
+ * The text of a block has its white space collapsed like SHelper.innerTrim,
+ * there are no separators between blocks. The text of an image is its src.
+ */
+public final class TextBlocks implements CharSequence, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final int PARAGRAPH = 0;
+  /** ol and ul */
+  public static final int LIST = 1;
+  /** h1 to h6 */
+  public static final int HEADING = 2;
+  public static final int IMAGE = 3;
+
+  public static final TextBlocks EMPTY = new TextBlocks(new char[0], new int[0]);
+
+  private final char[] chars;
+  // the end in chars and the type of each block, the start is the end of the previous block
+  private final int[] table;
+
+  private TextBlocks(char[] chars, int[] table) {
+    this.chars = chars;
+    this.table = table;
+  }
+
+  /**
+   * @return the number of blocks
+   */
+  public int size() {
+    return table.length / 2;
+  }
+
+  public int getType(int block) {
+    return table[2 * block + 1];
+  }
+
+  /**
+   * @return the index of the first char of the block in this text
+   */
+  public int getStart(int block) {
+    return block == 0 ? 0 : table[2 * block - 2];
+  }
+
+  /**
+   * @return the index after the last char of the block in this text
+   */
+  public int getEnd(int block) {
+    return table[2 * block];
+  }
+
+  /**
+   * @return the text of the block, a view without a copy
+   */
+  public CharSequence getBlock(int block) {
+    return subSequence(getStart(block), getEnd(block));
+  }
+
+  @Override
+  public int length() {
+    return chars.length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return chars[index];
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || start > end || end > chars.length)
+      throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + chars.length);
+    return new Span(chars, start, end);
+  }
+
+  @Override
+  public String toString() {
+    return new String(chars);
+  }
+
+  private static final class Span implements CharSequence {
+
+    private final char[] chars;
+    private final int start;
+    private final int end;
+
+    Span(char[] chars, int start, int end) {
+      this.chars = chars;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public int length() {
+      return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= end - start)
+        throw new IndexOutOfBoundsException("index " + index + ", length " + (end - start));
+      return chars[start + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+      if (from < 0 || from > to || to > end - start)
+        throw new IndexOutOfBoundsException("start " + from + ", end " + to + ", length " + (end - start));
+      return new Span(chars, start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars, start, end - start);
+    }
+  }
+
+  public static class Builder {
+
+    private final StringBuilder text = new StringBuilder();
+    private int[] table = new int[16];
+    private int size;
+
+    /**
+     * Adds a block with the text with its white space collapsed.
+     *
+     * @return false if nothing was added because the text is empty or white
+     * space only
+     */
+    public boolean add(int type, CharSequence blockText) {
+      if (TextNormalizer.normalize(blockText, TextNormalizer.COLLAPSE_WHITESPACE, -1, -1, text) == 0)
+        return false;
+
+      if (2 * size + 2 > table.length)
+        table = Arrays.copyOf(table, table.length * 2);
+      table[2 * size] = text.length();
+      table[2 * size + 1] = type;
+      size++;
+      return true;
+    }
+
+    public TextBlocks build() {
+      if (size == 0)
+        return EMPTY;
+
+      char[] chars = new char[text.length()];
+      text.getChars(0, chars.length, chars, 0);
+      return new TextBlocks(chars, Arrays.copyOf(table, 2 * size));
+    }
+  }
+}
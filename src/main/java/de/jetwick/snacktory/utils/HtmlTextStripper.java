@@ -0,0 +1,517 @@
+package de.jetwick.snacktory.utils;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Entities;
+import org.jsoup.parser.Tag;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Computes Jsoup.parse(html).text() for text which was already extracted and
+ * only contains stray markup, without building a Document. A scanner follows
+ * the jsoup tokeniser: tags, comments, scripts and styles are dropped,
+ * character references decoded, runs of white space collapsed and a space is
+ * put in front of block elements and br.
+ *
+ * Markup whose text depends on the tree builder, like tables, pre, title or a
+ * lonely end tag of p, is rare in such text and left to jsoup. Text which is
+ * already normalised is returned as is.
+ */
+public final class HtmlTextStripper {
+
+  // the tree builder moves, drops, adds or keeps the raw text of these, s
+  // is a block whose copies it adds when formatting elements are misnested
+  private static final Set<String> PARSER_TAGS = new HashSet<String>(Arrays.asList(
+      "s", "frameset", "frame", "title", "noscript", "noframes",
+      "textarea", "xmp", "iframe", "noembed", "plaintext", "pre", "listing", "table", "caption",
+      "colgroup", "col", "tbody", "thead", "tfoot", "tr", "td", "th", "select", "option", "optgroup",
+      "form", "image", "isindex", "math", "svg", "template"));
+  // within the body these only add attributes to the existing elements
+  private static final Set<String> DOCUMENT_TAGS = new HashSet<String>(Arrays.asList("html", "head", "body"));
+  private static final Set<String> FORMATTING_TAGS = new HashSet<String>(Arrays.asList(
+      "a", "b", "big", "code", "em", "font", "i", "nobr", "small", "strike", "strong", "tt", "u"));
+
+  // the states of the tokeniser within a tag
+  private static final int BEFORE_NAME = 0;
+  private static final int NAME = 1;
+  private static final int AFTER_NAME = 2;
+  private static final int BEFORE_VALUE = 3;
+  private static final int UNQUOTED_VALUE = 4;
+  private static final int AFTER_VALUE = 5;
+  private static final int SELF_CLOSING = 6;
+
+  private HtmlTextStripper() {
+  }
+
+  /**
+   * @return the same as Jsoup.parse(html).text()
+   */
+  public static String text(String html) {
+    String text = strip(html);
+    return text == null ? Jsoup.parse(html).text() : text;
+  }
+
+  /**
+   * @return the text of html, html itself if it is normalised already or
+   * null if the markup needs the parser
+   */
+  static String strip(String html) {
+    int i = firstChange(html);
+    if (i < 0)
+      return html;
+
+    int len = html.length();
+    StringBuilder sb = new StringBuilder(len);
+    sb.append(html, 0, i);
+    OpenFormatting open = new OpenFormatting();
+    while (i < len) {
+      char c = html.charAt(i);
+      if (c == '<') {
+        i = markup(html, i + 1, sb, open);
+      } else if (c == '&') {
+        i = reference(html, i + 1, sb);
+      } else if (c == 0) {
+        // kept or dropped depending on the text around it
+        return null;
+      } else if (isWhitespace(c)) {
+        appendText(sb, c);
+        i++;
+      } else {
+        int start = i++;
+        while (i < len && isPlain(html.charAt(i))) {
+          i++;
+        }
+        sb.append(html, start, i);
+      }
+      if (i < 0)
+        return null;
+    }
+
+    int end = sb.length();
+    while (end > 0 && sb.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    int start = 0;
+    while (start < end && sb.charAt(start) <= ' ') {
+      start++;
+    }
+    return sb.substring(start, end);
+  }
+
+  /**
+   * @return the index of the first char stripping changes, -1 if html has
+   * no markup, no character references and only single spaces between its
+   * words
+   */
+  private static int firstChange(String html) {
+    int len = html.length();
+    if (len == 0)
+      return -1;
+    if (html.charAt(0) <= ' ')
+      return 0;
+
+    char previous = 0;
+    for (int i = 0; i < len; i++) {
+      char c = html.charAt(i);
+      if (c == ' ' ? previous == ' ' : !isPlain(c))
+        return i;
+      previous = c;
+    }
+    return html.charAt(len - 1) <= ' ' ? len - 1 : -1;
+  }
+
+  /**
+   * Skips the markup after a '<' and adds its effect on the text.
+   *
+   * @param i the index after the '<'
+   * @return the index after the markup, -1 if it needs the parser
+   */
+  private static int markup(String html, int i, StringBuilder sb, OpenFormatting open) {
+    int len = html.length();
+    if (i == len) {
+      appendText(sb, '<');
+      return i;
+    }
+
+    char c = html.charAt(i);
+    if (isLetter(c))
+      return tag(html, i, false, sb, open);
+
+    if (c == '/') {
+      if (i + 1 == len) {
+        appendText(sb, '<');
+        appendText(sb, '/');
+        return len;
+      }
+      c = html.charAt(i + 1);
+      if (isLetter(c))
+        return tag(html, i + 1, true, sb, open);
+      if (c == '>')
+        return i + 2;
+      return skipTo(html, i + 1, '>');
+    }
+
+    if (c == '!') {
+      if (html.startsWith("--", i + 1))
+        return comment(html, i + 3);
+      // the doctype states of the tokeniser can swallow text after the '>'
+      if (html.regionMatches(true, i + 1, "DOCTYPE", 0, 7) || html.startsWith("[CDATA[", i + 1))
+        return -1;
+      return skipTo(html, i + 1, '>');
+    }
+
+    if (c == '?')
+      return skipTo(html, i, '>');
+
+    // not markup, the next char is text again
+    appendText(sb, '<');
+    return i;
+  }
+
+  /**
+   * @param i the index of the first letter of the tag name
+   */
+  private static int tag(String html, int i, boolean endTag, StringBuilder sb, OpenFormatting open) {
+    int len = html.length();
+    int nameEnd = i;
+    while (nameEnd < len) {
+      char c = html.charAt(nameEnd);
+      if (isWhitespace(c) || c == '/' || c == '>')
+        break;
+      if (c == 0)
+        return -1;
+      nameEnd++;
+    }
+
+    int end = tagEnd(html, nameEnd);
+    if (end < 0)
+      // an unfinished tag is dropped with the rest of the input
+      return len;
+
+    String name = html.substring(i, nameEnd).toLowerCase();
+    if (PARSER_TAGS.contains(name) || endTag && name.equals("p"))
+      return -1;
+    if (DOCUMENT_TAGS.contains(name))
+      return end;
+    if (!endTag && (name.equals("script") || name.equals("style"))) {
+      // their content is data, not text
+      if (html.charAt(end - 2) == '/')
+        return -1;
+      appendBlock(sb);
+      return dataEnd(html, end, name);
+    }
+    if (endTag ? !open.endTag(name) : !open.startTag(name))
+      return -1;
+    // an end tag of br is taken as a br
+    if (name.equals("br") || !endTag && Tag.isKnownTag(name) && Tag.valueOf(name).isBlock())
+      appendBlock(sb);
+    return end;
+  }
+
+  /**
+   * @param i the index after the start tag
+   * @return the index after the end tag of the script or style, -1 if a
+   * script contains a comment, which the tokeniser escapes
+   */
+  private static int dataEnd(String html, int i, String name) {
+    int len = html.length();
+    int from = i;
+    while (true) {
+      int close = html.indexOf("</", from);
+      if (close < 0)
+        return len;
+      int nameEnd = close + 2;
+      while (nameEnd < len && isLetter(html.charAt(nameEnd))) {
+        nameEnd++;
+      }
+      from = nameEnd;
+      if (nameEnd - close - 2 != name.length() || !html.regionMatches(true, close + 2, name, 0, name.length()))
+        continue;
+      if (nameEnd == len)
+        return len;
+
+      char c = html.charAt(nameEnd);
+      if (isWhitespace(c) || c == '/' || c == '>') {
+        if (name.equals("script") && html.substring(i, close).contains("<!--"))
+          return -1;
+        int end = tagEnd(html, nameEnd);
+        return end < 0 ? len : end;
+      }
+      // the tokeniser takes this char as data too
+      from++;
+    }
+  }
+
+  /**
+   * Follows the attributes of a tag like the tokeniser, a '>' only ends the
+   * tag outside of quoted values.
+   *
+   * @param i the index after the tag name
+   * @return the index after the tag, -1 if the input ends within it
+   */
+  private static int tagEnd(String html, int i) {
+    int len = html.length();
+    int state = BEFORE_NAME;
+    while (i < len) {
+      char c = html.charAt(i++);
+      if (c == 0)
+        return -1;
+
+      switch (state) {
+        case BEFORE_NAME:
+        case AFTER_NAME:
+          if (c == '>')
+            return i;
+          if (c == '/')
+            state = SELF_CLOSING;
+          else if (c == '=' && state == AFTER_NAME)
+            state = BEFORE_VALUE;
+          else if (!isWhitespace(c))
+            state = NAME;
+          break;
+        case NAME:
+          if (c == '>')
+            return i;
+          if (c == '/')
+            state = SELF_CLOSING;
+          else if (c == '=')
+            state = BEFORE_VALUE;
+          else if (isWhitespace(c))
+            state = AFTER_NAME;
+          break;
+        case BEFORE_VALUE:
+          if (c == '>')
+            return i;
+          if (c == '"' || c == '\'') {
+            int close = html.indexOf(c, i);
+            if (close < 0)
+              return -1;
+            i = close + 1;
+            state = AFTER_VALUE;
+          } else if (!isWhitespace(c)) {
+            state = UNQUOTED_VALUE;
+          }
+          break;
+        case UNQUOTED_VALUE:
+          if (c == '>')
+            return i;
+          if (isWhitespace(c))
+            state = BEFORE_NAME;
+          break;
+        case AFTER_VALUE:
+          if (c == '>')
+            return i;
+          if (c == '/') {
+            state = SELF_CLOSING;
+          } else {
+            state = BEFORE_NAME;
+            if (!isWhitespace(c))
+              i--;
+          }
+          break;
+        default:
+          if (c == '>')
+            return i;
+          // jsoup 1.8.3 drops the char after a lonely '/'
+          state = BEFORE_NAME;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Follows the comment states of the tokeniser, which ends a comment at
+   * "--&gt;" or "--!&gt;" but after a leading run of dashes only at '&gt;'.
+   *
+   * @param i the index after "&lt;!--"
+   */
+  private static int comment(String html, int i) {
+    int len = html.length();
+    while (i < len && html.charAt(i) == '-') {
+      i++;
+    }
+    if (i == len)
+      return len;
+    if (html.charAt(i++) == '>')
+      return i;
+
+    // 0 in the comment, 1 after '-', 2 after "--", 3 after "--!"
+    int state = 0;
+    while (i < len) {
+      char c = html.charAt(i++);
+      if (c == '>' && state >= 2)
+        return i;
+      if (c == '-')
+        state = state == 0 || state == 3 ? 1 : 2;
+      else if (c == '!' && state == 2)
+        state = 3;
+      else
+        state = 0;
+    }
+    return len;
+  }
+
+  private static int skipTo(String html, int i, char c) {
+    int index = html.indexOf(c, i);
+    return index < 0 ? html.length() : index + 1;
+  }
+
+  /**
+   * Decodes a character reference like the tokeniser does in text: numeric
+   * ones with or without ';', named ones without ';' only for the base
+   * entities. Otherwise the '&' is text.
+   *
+   * @param i the index after the '&'
+   * @return the index after the reference, -1 if it needs the parser
+   */
+  private static int reference(String html, int i, StringBuilder sb) {
+    int len = html.length();
+    if (i == len) {
+      appendText(sb, '&');
+      return i;
+    }
+
+    char c = html.charAt(i);
+    if (isWhitespace(c) || c == '<' || c == '&') {
+      appendText(sb, '&');
+      return i;
+    }
+
+    if (c == '#') {
+      int start = i + 1;
+      boolean hex = start < len && (html.charAt(start) == 'x' || html.charAt(start) == 'X');
+      if (hex)
+        start++;
+      int end = start;
+      while (end < len && (hex ? isHexDigit(html.charAt(end)) : isDigit(html.charAt(end)))) {
+        end++;
+      }
+      if (end == start) {
+        appendText(sb, '&');
+        return i;
+      }
+
+      int codePoint;
+      try {
+        codePoint = Integer.parseInt(html.substring(start, end), hex ? 16 : 10);
+      } catch (NumberFormatException ex) {
+        codePoint = -1;
+      }
+      if (codePoint == 0)
+        return -1;
+      if (codePoint < 0 || codePoint >= 0xD800 && codePoint <= 0xDFFF || codePoint > 0x10FFFF)
+        codePoint = 0xFFFD;
+      if (Character.isSupplementaryCodePoint(codePoint)) {
+        sb.appendCodePoint(codePoint);
+      } else {
+        appendText(sb, (char) codePoint);
+      }
+      return end < len && html.charAt(end) == ';' ? end + 1 : end;
+    }
+
+    int end = i;
+    while (end < len && isLetter(html.charAt(end))) {
+      end++;
+    }
+    while (end < len && isDigit(html.charAt(end))) {
+      end++;
+    }
+    String name = html.substring(i, end);
+    boolean semicolon = end < len && html.charAt(end) == ';';
+    if (!Entities.isBaseNamedEntity(name) && !(semicolon && Entities.isNamedEntity(name))) {
+      appendText(sb, '&');
+      return i;
+    }
+    appendText(sb, Entities.getCharacterByName(name));
+    return semicolon ? end + 1 : end;
+  }
+
+  private static void appendText(StringBuilder sb, char c) {
+    if (!isWhitespace(c)) {
+      sb.append(c);
+    } else if (sb.length() == 0 || sb.charAt(sb.length() - 1) != ' ') {
+      sb.append(' ');
+    }
+  }
+
+  private static void appendBlock(StringBuilder sb) {
+    if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ')
+      sb.append(' ');
+  }
+
+  // the white space of jsoup, unlike Character.isWhitespace without \u000B
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+  }
+
+  /**
+   * @return true if c is text which is kept as it is
+   */
+  private static boolean isPlain(char c) {
+    return c > ' ' ? c != '<' && c != '&' : c != 0 && !isWhitespace(c);
+  }
+
+  private static boolean isLetter(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isHexDigit(char c) {
+    return isDigit(c) || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+  }
+
+  /**
+   * The formatting elements like b or a which are open. If one of them is
+   * closed after another element was opened within it and is still open, the
+   * tree builder moves that element with its text, see the adoption agency
+   * algorithm of HTML5.
+   */
+  private static class OpenFormatting {
+
+    private String[] names = new String[8];
+    private int size;
+    // the elements below this index had other elements opened after them
+    private int elementMark;
+
+    /**
+     * @return false if the tag needs the parser
+     */
+    boolean startTag(String name) {
+      if (FORMATTING_TAGS.contains(name)) {
+        // an open a or nobr is closed first
+        if ((name.equals("a") || name.equals("nobr")) && !close(name))
+          return false;
+        if (size == names.length)
+          names = Arrays.copyOf(names, size * 2);
+        names[size++] = name;
+      } else if (!Tag.isKnownTag(name) || !Tag.valueOf(name).isEmpty()) {
+        elementMark = size;
+      }
+      return true;
+    }
+
+    /**
+     * @return false if the tag needs the parser
+     */
+    boolean endTag(String name) {
+      return !FORMATTING_TAGS.contains(name) || close(name);
+    }
+
+    private boolean close(String name) {
+      for (int i = size - 1; i >= 0; i--) {
+        if (names[i].equals(name)) {
+          if (i < elementMark)
+            return false;
+          System.arraycopy(names, i + 1, names, i, size - i - 1);
+          size--;
+          return true;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package de.jetwick.snacktory.utils;
+
+import java.util.Arrays;
+
+/**
+ * A map from objects, compared by identity like in IdentityHashMap, to int
+ * values. The values are kept in a primitive array, so neither get nor put
+ * allocate unless the table grows. Entries cannot be removed. This class is
+ * not thread safe.
+ */
+public class IdentityIntMap<K> {
+
+  private static final int MIN_CAPACITY = 16;
+
+  private Object[] keys;
+  private int[] values;
+  private int size;
+
+  public IdentityIntMap() {
+    this(MIN_CAPACITY);
+  }
+
+  /**
+   * @param expectedSize the number of entries the map holds without growing
+   */
+  public IdentityIntMap(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    // at most half full
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    keys = new Object[capacity];
+    values = new int[capacity];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey(K key) {
+    return keys[indexOf(key, keys)] != null;
+  }
+
+  /**
+   * @return the value of the key or defaultValue if the key is not contained
+   */
+  public int get(K key, int defaultValue) {
+    int index = indexOf(key, keys);
+    return keys[index] != null ? values[index] : defaultValue;
+  }
+
+  public void put(K key, int value) {
+    if (key == null)
+      throw new NullPointerException("null keys are not supported");
+
+    int index = indexOf(key, keys);
+    if (keys[index] == null) {
+      keys[index] = key;
+      if (++size * 2 > keys.length) {
+        grow();
+        index = indexOf(key, keys);
+      }
+    }
+    values[index] = value;
+  }
+
+  /**
+   * Adds delta to the value of the key, a missing key counts as 0.
+   *
+   * @return the new value
+   */
+  public int add(K key, int delta) {
+    int index = indexOf(key, keys);
+    if (keys[index] != null)
+      return values[index] += delta;
+    put(key, delta);
+    return delta;
+  }
+
+  public void clear() {
+    Arrays.fill(keys, null);
+    size = 0;
+  }
+
+  /**
+   * @return the slot of the key or the empty slot where it would be inserted
+   */
+  private static int indexOf(Object key, Object[] table) {
+    int mask = table.length - 1;
+    int index = hash(key) & mask;
+    Object k;
+    while ((k = table[index]) != null && k != key) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  private static int hash(Object key) {
+    // identity hash codes are not well spread in the low bits
+    int h = System.identityHashCode(key);
+    return h ^ (h >>> 16);
+  }
+
+  private void grow() {
+    Object[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new Object[oldKeys.length * 2];
+    values = new int[oldKeys.length * 2];
+    for (int i = 0; i < oldKeys.length; i++) {
+      Object key = oldKeys[i];
+      if (key != null) {
+        int index = indexOf(key, keys);
+        keys[index] = key;
+        values[index] = oldValues[i];
+      }
+    }
+  }
+}
@@ -56,39 +56,29 @@ public class SHelper {
         return url;
     }
 
+    /**
+     * @return the number of non overlapping occurrences of substring, see
+     * MultiPatternCounter to count several substrings at once
+     */
     public static int count(String str, String substring) {
+        if (substring.isEmpty())
+            return 0;
         int c = 0;
-        int index1 = str.indexOf(substring);
-        if (index1 >= 0) {
+        int index = str.indexOf(substring);
+        while (index >= 0) {
             c++;
-            c += count(str.substring(index1 + substring.length()), substring);
+            index = str.indexOf(substring, index + substring.length());
         }
         return c;
     }
 
     /**
      * remove more than two spaces or newlines
+     *
+     * @return str itself if it has nothing to remove
      */
     public static String innerTrim(String str) {
-        if (str.isEmpty())
-            return "";
-
-        StringBuilder sb = new StringBuilder();
-        boolean previousSpace = false;
-        for (int i = 0; i < str.length(); i++) {
-            char c = str.charAt(i);
-            if (c == ' ' || (int) c == 9 || c == '\n') {
-                previousSpace = true;
-                continue;
-            }
-
-            if (previousSpace)
-                sb.append(' ');
-
-            previousSpace = false;
-            sb.append(c);
-        }
-        return sb.toString().trim();
+        return TextNormalizer.normalize(str, TextNormalizer.COLLAPSE_WHITESPACE, -1, -1);
     }
 
     /**
@@ -443,9 +433,12 @@ public class SHelper {
     }
 
     public static int countLetters(String str) {
-        int len = str.length();
+        return countLetters(str, 0, str.length());
+    }
+
+    public static int countLetters(CharSequence str, int start, int end) {
         int chars = 0;
-        for (int i = 0; i < len; i++) {
+        for (int i = start; i < end; i++) {
             if (Character.isLetter(str.charAt(i)))
                 chars++;
         }
@@ -0,0 +1,210 @@
+package de.jetwick.snacktory.utils;
+
+/**
+ * Normalises text in one pass: collapses white space like SHelper.innerTrim,
+ * drops the chars which do not fit into a budget of UTF-8 bytes like
+ * Utf8Utils.utf8truncate and keeps at most a number of chars like substring.
+ * The result is the same as applying them one after the other, in this
+ * order, but without a copy of the text for each step.
+ *
+ * The static normalize copies nothing as long as the result is a prefix of
+ * the input and otherwise builds it in a buffer which is reused by the
+ * thread. Instances collect appended text, e.g. paragraph by paragraph, and
+ * count the chars which do not fit.
+ */
+public final class TextNormalizer implements Appendable {
+
+  /**
+   * Replaces runs of ' ', '\t' and '\n' with one space and drops the chars
+   * up to ' ' at both ends, as String.trim does.
+   */
+  public static final int COLLAPSE_WHITESPACE = 1;
+
+  // larger buffers are left to the garbage collector
+  private static final int MAX_RETAINED_CHARS = 1 << 16;
+  private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder();
+    }
+  };
+
+  private final boolean collapse;
+  private final int maxBytes;
+  private final int maxChars;
+  // while out is null the kept chars are the same as the start of source
+  private final CharSequence source;
+  private StringBuilder out;
+  // the index in out the text starts at
+  private int offset;
+  private int length;
+  private int kept;
+  private int bytes;
+  private boolean truncated;
+  private boolean previousSpace;
+  private boolean reachedNonWhite;
+  // chars up to ' ' after the last other char, dropped if nothing follows
+  private int pendingLength;
+  private int pendingKept;
+
+  /**
+   * @param flags COLLAPSE_WHITESPACE or 0
+   * @param maxBytes a negative value for no limit
+   * @param maxChars a negative value for no limit
+   */
+  public TextNormalizer(int flags, int maxBytes, int maxChars) {
+    this(null, flags, maxBytes, maxChars);
+    out = new StringBuilder();
+  }
+
+  private TextNormalizer(CharSequence source, int flags, int maxBytes, int maxChars) {
+    this.source = source;
+    this.collapse = (flags & COLLAPSE_WHITESPACE) != 0;
+    this.maxBytes = maxBytes;
+    this.maxChars = maxChars;
+  }
+
+  /**
+   * @return the normalised text, text itself if it is a String which needs
+   * no change
+   */
+  public static String normalize(CharSequence text, int flags, int maxBytes, int maxChars) {
+    TextNormalizer normalizer = new TextNormalizer(text, flags, maxBytes, maxChars);
+    int len = text.length();
+    for (int i = 0; i < len && !normalizer.isFull(); i++) {
+      normalizer.add(text.charAt(i));
+    }
+
+    int end = normalizer.kept - normalizer.pendingKept;
+    StringBuilder out = normalizer.out;
+    if (out == null)
+      return end == len && text instanceof String ? (String) text : text.subSequence(0, end).toString();
+
+    String result = out.substring(0, end);
+    if (out.capacity() > MAX_RETAINED_CHARS)
+      BUFFER.remove();
+    return result;
+  }
+
+  /**
+   * Like normalize but appends the normalised text to out.
+   *
+   * @return the number of chars appended
+   */
+  public static int normalize(CharSequence text, int flags, int maxBytes, int maxChars, StringBuilder out) {
+    TextNormalizer normalizer = new TextNormalizer(null, flags, maxBytes, maxChars);
+    normalizer.out = out;
+    normalizer.offset = out.length();
+    int len = text.length();
+    for (int i = 0; i < len && !normalizer.isFull(); i++) {
+      normalizer.add(text.charAt(i));
+    }
+    int appended = normalizer.kept - normalizer.pendingKept;
+    out.setLength(normalizer.offset + appended);
+    return appended;
+  }
+
+  @Override
+  public TextNormalizer append(CharSequence csq) {
+    return append(csq, 0, csq.length());
+  }
+
+  @Override
+  public TextNormalizer append(CharSequence csq, int start, int end) {
+    for (int i = start; i < end; i++) {
+      add(csq.charAt(i));
+    }
+    return this;
+  }
+
+  @Override
+  public TextNormalizer append(char c) {
+    add(c);
+    return this;
+  }
+
+  private void add(char c) {
+    if (!collapse) {
+      keep(c, false);
+      return;
+    }
+
+    if (c == ' ' || c == '\t' || c == '\n') {
+      previousSpace = true;
+      return;
+    }
+    if (!reachedNonWhite) {
+      if (c <= ' ')
+        return;
+      reachedNonWhite = true;
+      previousSpace = false;
+    }
+
+    if (previousSpace)
+      keep(' ', true);
+    previousSpace = false;
+    if (c <= ' ') {
+      keep(c, true);
+      return;
+    }
+    pendingLength = 0;
+    pendingKept = 0;
+    keep(c, false);
+  }
+
+  private void keep(char c, boolean pending) {
+    length++;
+    if (pending)
+      pendingLength++;
+    if (truncated)
+      return;
+
+    int charBytes = Utf8Utils.utf8Length(c);
+    if (maxChars >= 0 && kept >= maxChars || maxBytes >= 0 && bytes + charBytes > maxBytes) {
+      truncated = true;
+      return;
+    }
+    bytes += charBytes;
+    if (out == null) {
+      // the text never grows, so kept is at most the index of c in source
+      if (source.charAt(kept) != c) {
+        out = BUFFER.get();
+        out.setLength(0);
+        out.append(source, 0, kept);
+        out.append(c);
+      }
+    } else {
+      out.append(c);
+    }
+    kept++;
+    if (pending)
+      pendingKept++;
+  }
+
+  /**
+   * @return the number of chars of the normalised text, including those
+   * which did not fit
+   */
+  public int length() {
+    return length - pendingLength;
+  }
+
+  /**
+   * @return true if chars were dropped because they did not fit
+   */
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  /**
+   * @return true if no more text can change the kept text
+   */
+  public boolean isFull() {
+    return truncated && pendingKept == 0;
+  }
+
+  @Override
+  public String toString() {
+    return out.substring(offset, offset + kept - pendingKept);
+  }
+}
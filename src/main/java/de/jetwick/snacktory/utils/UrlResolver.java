@@ -0,0 +1,51 @@
+package de.jetwick.snacktory.utils;
+
+import org.jsoup.helper.StringUtil;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves relative urls against one base uri like Element.absUrl does, but
+ * the base is only parsed once and repeated urls are resolved once. This
+ * class is not thread safe.
+ */
+public class UrlResolver {
+
+  private final URL base;
+  private final Map<String, String> cache = new HashMap<String, String>();
+
+  public UrlResolver(String baseUri) {
+    URL url;
+    try {
+      url = new URL(baseUri);
+    } catch (MalformedURLException ex) {
+      // only absolute urls can be resolved
+      url = null;
+    }
+    base = url;
+  }
+
+  /**
+   * @return the absolute url or an empty string if it cannot be resolved
+   */
+  public String resolve(String relUrl) {
+    String abs = cache.get(relUrl);
+    if (abs == null) {
+      abs = doResolve(relUrl);
+      cache.put(relUrl, abs);
+    }
+    return abs;
+  }
+
+  private String doResolve(String relUrl) {
+    try {
+      if (base == null)
+        return new URL(relUrl).toExternalForm();
+      return StringUtil.resolve(base, relUrl).toExternalForm();
+    } catch (MalformedURLException ex) {
+      return "";
+    }
+  }
+}
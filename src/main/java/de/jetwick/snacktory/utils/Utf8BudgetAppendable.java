@@ -0,0 +1,139 @@
+package de.jetwick.snacktory.utils;
+
+import java.io.IOException;
+
+/**
+ * Passes chars on to another Appendable as long as their UTF-8 encoding fits
+ * into a budget of bytes. The first char which does not fit and everything
+ * after it is dropped, so the written text is the same as
+ * Utf8Utils.utf8truncate of all appended text. Writers check isFull to
+ * stop producing text nobody reads.
+ *
+ * The dropped chars are still counted, so a caller which needs to know
+ * whether the whole text is longer than minLength chars does not have to
+ * produce it again, see getLength.
+ */
+public class Utf8BudgetAppendable implements Appendable {
+
+  private final Appendable out;
+  private final int maxBytes;
+  private final int minLength;
+  private int bytes;
+  private int length;
+  private int chars;
+  private boolean truncated;
+
+  /**
+   * @param maxBytes a negative value for no limit
+   */
+  public Utf8BudgetAppendable(Appendable out, int maxBytes) {
+    this(out, maxBytes, 0);
+  }
+
+  /**
+   * @param maxBytes a negative value for no limit
+   * @param minLength the writer goes on until this many chars were appended,
+   * even if they do not fit
+   */
+  public Utf8BudgetAppendable(Appendable out, int maxBytes, int minLength) {
+    this.out = out;
+    this.maxBytes = maxBytes;
+    this.minLength = minLength;
+  }
+
+  @Override
+  public Utf8BudgetAppendable append(CharSequence csq) throws IOException {
+    return append(csq, 0, csq.length());
+  }
+
+  @Override
+  public Utf8BudgetAppendable append(CharSequence csq, int start, int end) throws IOException {
+    length += end - start;
+    if (truncated)
+      return this;
+
+    int fits = start;
+    int newBytes = bytes;
+    while (fits < end) {
+      int length = Utf8Utils.utf8Length(csq.charAt(fits));
+      if (maxBytes >= 0 && newBytes + length > maxBytes) {
+        truncated = true;
+        break;
+      }
+      newBytes += length;
+      fits++;
+    }
+    if (fits > start)
+      out.append(csq, start, fits);
+    chars += fits - start;
+    bytes = newBytes;
+    return this;
+  }
+
+  @Override
+  public Utf8BudgetAppendable append(char c) throws IOException {
+    length++;
+    if (truncated)
+      return this;
+
+    int length = Utf8Utils.utf8Length(c);
+    if (maxBytes >= 0 && bytes + length > maxBytes) {
+      truncated = true;
+      return this;
+    }
+    out.append(c);
+    bytes += length;
+    chars++;
+    return this;
+  }
+
+  /**
+   * @return true if text was dropped because it did not fit
+   */
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  /**
+   * @return true if text was dropped and at least minLength chars were
+   * appended, more text changes neither the written text nor the outcome of
+   * getLength compared with minLength
+   */
+  public boolean isFull() {
+    return truncated && length >= minLength;
+  }
+
+  public boolean isLimited() {
+    return maxBytes >= 0;
+  }
+
+  public int getMaxBytes() {
+    return maxBytes;
+  }
+
+  public int getMinLength() {
+    return minLength;
+  }
+
+  /**
+   * @return the number of bytes written so far
+   */
+  public int getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return the number of chars appended so far, including those which were
+   * dropped
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * @return the number of chars written so far
+   */
+  public int getChars() {
+    return chars;
+  }
+}
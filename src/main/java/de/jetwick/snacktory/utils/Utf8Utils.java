@@ -8,32 +8,28 @@ public class Utf8Utils {
    *
    * For discussion of why you might want to do this, see
    * http://lpar.ath0.com/2011/06/07/unicode-alchemy-with-db2/
+   *
+   * @return input itself if it fits
    */
   public static String utf8truncate(String input, int length) {
-    StringBuffer result = new StringBuffer(length);
-    int resultlen = 0;
-    for (int i = 0; i < input.length(); i++) {
-      char c = input.charAt(i);
-      int charlen = 0;
-      if (c <= 0x7f) {
-        charlen = 1;
-      } else if (c <= 0x7ff) {
-        charlen = 2;
-      } else if (c <= 0xd7ff) {
-        charlen = 3;
-      } else if (c <= 0xdbff) {
-        charlen = 4;
-      } else if (c <= 0xdfff) {
-        charlen = 0;
-      } else if (c <= 0xffff) {
-        charlen = 3;
-      }
-      if (resultlen + charlen > length) {
-        break;
-      }
-      result.append(c);
-      resultlen += charlen;
-    }
-    return result.toString();
+    return TextNormalizer.normalize(input, 0, length, -1);
+  }
+
+  /**
+   * @return the number of bytes the char takes in UTF-8, 4 for the high and
+   * 0 for the low surrogate of a pair
+   */
+  public static int utf8Length(char c) {
+    if (c <= 0x7f)
+      return 1;
+    if (c <= 0x7ff)
+      return 2;
+    if (c <= 0xd7ff)
+      return 3;
+    if (c <= 0xdbff)
+      return 4;
+    if (c <= 0xdfff)
+      return 0;
+    return 3;
   }
 }
@@ -2,6 +2,22 @@ package de.jetwick.snacktory;
 
 import static org.junit.Assert.*;
 
+import de.jetwick.snacktory.benchmark.Corpus;
+import de.jetwick.snacktory.output.HTMLOutputFormater;
+import de.jetwick.snacktory.output.OutputFormatter;
+import de.jetwick.snacktory.output.PlainTextOutputFormatter;
+import de.jetwick.snacktory.output.TextBlocks;
+import de.jetwick.snacktory.utils.Utf8Utils;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -87,4 +103,358 @@ public class ArticleExtractorTest {
     // then
     assertEquals("aaa bbb ccc", res.getText());
   }
+
+  @Test
+  public void testExtract_documentIsNotModified() throws Exception {
+    // given
+    String html = "<html><head><script>var a = 1;</script></head><body>" +
+        "<div class=\"content\"><p>This is the first paragraph which is long enough to be kept in the text</p>" +
+        "<p>short</p><noscript>please enable javascript</noscript>" +
+        "<p>This is another paragraph which is also long enough to be kept in the text</p></div></body></html>";
+    Document doc = Jsoup.parse(html);
+    String before = doc.outerHtml();
+
+    // when
+    JResult res = extractor.extractContent(new JResult(), doc, new PlainTextOutputFormatter(), true, -1);
+
+    // then
+    assertEquals("This is the first paragraph which is long enough to be kept in the text "
+        + "This is another paragraph which is also long enough to be kept in the text", res.getText());
+    assertEquals(before, doc.outerHtml());
+  }
+
+  @Test
+  public void testExtract_previewOptions() throws Exception {
+    String html = "<html><head><title>The title</title>"
+        + "<meta name='description' content='The description'>"
+        + "<meta name='keywords' content='a, b'>"
+        + "<meta property='og:image' content='http://example.com/image.jpg'>"
+        + "</head><body><div><p>This is the first paragraph which is long enough to be kept in the text "
+        + "<a href='http://example.com/'>a link</a></p></div></body></html>";
+
+    JResult res = extractor.extractContent(html, ExtractionOptions.PREVIEW);
+    assertEquals("The title", res.getTitle());
+    assertEquals("The description", res.getDescription());
+    assertEquals("http://example.com/image.jpg", res.getImageUrl());
+    assertEquals("", res.getText());
+    assertTrue(res.getLinks().isEmpty());
+    assertNull(res.getKeywords());
+
+    JResult full = extractor.extractContent(html);
+    assertEquals(full.getImageUrl(), res.getImageUrl());
+    assertEquals(1, full.getLinks().size());
+    assertEquals(2, full.getKeywords().size());
+  }
+
+  @Test
+  public void testExtractionOptions() {
+    ExtractionOptions options = ExtractionOptions.builder()
+        .include(ExtractionOptions.TITLE | ExtractionOptions.TEXT)
+        .build();
+    assertEquals(ExtractionOptions.TEXT_ONLY, options);
+    assertTrue(options.has(ExtractionOptions.TEXT));
+    assertFalse(options.has(ExtractionOptions.IMAGES));
+    assertEquals(ExtractionOptions.ALL_WITHOUT_IMAGES,
+        ExtractionOptions.ALL.toBuilder().exclude(ExtractionOptions.IMAGES).build());
+    assertTrue(ExtractionOptions.ALL.isAll());
+    try {
+      ExtractionOptions.of(1 << 20);
+      fail();
+    } catch (IllegalArgumentException ex) {
+    }
+  }
+
+  @Test
+  public void testExtract_filteredScripts() throws Exception {
+    StringBuilder script = new StringBuilder("<script>var data = [");
+    for (int i = 0; i < 100; i++) {
+      script.append("'<p>not the text of the article</p>',");
+    }
+    script.append("];</script>");
+    String html = "<html><head><title>Scripts</title>" + script + "<style>p { color: red }</style></head>"
+        + "<body><div><p>The paragraph is long enough to be kept by the formatter of the extractor</p>"
+        + "<!-- a comment --><svg><text>no text</text></svg></div></body></html>";
+    JResult filtered = extractor.extractContent(html);
+    JResult parsed = extractor.extractContent(new JResult(), Jsoup.parse(html), new HTMLOutputFormater(),
+        ExtractionOptions.ALL, -1);
+    assertEquals("The paragraph is long enough to be kept by the formatter of the extractor",
+        filtered.getText());
+    assertEquals("<p>The paragraph is long enough to be kept by the formatter of the extractor</p>",
+        parsed.getText().trim());
+  }
+
+  @Test
+  public void testExtract_budget() throws Exception {
+    String html = "<html><head><title>Budget</title></head><body><div><div class='nav'>Home</div>"
+        + "<p>The first paragraph is long enough to be kept by the formatter of the extractor</p>"
+        + "<p>The second paragraph is also long enough to be kept by the formatter of the extractor</p>"
+        + "</div></body></html>";
+    JResult res = extractor.extractContent(html);
+    assertFalse(res.isDegraded());
+    assertTrue(res.getSkippedStages().isEmpty());
+
+    // the body and the outer div are visited
+    ExtractionOptions options = ExtractionOptions.ALL.toBuilder().maxNodes(2).build();
+    assertEquals(2, options.getMaxNodes());
+    res = extractor.extractContent(html, options);
+    assertTrue(res.isDegraded());
+    assertTrue(res.getSkippedStages().contains(ExtractionStage.CANDIDATES));
+    // the first candidate is the outer div, it still contains the whole text
+    assertTrue(res.getText(), res.getText().startsWith("The first paragraph"));
+  }
+
+  private static ExtractionBudget expiredBudget() throws InterruptedException {
+    ExtractionBudget budget = new ExtractionBudget(1, 0);
+    Thread.sleep(5);
+    assertTrue(budget.isExpired());
+    return budget;
+  }
+
+  @Test
+  public void testExtract_expiredBudget() throws Exception {
+    StringBuilder html = new StringBuilder("<html><head><title>Budget</title></head><body>"
+        + "<div class='byline'><span class='author'>Jane Doe</span></div><div>");
+    for (int i = 0; i < 3; i++) {
+      html.append("<p>The paragraph number ").append(i)
+          .append(" is long enough to be kept by the formatter, see <a href='http://example.com/").append(i)
+          .append("'>this link</a></p><img src='http://example.com/image").append(i)
+          .append(".jpg' width='400' height='300'>");
+    }
+    html.append("</div></body></html>");
+    List<OutputFormatter> formatters = Collections.<OutputFormatter>singletonList(new PlainTextOutputFormatter());
+
+    JResult res = extractor.extractContent(new JResult(), Jsoup.parse(html.toString()), formatters,
+        ExtractionOptions.ALL, -1);
+    assertFalse(res.isDegraded());
+    assertFalse(res.getLinks().isEmpty());
+    assertFalse(res.getImages().isEmpty());
+
+    res = extractor.extractContent(new JResult(), Jsoup.parse(html.toString()), formatters,
+        ExtractionOptions.ALL, -1, expiredBudget());
+    assertTrue(res.isDegraded());
+    for (ExtractionStage stage : new ExtractionStage[] {ExtractionStage.AUTHOR_DESCRIPTION, ExtractionStage.SCORING,
+        ExtractionStage.IMAGES, ExtractionStage.LINKS}) {
+      assertTrue(stage + " " + res.getSkippedStages(), res.getSkippedStages().contains(stage));
+    }
+    assertEquals("", res.getAuthorDescription());
+    assertTrue(res.getLinks().isEmpty());
+    assertTrue(res.getImages().isEmpty());
+    // the metadata does not depend on the budget
+    assertEquals("Budget", res.getTitle());
+  }
+
+  @Test
+  public void testExtract_expiredBudgetSkipsRetry() throws Exception {
+    // no candidate, so the first pass has no text
+    String html = "<html><head><title>Budget</title></head><body>Only text in the body</body></html>";
+    List<OutputFormatter> formatters = Collections.<OutputFormatter>singletonList(new PlainTextOutputFormatter());
+
+    JResult res = extractor.extractContent(new JResult(), Jsoup.parse(html), formatters, ExtractionOptions.ALL, -1);
+    assertFalse(res.getSkippedStages().contains(ExtractionStage.RETRY));
+
+    res = extractor.extractContent(new JResult(), Jsoup.parse(html), formatters, ExtractionOptions.ALL, -1,
+        expiredBudget());
+    assertEquals("", res.getText());
+    assertTrue(res.getSkippedStages().contains(ExtractionStage.RETRY));
+  }
+
+  @Test
+  public void testFind_prunesCandidates() throws Exception {
+    StringBuilder html = new StringBuilder("<html><body><div id='article'>");
+    for (int i = 0; i < 5; i++) {
+      html.append("<p>This paragraph of the article is long enough to count for the weight of its parent div</p>");
+    }
+    html.append("</div>");
+    for (int i = 0; i < 10; i++) {
+      html.append("<div><span>Link ").append(i).append("</span></div>");
+    }
+    html.append("</body></html>");
+    Document doc = Jsoup.parse(html.toString());
+
+    ExtractionContext ctx = new ExtractionContext();
+    BestNodeFinder finder = new BestNodeFinder();
+    assertEquals("article", finder.find(doc, ctx).id());
+    // the short divs after the article cannot beat it
+    assertTrue(ctx.getPrunedCandidates() >= 10);
+
+    // matches which are no candidates are not counted
+    int pruned = ctx.getPrunedCandidates();
+    assertEquals("article", finder.findMatch(doc.select("div"), ctx).id());
+    assertEquals(pruned, ctx.getPrunedCandidates());
+  }
+
+  @Test
+  public void testFind_nodesInAnyOrder() throws Exception {
+    String html = "<html><body><div id='nav'><a href='/'>Home</a></div><div id='article'>"
+        + "<p>The first paragraph of the article is long enough to count for the weight of the div</p>"
+        + "<p>The second paragraph of the article is long enough to count for the weight of the div</p>"
+        + "</div></body></html>";
+    Document doc = Jsoup.parse(html);
+    List<Element> nodes = new ArrayList<Element>(doc.select("div, p"));
+    ExtractionContext ctx = new ExtractionContext();
+    Element best = new BestNodeFinder().find(nodes, ctx);
+
+    Collections.reverse(nodes);
+    ExtractionContext reversed = new ExtractionContext();
+    assertSame(best, new BestNodeFinder().find(nodes, reversed));
+    for (Element el : doc.select("div, p")) {
+      assertEquals(ctx.getScore(el), reversed.getScore(el));
+    }
+  }
+
+  @Test
+  public void testFind_parallel() throws Exception {
+    StringBuilder html = new StringBuilder("<html><body>");
+    for (int i = 0; i < 300; i++) {
+      html.append("<div class='post'><h2>Post ").append(i).append("</h2>");
+      for (int j = 0; j <= i % 4; j++) {
+        html.append("<p>Paragraph ").append(j).append(" of the post is long enough to be weighted by the finder</p>");
+      }
+      html.append("<div class='nav'><span>Reply</span></div></div>");
+    }
+    html.append("</body></html>");
+    Document doc = Jsoup.parse(html.toString());
+    BestNodeFinder finder = new BestNodeFinder();
+
+    ExtractionContext expectedCtx = new ExtractionContext();
+    Element expected = finder.find(doc, expectedCtx);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      ExtractionContext ctx = new ExtractionContext();
+      assertSame(expected, finder.find(doc, ctx, pool, 1));
+      for (Element el : doc.getAllElements()) {
+        assertEquals(expectedCtx.hasScore(el), ctx.hasScore(el));
+        assertEquals(expectedCtx.getScore(el), ctx.getScore(el));
+      }
+
+      // below the threshold the pool is not used
+      assertSame(expected, finder.find(doc, new ExtractionContext(), pool, 100000));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testExtract_trace() throws Exception {
+    String html = "<html><head><title>Trace</title></head><body><div id='nav'><a href='/'>Home</a></div>"
+        + "<div id='story'><p>The first paragraph is long enough to be kept by the formatter of the extractor</p>"
+        + "<p>The second paragraph is also long enough to be kept by the formatter of the extractor</p>"
+        + "</div></body></html>";
+    assertNull(extractor.extractContent(html).getTrace());
+
+    JResult res = extractor.extractContent(html, ExtractionOptions.ALL.toBuilder().trace(true).build());
+    ExtractionTrace trace = res.getTrace();
+    assertNotNull(trace);
+    assertEquals("story", trace.getPick().id());
+    assertEquals(4, trace.getCandidateCount());
+
+    ExtractionTrace.Candidate first = trace.getTopCandidates().get(0);
+    assertSame(trace.getPick(), first.getElement());
+    assertEquals(trace.getPickWeight(), first.getWeight());
+    // the weight is the sum of the contributions of the default model
+    double sum = 0;
+    for (int i = 0; i < ScoringModel.FEATURE_COUNT; i++) {
+      sum += first.getContribution(i);
+    }
+    assertEquals(first.getWeight(), sum, 0.001);
+    assertTrue(trace.toString(), trace.toString().startsWith("picked div#story with weight"));
+
+    // the author lookups are no candidates of the trace
+    String byline = html.replace("<div id='story'>",
+        "<div id='story'><div class='byline'><span class='author'>By Jane Doe</span></div>");
+    trace = extractor.extractContent(byline, ExtractionOptions.ALL.toBuilder().trace(true).build()).getTrace();
+    assertEquals("story", trace.getPick().id());
+    assertEquals(5, trace.getCandidateCount());
+    for (ExtractionTrace.Candidate c : trace.getTopCandidates()) {
+      assertFalse(c.getElement().hasClass("author"));
+    }
+
+    trace = extractor.extractContent(byline, ExtractionOptions.builder().include(ExtractionOptions.AUTHOR_NAME)
+        .trace(true).build()).getTrace();
+    assertNull(trace.getPick());
+    assertEquals(0, trace.getCandidateCount());
+  }
+
+  @Test
+  public void testExtract_fromBytes() throws Exception {
+    String html = "<html><head><meta charset='iso-8859-1'><title>Gr\u00fc\u00dfe</title></head><body><div>"
+        + "<p>Zw\u00f6lf Boxk\u00e4mpfer jagen Viktor quer \u00fcber den gro\u00dfen Sylter Deich und noch weiter</p>"
+        + "</div></body></html>";
+    byte[] bytes = html.getBytes("ISO-8859-1");
+    JResult expected = extractor.extractContent(html);
+
+    JResult res = extractor.extractContent(bytes, "utf-8");
+    assertEquals(expected.getTitle(), res.getTitle());
+    assertEquals(expected.getText(), res.getText());
+
+    res = extractor.extractContent(ByteBuffer.wrap(bytes), null);
+    assertEquals(expected.getText(), res.getText());
+
+    res = extractor.extractContent(new ByteArrayInputStream(bytes), null);
+    assertEquals(expected.getText(), res.getText());
+  }
+
+  @Test
+  public void testExtract_multipleFormatters() throws Exception {
+    List<OutputFormatter> formatters = Arrays.asList(new PlainTextOutputFormatter(), new HTMLOutputFormater());
+    List<String> pages = Corpus.load("input_plain");
+    for (int maxContentSize : new int[]{-1, 500}) {
+      // every third page, they take a while
+      for (int i = 0; i < pages.size(); i += 3) {
+        String html = pages.get(i);
+        JResult res = extractor.extractContent(new JResult(), html, formatters, ExtractionOptions.ALL, maxContentSize);
+        JResult plain = extractor.extractContent(new JResult(), html, formatters.get(0), ExtractionOptions.ALL,
+            maxContentSize);
+        JResult htmlText = extractor.extractContent(new JResult(), html, formatters.get(1), ExtractionOptions.ALL,
+            maxContentSize);
+
+        // the same as extracting with each formatter on its own
+        assertEquals(Arrays.asList(plain.getText(), htmlText.getText()), res.getTexts());
+        assertEquals(plain.getText(), res.getText());
+        assertEquals(plain.getTitle(), res.getTitle());
+        assertEquals(plain.getLinks(), res.getLinks());
+      }
+    }
+  }
+
+  @Test
+  public void testExtract_budgetBelowTitleLength() throws Exception {
+    List<OutputFormatter> formatters = Arrays.asList(new PlainTextOutputFormatter(), new HTMLOutputFormater());
+    String html = "<html><head><title>A title which is longer than the budget</title></head><body>"
+        + "<div id='story'><p>The first paragraph is long enough to be kept by the formatter of the extractor</p>"
+        + "<p>The second paragraph links <a href='http://example.com/more'>to more</a> and is long enough too</p>"
+        + "</div></body></html>";
+    List<String> pages = new ArrayList<String>(Corpus.load("input_plain"));
+    pages.add(0, html);
+    for (int i = 0; i < pages.size(); i += 3) {
+      JResult full = extractor.extractContent(new JResult(), pages.get(i), formatters, ExtractionOptions.ALL, -1);
+      JResult res = extractor.extractContent(new JResult(), pages.get(i), formatters, ExtractionOptions.ALL, 20);
+
+      // the same as cutting the unbudgeted text afterwards, the links are not affected
+      assertEquals(Utf8Utils.utf8truncate(full.getText(), 20), res.getText());
+      assertEquals(2, res.getTexts().size());
+      for (int j = 0; j < formatters.size(); j++) {
+        assertEquals(Utf8Utils.utf8truncate(full.getTexts().get(j), 20), res.getTexts().get(j));
+      }
+      assertEquals(full.getLinks(), res.getLinks());
+    }
+    assertEquals(1, extractor.extractContent(new JResult(), html, formatters, ExtractionOptions.ALL, 20)
+        .getLinks().size());
+  }
+
+  @Test
+  public void testExtract_blocks() throws Exception {
+    String html = "<html><head><title>Blocks</title></head><body><div id='story'><h3>The story</h3>"
+        + "<p>The first paragraph is long enough to be kept by the formatter of the extractor</p>"
+        + "<p>The second paragraph is also long enough to be kept by the formatter of the extractor</p>"
+        + "</div></body></html>";
+    assertEquals(0, extractor.extractContent(html).getBlocks().size());
+
+    JResult res = extractor.extractContent(html, ExtractionOptions.ALL.toBuilder()
+        .include(ExtractionOptions.BLOCKS).build());
+    TextBlocks blocks = res.getBlocks();
+    assertEquals(3, blocks.size());
+    assertEquals(TextBlocks.HEADING, blocks.getType(0));
+    assertEquals(res.getText(), blocks.getBlock(1) + " " + blocks.getBlock(2));
+  }
 }
@@ -0,0 +1,72 @@
+package de.jetwick.snacktory;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+public class BatchExtractorTest {
+
+    private static String page(int i) {
+        return "<html><head><title>Title " + i + "</title></head><body><div><p>"
+                + "This is the paragraph number " + i + " which is long enough to be kept in the text"
+                + "</p></div></body></html>";
+    }
+
+    private static List<Source> sources(int count) {
+        List<Source> sources = new ArrayList<Source>();
+        for (int i = 0; i < count; i++) {
+            // every 10th source fails
+            sources.add(i % 10 == 3 ? Source.of("http://example.com/" + i, "") : Source.of("http://example.com/" + i, page(i)));
+        }
+        return sources;
+    }
+
+    @Test
+    public void testOrdered() {
+        try (BatchExtractor batch = BatchExtractor.withFixedThreadPool(4).setMaxInFlight(3)) {
+            List<BatchResult> results = batch.extractAll(sources(50));
+            assertEquals(50, results.size());
+            for (int i = 0; i < 50; i++) {
+                BatchResult res = results.get(i);
+                assertEquals(i, res.getIndex());
+                if (i % 10 == 3) {
+                    assertFalse(res.isSuccess());
+                    assertTrue(res.getError() instanceof IllegalArgumentException);
+                    assertNull(res.getResult());
+                } else {
+                    assertTrue(res.isSuccess());
+                    assertEquals("Title " + i, res.getResult().getTitle());
+                    assertEquals("http://example.com/" + i, res.getResult().getUrl());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnorderedStream() {
+        try (BatchExtractor batch = BatchExtractor.withForkJoinPool(4).setOrdered(false).setMaxInFlightChars(1000)) {
+            List<Integer> indices;
+            try (Stream<BatchResult> results = batch.extractAll(sources(50).stream())) {
+                indices = results.map(BatchResult::getIndex).collect(Collectors.toList());
+            }
+            Collections.sort(indices);
+            for (int i = 0; i < 50; i++) {
+                assertEquals(i, (int) indices.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsAndOptions() {
+        try (BatchExtractor batch = BatchExtractor.withVirtualThreads().setOptions(ExtractionOptions.PREVIEW)) {
+            List<BatchResult> results = batch.extractAll(sources(5));
+            assertEquals("Title 4", results.get(4).getResult().getTitle());
+            assertEquals("", results.get(4).getResult().getText());
+        }
+    }
+}
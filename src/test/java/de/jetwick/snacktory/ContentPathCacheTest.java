@@ -0,0 +1,165 @@
+package de.jetwick.snacktory;
+
+import static org.junit.Assert.*;
+
+import de.jetwick.snacktory.output.PlainTextOutputFormatter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.jsoup.Jsoup;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContentPathCacheTest {
+
+  ArticleTextExtractor extractor;
+  ContentPathCache cache;
+
+  @Before
+  public void setup() {
+    extractor = new ArticleTextExtractor();
+    cache = new ContentPathCache();
+    extractor.setContentPathCache(cache);
+  }
+
+  private static String page(String container, int paragraphs) {
+    StringBuilder sb = new StringBuilder("<html><head><title>Page</title></head><body>"
+        + "<div class='header'><div class='menu'>Home News Sports</div></div>" + container);
+    for (int i = 0; i < paragraphs; i++) {
+      sb.append("<p>Paragraph ").append(i).append(" of the article is long enough to be kept by the formatter</p>");
+    }
+    return sb.append("</div><div class='footer'>Imprint</div></body></html>").toString();
+  }
+
+  private JResult extract(String url, String html) throws Exception {
+    JResult res = new JResult();
+    res.setUrl(url);
+    return extractor.extractContent(res, html, -1);
+  }
+
+  @Test
+  public void testLearnAndHit() throws Exception {
+    String html = page("<div class='main story'>", 4);
+    String expected = new ArticleTextExtractor().extractContent(html).getText();
+
+    assertEquals(expected, extract("http://www.example.com/1", html).getText());
+    assertEquals(0, cache.getHitCount());
+    assertEquals("div.main.story", cache.getPath("example.com"));
+    assertEquals(expected, extract("http://example.com/2", html).getText());
+    assertEquals(0, cache.getHitCount());
+
+    // confirmed twice, now the path is used
+    String other = page("<div class='story main'>", 6);
+    assertEquals(new ArticleTextExtractor().extractContent(other).getText(),
+        extract("http://example.com/3", other).getText());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(3, cache.getLookupCount());
+    assertEquals(1 / 3d, cache.getHitRate(), 1e-9);
+    assertEquals(0, cache.getFallbackRate(), 1e-9);
+
+    // pages without url are not cached
+    extractor.extractContent(html);
+    assertEquals(3, cache.getLookupCount());
+  }
+
+  @Test
+  public void testFallback() throws Exception {
+    String html = page("<div class='story'>", 4);
+    extract("http://example.com/1", html);
+    extract("http://example.com/2", html);
+
+    // the container is missing
+    String other = page("<div class='article'>", 4);
+    assertTrue(extract("http://example.com/3", other).getText().startsWith("Paragraph 0"));
+    assertEquals(0, cache.getHitCount());
+    assertEquals(1, cache.getFallbackCount());
+    assertEquals("div.article", cache.getPath("example.com"));
+
+    // the container is there but too short
+    extract("http://example.com/4", other);
+    String shortPage = page("<div class='article'>", 1);
+    extract("http://example.com/5", shortPage);
+    assertEquals(1, cache.getConfidenceFailureCount());
+    assertEquals(2, cache.getFallbackCount());
+    assertEquals(1, cache.getFallbackRate(), 1e-9);
+  }
+
+  @Test
+  public void testPersist() throws Exception {
+    String html = page("<div class='content'>", 4);
+    extract("http://example.com/1", html);
+    extract("http://example.com/2", html);
+    extract("http://other.org/1", html);
+    String path = cache.getPath("example.com");
+    assertNotNull(path);
+
+    StringWriter writer = new StringWriter();
+    cache.writeTo(writer);
+    ContentPathCache loaded = new ContentPathCache();
+    assertEquals(2, loaded.readFrom(new StringReader(writer.toString() + "invalid line\n")));
+    assertEquals(path, loaded.getPath("example.com"));
+
+    extractor.setContentPathCache(loaded);
+    extract("http://example.com/3", html);
+    assertEquals(1, loaded.getHitCount());
+    extract("http://other.org/2", html);
+    assertEquals(1, loaded.getHitCount());
+  }
+
+  @Test
+  public void testRemovedTextIsNoText() throws Exception {
+    String html = page("<div class='story'>", 4);
+    extract("http://example.com/1", html);
+    extract("http://example.com/2", html);
+
+    // the Document entry points only mark the noscripts as removed
+    StringBuilder noscript = new StringBuilder("<noscript>");
+    for (int i = 0; i < 10; i++) {
+      noscript.append("Please enable JavaScript to read the comments of this article. ");
+    }
+    String scripted = page("<div class='story'>" + noscript + "</noscript>", 1);
+    JResult res = new JResult();
+    res.setUrl("http://example.com/3");
+    extractor.extractContent(res, Jsoup.parse(scripted), new PlainTextOutputFormatter(), true, -1);
+    assertEquals(0, cache.getHitCount());
+    assertEquals(1, cache.getConfidenceFailureCount());
+  }
+
+  @Test
+  public void testPersistUses() throws Exception {
+    cache = new ContentPathCache(2, 1, 0);
+    extractor.setContentPathCache(cache);
+    String html = page("<div class='story'>", 4);
+    extract("http://busy.com/1", html);
+    extract("http://idle.com/1", html);
+    for (int i = 2; i < 5; i++) {
+      extract("http://busy.com/" + i, html);
+    }
+    assertEquals(3, cache.getHitCount());
+
+    StringWriter writer = new StringWriter();
+    cache.writeTo(writer);
+    assertTrue(writer.toString(), writer.toString().contains("busy.com\t1\tdiv.story\t3\n"));
+    ContentPathCache loaded = new ContentPathCache(2, 1, 0);
+    assertEquals(2, loaded.readFrom(new StringReader(writer.toString())));
+
+    // the busy domain survives the reload
+    extractor.setContentPathCache(loaded);
+    extract("http://new.com/1", html);
+    assertNotNull(loaded.getPath("busy.com"));
+    assertNull(loaded.getPath("idle.com"));
+
+    // a line without uses like before they were written
+    assertEquals(1, new ContentPathCache().readFrom(new StringReader("old.com\t1\tdiv.story\n")));
+  }
+
+  @Test
+  public void testBounded() throws Exception {
+    cache = new ContentPathCache(3, 1, 0);
+    extractor.setContentPathCache(cache);
+    String html = page("<div class='story'>", 4);
+    for (int i = 0; i < 10; i++) {
+      extract("http://site" + i + ".com/", html);
+    }
+    assertEquals(3, cache.size());
+  }
+}
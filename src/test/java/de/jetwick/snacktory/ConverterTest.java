@@ -15,6 +15,8 @@
  */
 package de.jetwick.snacktory;
 
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import junit.framework.TestCase;
 import org.jsoup.Jsoup;
 
@@ -79,4 +81,29 @@ public class ConverterTest extends TestCase {
         assertEquals("Im Gespräch: Umweltaktivist Stewart Brand: Ihr Deutschen steht allein da "
                 + "- Atomdebatte - FAZ.NET", Jsoup.parse(str).select("title").text());
     }
+
+    public void testBytesToString() throws Exception {
+        String html = "<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=iso-8859-1\">"
+                + "</head><body>Gr\u00fc\u00dfe</body></html>";
+        byte[] bytes = html.getBytes("ISO-8859-1");
+
+        Converter d = new Converter();
+        assertEquals(html, d.bytesToString(bytes, "utf-8"));
+        assertEquals("iso-8859-1", d.getEncoding());
+
+        d = new Converter();
+        ByteBuffer buffer = d.streamToBytes(new ByteArrayInputStream(bytes), 100000, 10);
+        assertEquals(bytes.length, buffer.remaining());
+        assertEquals(html, d.bytesToString(buffer, null));
+        assertEquals(new Converter().streamToString(new ByteArrayInputStream(bytes)), html);
+
+        // no declaration, so the hint is used
+        bytes = "<html><body>Gr\u00fc\u00dfe</body></html>".getBytes("UTF-8");
+        d = new Converter();
+        assertEquals("<html><body>Gr\u00fc\u00dfe</body></html>", d.bytesToString(bytes, null));
+        assertEquals("utf-8", d.getEncoding());
+
+        // the maximum is respected
+        assertEquals(20, new Converter().streamToBytes(new ByteArrayInputStream(bytes), 20, -1).remaining());
+    }
 }
@@ -0,0 +1,23 @@
+package de.jetwick.snacktory;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HtmlFetcherTest {
+
+    @Test
+    public void testFetchAsStringOverride() throws Exception {
+        HtmlFetcher fetcher = new HtmlFetcher() {
+            @Override
+            public String fetchAsString(String urlAsString, int timeout) {
+                return "<html><head><title>Stub</title></head><body><div><p>"
+                        + "This is the paragraph of the stubbed page which is long enough to be kept"
+                        + "</p></div></body></html>";
+            }
+        };
+        JResult res = fetcher.fetchAndExtract("http://example.invalid/page", 1000, false);
+        assertEquals("Stub", res.getTitle());
+        assertTrue(res.getText(), res.getText().startsWith("This is the paragraph of the stubbed page"));
+    }
+}
@@ -0,0 +1,62 @@
+package de.jetwick.snacktory;
+
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class HtmlPreFilterTest {
+
+  @Test
+  public void testFilter() {
+    assertEquals("<p>a</p><p>b</p>", HtmlPreFilter.filter(
+        "<p>a</p><SCRIPT type='text/javascript'>if (a<b) document.write('</p>')</script ><p>b</p>"));
+    assertEquals("<head><title>t</title></head>", HtmlPreFilter.filter(
+        "<head><title>t</title><style>p > a { color: red }</style><noscript><img src=x></noscript></head>"));
+    assertEquals("<p>ab</p>", HtmlPreFilter.filter("<p>a<!-- <p>c</p> -->b</p>"));
+    assertEquals("<p>ab</p>", HtmlPreFilter.filter(
+        "<p>a<svg viewBox='0 0 1 1'><svg><path/></svg><text>x</text></svg>b<svg/></p>"));
+    // unclosed elements run until the end like in the parser
+    assertEquals("<p>a", HtmlPreFilter.filter("<p>a<script>var b = 1;"));
+  }
+
+  @Test
+  public void testCommentsEndLikeInJsoup() {
+    StringBuilder story = new StringBuilder("<div id='story'>");
+    for (int i = 0; i < 5; i++) {
+      story.append("<p>The paragraph number ").append(i).append(" of the story is long enough to be kept</p>");
+    }
+    story.append("</div>");
+    StringBuilder script = new StringBuilder("<script>");
+    for (int i = 0; i < 100; i++) {
+      script.append("var a").append(i).append(" = '").append(i).append("';");
+    }
+    script.append("</script>");
+
+    for (String comment : new String[] {"<!-->", "<!--->", "<!-- a --!>", "<!---->", "<!-- a -- b -->"}) {
+      String html = "<html><body>" + script + "text" + comment + story + "<!-- footer --></body></html>";
+      String filtered = HtmlPreFilter.filter(html);
+      assertNotSame(html, filtered);
+      assertEquals(comment, Jsoup.parse(html).body().text(), Jsoup.parse(filtered).body().text());
+    }
+  }
+
+  @Test
+  public void testSmallShareIsNotCopied() {
+    StringBuilder sb = new StringBuilder("<script>a</script>");
+    for (int i = 0; i < 10; i++) {
+      sb.append("<p>some text</p>");
+    }
+    String html = sb.toString();
+    assertSame(html, HtmlPreFilter.filter(html));
+  }
+
+  @Test
+  public void testKeepsTextAndAttributes() {
+    String html = "<p title='<script>x</script>'>a < b</p><textarea><!-- c --></textarea>"
+        + "<title><style></title><scripts>d</scripts>";
+    assertSame(html, HtmlPreFilter.filter(html));
+  }
+}
@@ -0,0 +1,51 @@
+package de.jetwick.snacktory;
+
+import static org.junit.Assert.*;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+public class LinearScoringModelTest {
+
+  private static final String HTML = "<html><body>"
+      + "<div id='first'>More articles about the topic of this page which you might like to read"
+      + " <a href='/1'>The first link of this block of links</a>"
+      + " <a href='/2'>The second link of this block of links</a>"
+      + " <a href='/3'>The third link of this block of links</a></div>"
+      + "<div id='second'>A few words of plain text without any links</div>"
+      + "</body></html>";
+
+  @Test
+  public void testDefault() {
+    int[] features = new int[ScoringModel.FEATURE_COUNT];
+    features[ScoringModel.POSITIVE_CLASS] = 1;
+    features[ScoringModel.NEGATIVE_ID] = 1;
+    features[ScoringModel.CHILDREN_WEIGHT] = 12;
+    features[ScoringModel.HEADERS] = 2;
+    features[ScoringModel.TEXT_LENGTH] = 1000;
+    assertEquals(35 - 50 + 12 + 40, LinearScoringModel.DEFAULT.score(features));
+
+    // a copy of the default weights finds the same node without pruning
+    Document doc = Jsoup.parse(HTML);
+    ScoringModel copy = new LinearScoringModel(LinearScoringModel.DEFAULT.getWeights());
+    assertSame(new BestNodeFinder().find(doc), new BestNodeFinder(copy).find(doc));
+  }
+
+  @Test
+  public void testLinkDensity() {
+    Document doc = Jsoup.parse(HTML);
+    assertEquals("first", new BestNodeFinder().find(doc).id());
+
+    double[] weights = LinearScoringModel.DEFAULT.getWeights();
+    weights[ScoringModel.LINK_DENSITY] = -0.1;
+    Element best = new BestNodeFinder(new LinearScoringModel(weights)).find(doc);
+    assertEquals("second", best.id());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongNumberOfWeights() {
+    new LinearScoringModel(1, 2, 3);
+  }
+}
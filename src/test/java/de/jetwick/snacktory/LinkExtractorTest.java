@@ -0,0 +1,58 @@
+package de.jetwick.snacktory;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+public class LinkExtractorTest {
+
+    @Test
+    public void testOffsets() {
+        Document doc = Jsoup.parse("<div id='best'><p>first <a href='/a' title='x<a y'>link</a></p>"
+                + "<p>the same <a href='/a' title='x<a y'>link</a> again</p>"
+                + "<a href='b.html'><div>block</div><div>link</div></a></div>", "http://example.com/dir/page.html");
+        Element best = doc.getElementById("best");
+        String html = best.outerHtml();
+
+        JResult res = new JResult();
+        LinkExtractor.extractLinks(best, res);
+        List<Map<String, String>> links = res.getLinks();
+        assertEquals(3, links.size());
+
+        assertEquals("http://example.com/a", links.get(0).get("url"));
+        assertEquals("link", links.get(0).get("text"));
+        int first = Integer.parseInt(links.get(0).get("offset"));
+        assertEquals(html.indexOf("<a href=\"/a\""), first);
+
+        // the second one is not found at the position of the first
+        int second = Integer.parseInt(links.get(1).get("offset"));
+        assertEquals(html.indexOf("<a href=\"/a\"", first + 1), second);
+
+        // a multi line link, its own serialization is indented differently
+        assertEquals("http://example.com/dir/b.html", links.get(2).get("url"));
+        assertEquals("block link", links.get(2).get("text"));
+        assertEquals(html.indexOf("<a href=\"b.html\""), Integer.parseInt(links.get(2).get("offset")));
+    }
+
+    @Test
+    public void testRemovedNodes() {
+        Document doc = Jsoup.parse("<div id='best'><p>removed <a href='http://example.com/removed'>link</a></p>"
+                + "<p>kept <a href='http://example.com/kept'>link</a></p></div>");
+        Element best = doc.getElementById("best");
+        ExtractionContext ctx = new ExtractionContext();
+        ctx.remove(best.child(0));
+
+        JResult res = new JResult();
+        LinkExtractor.extractLinks(best, res, ctx);
+        assertEquals(1, res.getLinks().size());
+        assertEquals("http://example.com/kept", res.getLinks().get(0).get("url"));
+        assertEquals(ctx.outerHtml(best).indexOf("<a href=\"http://example.com/kept\""),
+                Integer.parseInt(res.getLinks().get(0).get("offset")));
+        assertEquals(doc.getElementById("best").outerHtml(), best.outerHtml());
+    }
+}
@@ -0,0 +1,57 @@
+package de.jetwick.snacktory;
+
+import static org.junit.Assert.*;
+
+import de.jetwick.snacktory.benchmark.Corpus;
+import de.jetwick.snacktory.output.PlainTextOutputFormatter;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Entities;
+import org.junit.Test;
+
+public class OuterHtmlWriterTest {
+
+    private static String write(Element el, ExtractionContext ctx) {
+        StringBuilder sb = new StringBuilder();
+        new OuterHtmlWriter(ctx, sb).write(el);
+        return sb.toString();
+    }
+
+    @Test
+    public void testSameAsJsoup() {
+        String html = "<div id='best'><p>first <a href='/a' title='x<a y'>link</a> &amp; \"&lt;&nbsp;€é</p>"
+                + "<pre>  keep\n  <b> white </b></pre><ul><li>one<li>two</ul><img src='x.png' alt=''><br>"
+                + "<input checked=''><input disabled='disabled'><input value='value'><!-- comment -->"
+                + "<script>var a = '<b>';</script><span> <i>inline</i> text 😀 </span></div>";
+        Document doc = Jsoup.parse(html);
+        Element best = doc.getElementById("best");
+        assertEquals(best.outerHtml(), write(best, new ExtractionContext()));
+
+        doc.outputSettings().charset("US-ASCII").escapeMode(Entities.EscapeMode.xhtml).outline(true);
+        assertEquals(best.outerHtml(), write(best, new ExtractionContext()));
+
+        doc.outputSettings().charset("ISO-8859-1").escapeMode(Entities.EscapeMode.extended).outline(false)
+                .syntax(Document.OutputSettings.Syntax.xml);
+        assertEquals(best.outerHtml(), write(best, new ExtractionContext()));
+
+        doc.outputSettings().prettyPrint(false);
+        assertEquals(best.outerHtml(), write(best, new ExtractionContext()));
+    }
+
+    @Test
+    public void testSameAsCopy() {
+        for (String html : Corpus.load("input_plain")) {
+            Document doc = Jsoup.parse(html);
+            ExtractionContext ctx = new ExtractionContext();
+            Element best = new BestNodeFinder().find(doc, ctx);
+            if (best == null)
+                continue;
+
+            assertEquals(best.outerHtml(), write(best, ctx));
+            new PlainTextOutputFormatter().format(best, ctx);
+            assertEquals(ctx.copy(best).outerHtml(), write(best, ctx));
+            assertEquals(doc.body().outerHtml(), write(doc.body(), new ExtractionContext()));
+        }
+    }
+}
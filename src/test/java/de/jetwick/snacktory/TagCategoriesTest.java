@@ -0,0 +1,66 @@
+package de.jetwick.snacktory;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Tag;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TagCategoriesTest {
+
+  @Test
+  public void testCategories() {
+    Document doc = Jsoup.parse("<div><p>a</p><h3>b</h3><td>c</td><br><a>d</a><b>e</b><foo>f</foo>"
+        + "<ol><li>g</li></ol><img src=h></div>");
+    assertEquals(TagCategories.CANDIDATE | TagCategories.DIV, TagCategories.of(doc.select("div").first()));
+    assertEquals(TagCategories.CANDIDATE | TagCategories.PARAGRAPH, TagCategories.of(doc.select("p").first()));
+    assertEquals(TagCategories.HEADING, TagCategories.of(doc.select("h3").first()));
+    assertTrue(TagCategories.is(doc.select("br").first(), TagCategories.LINE_BREAK));
+    assertTrue(TagCategories.is(doc.select("a").first(), TagCategories.LINK));
+    assertTrue(TagCategories.is(doc.select("h3").first(), TagCategories.HEADING | TagCategories.PARAGRAPH));
+    assertFalse(TagCategories.is(doc.select("h3").first(), TagCategories.MAJOR_HEADING));
+    assertEquals(TagCategories.LIST, TagCategories.of(doc.select("ol").first()));
+    assertEquals(TagCategories.TABLE_OR_LIST, TagCategories.of(doc.select("li").first()));
+    assertEquals(TagCategories.IMAGE, TagCategories.of(doc.select("img").first()));
+    // no substring matches of "table;li;td;th" or "h1;h2;h3;h4;h5;h6"
+    assertEquals(0, TagCategories.of(doc.select("b").first()));
+    assertEquals(0, TagCategories.of(doc.select("foo").first()));
+  }
+
+  @Test
+  public void testSharedTags() {
+    // the masks are found by the Tag instance, which jsoup shares for all known tags
+    Document doc = Jsoup.parse("<ARTICLE><Section><table><tr><th>a</th><td>b</td></tr></table><h2>c</h2>"
+        + "<ul><li>d</li></ul></Section></ARTICLE>");
+    assertEquals(TagCategories.CANDIDATE, TagCategories.of(doc.select("article").first()));
+    assertEquals(TagCategories.CANDIDATE, TagCategories.of(doc.select("section").first()));
+    assertEquals(TagCategories.TABLE_OR_LIST, TagCategories.of(doc.select("table").first()));
+    assertEquals(TagCategories.TABLE_OR_LIST, TagCategories.of(doc.select("th").first()));
+    assertEquals(TagCategories.CANDIDATE | TagCategories.TABLE_OR_LIST, TagCategories.of(doc.select("td").first()));
+    assertEquals(TagCategories.CANDIDATE | TagCategories.HEADING | TagCategories.MAJOR_HEADING,
+        TagCategories.of(doc.select("h2").first()));
+    assertEquals(TagCategories.LIST, TagCategories.of(doc.select("ul").first()));
+    assertEquals(TagCategories.CANDIDATE | TagCategories.PARAGRAPH, TagCategories.of(Tag.valueOf("P")));
+  }
+
+  @Test
+  public void testFind_scoresOnlyRealTableAndListChildren() {
+    StringBuilder html = new StringBuilder("<html><body><div id='article'>");
+    for (int i = 0; i < 3; i++) {
+      html.append("<p>This paragraph of the article is long enough to count for the weight of its parent div</p>");
+    }
+    html.append("<a id='more'>more</a><b id='bold'>bold</b><li id='item'>item</li><h4>header</h4>");
+    html.append("</div></body></html>");
+    Document doc = Jsoup.parse(html.toString());
+
+    ExtractionContext ctx = new ExtractionContext();
+    assertEquals("article", new BestNodeFinder().find(doc, ctx).id());
+    assertEquals(0, ctx.getScore(doc.getElementById("more")));
+    assertEquals(0, ctx.getScore(doc.getElementById("bold")));
+    assertEquals(-30, ctx.getScore(doc.getElementById("item")));
+  }
+}
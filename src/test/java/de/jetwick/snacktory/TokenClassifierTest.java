@@ -0,0 +1,36 @@
+package de.jetwick.snacktory;
+
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenClassifierTest {
+
+  @Test
+  public void testClassify() {
+    TokenClassifier classifier = new TokenClassifier(100,
+        Pattern.compile("^(content|main)"), Pattern.compile("foot"), Pattern.compile("nav($|igation)"));
+    assertEquals(0, classifier.classify(""));
+    assertEquals(0, classifier.classify(null));
+    assertEquals(1, classifier.classify("content-main"));
+    assertEquals(1 | 4, classifier.classify("main-nav"));
+    assertEquals(2 | 4, classifier.classify("footer navigation"));
+    assertTrue(classifier.matches("footer", 2));
+    assertFalse(classifier.matches("footer", 1));
+    // cached
+    assertEquals(1 | 4, classifier.classify("main-nav"));
+    assertEquals(4, classifier.getCacheSize());
+  }
+
+  @Test
+  public void testBoundedCache() {
+    TokenClassifier classifier = new TokenClassifier(10, Pattern.compile("a"));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(1, classifier.classify("a" + i));
+      assertTrue(classifier.getCacheSize() <= 10);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package de.jetwick.snacktory.benchmark;
+
+import de.jetwick.snacktory.BatchExtractor;
+import de.jetwick.snacktory.BatchResult;
+import de.jetwick.snacktory.Source;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of BatchExtractor over the input_plain corpus (pages per second
+ * is the score times the corpus size) for 1 to N threads. Pass the thread
+ * counts of the machine, e.g. -p threads=1,2,4,8,16,32:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=de.jetwick.snacktory.benchmark.BatchBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BatchBenchmark {
+
+  @Param({"1", "2", "4"})
+  public int threads;
+
+  @Param({"fixed", "forkjoin"})
+  public String executor;
+
+  private List<Source> sources;
+  private BatchExtractor batch;
+
+  @Setup
+  public void setup() {
+    sources = new ArrayList<Source>();
+    for (String html : Corpus.load("input_plain")) {
+      sources.add(Source.of(html));
+    }
+    batch = executor.equals("fixed") ? BatchExtractor.withFixedThreadPool(threads)
+        : BatchExtractor.withForkJoinPool(threads);
+  }
+
+  @TearDown
+  public void tearDown() {
+    batch.close();
+  }
+
+  @Benchmark
+  public void extractCorpus(Blackhole bh) {
+    for (BatchResult res : batch.extractAll(sources)) {
+      bh.consume(res);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    List<String> threads = new ArrayList<String>();
+    for (int i = 1; i <= Runtime.getRuntime().availableProcessors(); i *= 2) {
+      threads.add(String.valueOf(i));
+    }
+    new Runner(new OptionsBuilder()
+        .include(BatchBenchmark.class.getSimpleName())
+        .param("threads", threads.toArray(new String[threads.size()]))
+        .build()).run();
+  }
+}
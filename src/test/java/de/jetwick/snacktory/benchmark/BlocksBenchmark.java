@@ -0,0 +1,94 @@
+package de.jetwick.snacktory.benchmark;
+
+import de.jetwick.snacktory.BestNodeFinder;
+import de.jetwick.snacktory.ExtractionContext;
+import de.jetwick.snacktory.output.HTMLOutputFormater;
+import de.jetwick.snacktory.output.OutputFormatter;
+import de.jetwick.snacktory.output.TextBlocks;
+import de.jetwick.snacktory.utils.HtmlTextStripper;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gets the text of each paragraph of the best node of every page of the
+ * input_plain corpus, once by splitting the output of the html formatter at
+ * its separators and stripping the tags of each part and once from the
+ * blocks of the same formatter. The nodes are scored once in the setup.
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=de.jetwick.snacktory.benchmark.BlocksBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BlocksBenchmark {
+
+  private OutputFormatter formatter;
+  private List<Element> nodes;
+  private List<ExtractionContext> contexts;
+
+  @Setup
+  public void setup() {
+    formatter = new HTMLOutputFormater();
+    nodes = new ArrayList<Element>();
+    contexts = new ArrayList<ExtractionContext>();
+    for (String html : Corpus.load("input_plain")) {
+      Document doc = Jsoup.parse(html);
+      ExtractionContext ctx = new ExtractionContext();
+      Element best = new BestNodeFinder().find(doc, ctx);
+      if (best == null)
+        continue;
+      nodes.add(best);
+      contexts.add(ctx);
+    }
+  }
+
+  @Benchmark
+  public void formatAndSplit(Blackhole bh) {
+    for (int i = 0; i < nodes.size(); i++) {
+      String html = formatter.format(nodes.get(i), contexts.get(i).fork());
+      for (String paragraph : html.split("\n\n")) {
+        bh.consume(HtmlTextStripper.text(paragraph));
+      }
+    }
+  }
+
+  @Benchmark
+  public void formatBlocks(Blackhole bh) {
+    for (int i = 0; i < nodes.size(); i++) {
+      TextBlocks blocks = formatter.formatBlocks(nodes.get(i), contexts.get(i).fork());
+      for (int block = 0; block < blocks.size(); block++) {
+        bh.consume(blocks.getBlock(block));
+      }
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(BlocksBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
@@ -0,0 +1,44 @@
+package de.jetwick.snacktory.benchmark;
+
+import de.jetwick.snacktory.Converter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The html files of the test resources, read the same way as the tests do.
+ */
+public class Corpus {
+
+  public static List<String> load(String dir) {
+    List<String> pages = new ArrayList<String>();
+    for (File file : files(dir)) {
+      try {
+        pages.add(new Converter().streamToString(new FileInputStream(file)));
+      } catch (FileNotFoundException ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+    return pages;
+  }
+
+  public static List<File> files(String dir) {
+    URL url = Corpus.class.getResource("/" + dir);
+    if (url == null)
+      throw new IllegalArgumentException("test resource directory not found: " + dir);
+
+    File[] files;
+    try {
+      files = new File(url.toURI()).listFiles();
+    } catch (URISyntaxException ex) {
+      throw new IllegalArgumentException(ex);
+    }
+    Arrays.sort(files);
+    return Arrays.asList(files);
+  }
+}
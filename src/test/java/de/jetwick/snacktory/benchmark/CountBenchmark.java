@@ -0,0 +1,122 @@
+package de.jetwick.snacktory.benchmark;
+
+import de.jetwick.snacktory.utils.MultiPatternCounter;
+import de.jetwick.snacktory.utils.SHelper;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the markup patterns of the child weight in the own text of every
+ * div and p with at least 20 characters of the input_plain corpus, the texts
+ * BestNodeFinder counts them in. recursiveCount is the former SHelper.count
+ * which copied the rest of the text after every occurrence. The markup input
+ * are texts full of leaked css and escaped html, where it allocates the most.
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=de.jetwick.snacktory.benchmark.CountBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CountBenchmark {
+
+  private static final String[] PATTERNS = {"&quot;", "&lt;", "&gt;", "px"};
+
+  @Param({"corpus", "markup"})
+  public String input;
+
+  private List<String> texts;
+  private MultiPatternCounter counter;
+
+  @Setup
+  public void setup() {
+    texts = new ArrayList<String>();
+    counter = new MultiPatternCounter(PATTERNS);
+    if ("markup".equals(input)) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 50; i++) {
+        sb.append("width:").append(i).append("px;height:20px; &lt;a title=&quot;x&quot;&gt; ");
+      }
+      for (int i = 0; i < 200; i++) {
+        texts.add(sb.substring(i));
+      }
+      return;
+    }
+    for (String html : Corpus.load("input_plain")) {
+      for (Element el : Jsoup.parse(html).select("div, p")) {
+        String text = el.ownText();
+        if (text.length() >= 20)
+          texts.add(text);
+      }
+    }
+  }
+
+  @Benchmark
+  public int recursiveCount() {
+    int sum = 0;
+    for (String text : texts) {
+      for (String pattern : PATTERNS) {
+        sum += recursiveCount(text, pattern);
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int indexOfCount() {
+    int sum = 0;
+    for (String text : texts) {
+      for (String pattern : PATTERNS) {
+        sum += SHelper.count(text, pattern);
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int multiPatternCount() {
+    int sum = 0;
+    for (String text : texts) {
+      sum += counter.countAll(text);
+    }
+    return sum;
+  }
+
+  private static int recursiveCount(String str, String substring) {
+    int c = 0;
+    int index1 = str.indexOf(substring);
+    if (index1 >= 0) {
+      c++;
+      c += recursiveCount(str.substring(index1 + substring.length()), substring);
+    }
+    return c;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(CountBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
@@ -0,0 +1,60 @@
+package de.jetwick.snacktory.benchmark;
+
+import de.jetwick.snacktory.ArticleTextExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses and extracts all pages of the input_plain corpus per operation. Run
+ * it with the gc profiler, gc.alloc.rate.norm divided by the number of pages
+ * is the number of bytes allocated per page:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=de.jetwick.snacktory.benchmark.ExtractionBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExtractionBenchmark {
+
+  private List<String> pages;
+  private ArticleTextExtractor extractor;
+
+  @Setup
+  public void setup() {
+    pages = Corpus.load("input_plain");
+    extractor = new ArticleTextExtractor();
+  }
+
+  @Benchmark
+  public void extractCorpus(Blackhole bh) throws Exception {
+    for (String html : pages) {
+      bh.consume(extractor.extractContent(html));
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(ExtractionBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
@@ -0,0 +1,120 @@
+package de.jetwick.snacktory.benchmark;
+
+import de.jetwick.snacktory.BestNodeFinder;
+import de.jetwick.snacktory.ExtractionContext;
+import de.jetwick.snacktory.output.HTMLOutputFormater;
+import de.jetwick.snacktory.output.OutputFormatter;
+import de.jetwick.snacktory.output.PlainTextOutputFormatter;
+import de.jetwick.snacktory.utils.Utf8Utils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats the best node of every page of the input_plain corpus. The nodes
+ * are scored once in the setup, every operation copies the scores into fresh
+ * contexts. truncateAfterwards formats everything and cuts it to maxBytes
+ * like ArticleTextExtractor did, formatWithBudget stops at maxBytes.
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=de.jetwick.snacktory.benchmark.FormatBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FormatBenchmark {
+
+  @Param({"plain", "html"})
+  public String format;
+
+  @Param({"1000"})
+  public int maxBytes;
+
+  private OutputFormatter formatter;
+  private List<Element> nodes;
+  private List<Element[]> scored;
+  private List<int[]> scores;
+
+  @Setup
+  public void setup() {
+    formatter = "html".equals(format) ? new HTMLOutputFormater() : new PlainTextOutputFormatter();
+    nodes = new ArrayList<Element>();
+    scored = new ArrayList<Element[]>();
+    scores = new ArrayList<int[]>();
+    for (String html : Corpus.load("input_plain")) {
+      Document doc = Jsoup.parse(html);
+      ExtractionContext ctx = new ExtractionContext();
+      Element best = new BestNodeFinder().find(doc, ctx);
+      if (best == null)
+        continue;
+
+      List<Element> elements = new ArrayList<Element>();
+      for (Element el : doc.getAllElements()) {
+        if (ctx.hasScore(el))
+          elements.add(el);
+      }
+      int[] values = new int[elements.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = ctx.getScore(elements.get(i));
+      }
+      nodes.add(best);
+      scored.add(elements.toArray(new Element[elements.size()]));
+      scores.add(values);
+    }
+  }
+
+  @Benchmark
+  public void truncateAfterwards(Blackhole bh) {
+    for (int i = 0; i < nodes.size(); i++) {
+      bh.consume(Utf8Utils.utf8truncate(formatter.format(nodes.get(i), context(i)), maxBytes));
+    }
+  }
+
+  @Benchmark
+  public void formatWithBudget(Blackhole bh) throws Exception {
+    for (int i = 0; i < nodes.size(); i++) {
+      StringBuilder sb = new StringBuilder();
+      formatter.format(nodes.get(i), context(i), sb, maxBytes);
+      bh.consume(sb.toString());
+    }
+  }
+
+  private ExtractionContext context(int page) {
+    ExtractionContext ctx = new ExtractionContext();
+    Element[] elements = scored.get(page);
+    int[] values = scores.get(page);
+    for (int i = 0; i < elements.length; i++) {
+      ctx.setScore(elements[i], values[i]);
+    }
+    return ctx;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(FormatBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
@@ -0,0 +1,101 @@
+package de.jetwick.snacktory.benchmark;
+
+import de.jetwick.snacktory.BestNodeFinder;
+import de.jetwick.snacktory.Converter;
+import de.jetwick.snacktory.ExtractionContext;
+import de.jetwick.snacktory.JResult;
+import de.jetwick.snacktory.LinkExtractor;
+import de.jetwick.snacktory.output.PlainTextOutputFormatter;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Link extraction from the best element of the wikipedia pages of the
+ * input_plain corpus. indexOfLinks is the former implementation which
+ * searched the html of every link in the html of the best element.
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=de.jetwick.snacktory.benchmark.LinkBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LinkBenchmark {
+
+  private List<Element> bestElements;
+  private List<ExtractionContext> contexts;
+
+  @Setup
+  public void setup() throws Exception {
+    bestElements = new ArrayList<Element>();
+    contexts = new ArrayList<ExtractionContext>();
+    for (File file : Corpus.files("input_plain")) {
+      if (!file.getName().startsWith("wikipedia"))
+        continue;
+
+      String html = new Converter().streamToString(new FileInputStream(file));
+      ExtractionContext ctx = new ExtractionContext();
+      Element best = new BestNodeFinder().find(Jsoup.parse(html, "http://en.wikipedia.org/wiki/"), ctx);
+      new PlainTextOutputFormatter().format(best, ctx);
+      bestElements.add(best);
+      contexts.add(ctx);
+    }
+  }
+
+  @Benchmark
+  public JResult extractLinks() {
+    JResult res = new JResult();
+    for (int i = 0; i < bestElements.size(); i++) {
+      LinkExtractor.extractLinks(bestElements.get(i), res, contexts.get(i));
+    }
+    return res;
+  }
+
+  @Benchmark
+  public JResult indexOfLinks() {
+    JResult res = new JResult();
+    for (int i = 0; i < bestElements.size(); i++) {
+      Element best = bestElements.get(i);
+      ExtractionContext ctx = contexts.get(i);
+      String fullhtml = ctx.outerHtml(best);
+      Elements children = ctx.select(best, "a[href]");
+      int lastlinkpos = 0;
+      for (Element child : children) {
+        int linkpos = fullhtml.indexOf(ctx.outerHtml(child), lastlinkpos);
+        res.addLink(child.attr("abs:href"), ctx.text(child), linkpos);
+        lastlinkpos = linkpos;
+      }
+    }
+    return res;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(LinkBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
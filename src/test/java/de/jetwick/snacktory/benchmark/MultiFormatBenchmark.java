@@ -0,0 +1,77 @@
+package de.jetwick.snacktory.benchmark;
+
+import de.jetwick.snacktory.ArticleTextExtractor;
+import de.jetwick.snacktory.ExtractionOptions;
+import de.jetwick.snacktory.JResult;
+import de.jetwick.snacktory.output.HTMLOutputFormater;
+import de.jetwick.snacktory.output.OutputFormatter;
+import de.jetwick.snacktory.output.PlainTextOutputFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracts the plain text and the html of all pages of the input_plain
+ * corpus, once with an extraction per formatter and once with both
+ * formatters in one extraction.
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=de.jetwick.snacktory.benchmark.MultiFormatBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MultiFormatBenchmark {
+
+  private List<String> pages;
+  private ArticleTextExtractor extractor;
+  private List<OutputFormatter> formatters;
+
+  @Setup
+  public void setup() {
+    pages = Corpus.load("input_plain");
+    extractor = new ArticleTextExtractor();
+    formatters = Arrays.<OutputFormatter>asList(new PlainTextOutputFormatter(), new HTMLOutputFormater());
+  }
+
+  @Benchmark
+  public void extractionPerFormatter(Blackhole bh) throws Exception {
+    for (String html : pages) {
+      for (OutputFormatter formatter : formatters) {
+        bh.consume(extractor.extractContent(new JResult(), html, formatter, ExtractionOptions.ALL, -1));
+      }
+    }
+  }
+
+  @Benchmark
+  public void oneExtraction(Blackhole bh) throws Exception {
+    for (String html : pages) {
+      bh.consume(extractor.extractContent(new JResult(), html, formatters, ExtractionOptions.ALL, -1));
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(MultiFormatBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
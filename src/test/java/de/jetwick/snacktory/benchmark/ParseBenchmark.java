@@ -0,0 +1,94 @@
+package de.jetwick.snacktory.benchmark;
+
+import de.jetwick.snacktory.HtmlPreFilter;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the input_plain corpus with and without dropping the scripts,
+ * styles, comments and svg elements before the parser sees them. Most pages
+ * of the corpus are older and have few scripts, scriptHeavy adds an inline
+ * json blob of twice the page size to every page like on many current news
+ * sites.
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=de.jetwick.snacktory.benchmark.ParseBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ParseBenchmark {
+
+  @Param({"false", "true"})
+  public boolean scriptHeavy;
+
+  private List<String> pages;
+
+  @Setup
+  public void setup() {
+    pages = Corpus.load("input_plain");
+    if (scriptHeavy) {
+      List<String> heavy = new ArrayList<String>(pages.size());
+      for (String html : pages) {
+        heavy.add(addScript(html));
+      }
+      pages = heavy;
+    }
+  }
+
+  private static String addScript(String html) {
+    StringBuilder sb = new StringBuilder(html.length() * 3 + 100);
+    sb.append("<script type=\"application/json\">{\"items\":[");
+    while (sb.length() < html.length() * 2) {
+      sb.append("{\"id\":").append(sb.length()).append(",\"title\":\"some teaser <b>text</b>\"},");
+    }
+    sb.append("{}]}</script>");
+    int body = html.indexOf("<body");
+    return body < 0 ? sb + html : html.substring(0, body) + sb + html.substring(body);
+  }
+
+  @Benchmark
+  public void parse(Blackhole bh) {
+    for (String html : pages) {
+      Document doc = Jsoup.parse(html);
+      bh.consume(doc);
+    }
+  }
+
+  @Benchmark
+  public void filterAndParse(Blackhole bh) {
+    for (String html : pages) {
+      Document doc = Jsoup.parse(HtmlPreFilter.filter(html));
+      bh.consume(doc);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(ParseBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
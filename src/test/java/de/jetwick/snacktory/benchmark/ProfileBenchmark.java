@@ -0,0 +1,67 @@
+package de.jetwick.snacktory.benchmark;
+
+import de.jetwick.snacktory.ArticleTextExtractor;
+import de.jetwick.snacktory.ExtractionOptions;
+import de.jetwick.snacktory.JResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the extraction profiles on the input_plain corpus, e.g. the link
+ * preview profile against a full extraction:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=de.jetwick.snacktory.benchmark.ProfileBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProfileBenchmark {
+
+  @Param({"ALL", "PREVIEW", "TEXT_ONLY"})
+  public String profile;
+
+  private List<String> pages;
+  private ArticleTextExtractor extractor;
+  private ExtractionOptions options;
+
+  @Setup
+  public void setup() throws Exception {
+    pages = Corpus.load("input_plain");
+    extractor = new ArticleTextExtractor();
+    options = (ExtractionOptions) ExtractionOptions.class.getField(profile).get(null);
+  }
+
+  @Benchmark
+  public void extractCorpus(Blackhole bh) throws Exception {
+    for (String html : pages) {
+      bh.consume(extractor.extractContent(new JResult(), html, options, -1));
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(ProfileBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
@@ -0,0 +1,105 @@
+package de.jetwick.snacktory.benchmark;
+
+import de.jetwick.snacktory.BestNodeFinder;
+import de.jetwick.snacktory.ExtractionContext;
+import de.jetwick.snacktory.ExtractionTrace;
+import de.jetwick.snacktory.output.OutputFormatter;
+import de.jetwick.snacktory.output.PlainTextOutputFormatter;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds and formats the best node of every page of the input_plain corpus.
+ * The pages are parsed once in the setup, so gc.alloc.rate.norm is what the
+ * scoring and the formatter allocate for the whole corpus.
+ * findBestNodeParallel weights the pages with more than 500 candidates in
+ * the common pool, compare it with findBestNode on a multi core machine.
+ * findBestNodeTraced records an ExtractionTrace, findBestNode must not get
+ * slower or allocate more because tracing exists.
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=de.jetwick.snacktory.benchmark.ScoringBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ScoringBenchmark {
+
+  private List<Document> docs;
+  private BestNodeFinder finder;
+  private OutputFormatter formatter;
+
+  @Setup
+  public void setup() {
+    docs = new ArrayList<Document>();
+    for (String html : Corpus.load("input_plain")) {
+      docs.add(Jsoup.parse(html));
+    }
+    finder = new BestNodeFinder();
+    formatter = new PlainTextOutputFormatter();
+  }
+
+  @Benchmark
+  public void findBestNode(Blackhole bh) {
+    for (Document doc : docs) {
+      bh.consume(finder.find(doc, new ExtractionContext()));
+    }
+  }
+
+  @Benchmark
+  public void findBestNodeParallel(Blackhole bh) {
+    for (Document doc : docs) {
+      bh.consume(finder.find(doc, new ExtractionContext(), ForkJoinPool.commonPool(), 500));
+    }
+  }
+
+  @Benchmark
+  public void findBestNodeTraced(Blackhole bh) {
+    for (Document doc : docs) {
+      ExtractionContext ctx = new ExtractionContext();
+      ctx.setTrace(new ExtractionTrace());
+      bh.consume(finder.find(doc, ctx));
+      bh.consume(ctx.getTrace());
+    }
+  }
+
+  @Benchmark
+  public void findAndFormat(Blackhole bh) {
+    for (Document doc : docs) {
+      ExtractionContext ctx = new ExtractionContext();
+      Element best = finder.find(doc, ctx);
+      if (best != null)
+        bh.consume(formatter.format(best, ctx));
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(ScoringBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
@@ -0,0 +1,83 @@
+package de.jetwick.snacktory.benchmark;
+
+import de.jetwick.snacktory.utils.HtmlTextStripper;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Strips the text of every div and p with at least 20 characters of the
+ * input_plain corpus, the texts PlainTextOutputFormatter falls back to, once
+ * by parsing it with jsoup and once with HtmlTextStripper. The markup input
+ * is the inner html of the same elements instead.
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=de.jetwick.snacktory.benchmark.StripBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StripBenchmark {
+
+  @Param({"text", "markup"})
+  public String input;
+
+  private List<String> texts;
+
+  @Setup
+  public void setup() {
+    texts = new ArrayList<String>();
+    for (String html : Corpus.load("input_plain")) {
+      for (Element el : Jsoup.parse(html).select("div, p")) {
+        String text = el.text();
+        if (text.length() >= 20)
+          texts.add("markup".equals(input) ? el.html() : text);
+      }
+    }
+  }
+
+  @Benchmark
+  public int jsoupParse() {
+    int sum = 0;
+    for (String text : texts) {
+      sum += Jsoup.parse(text).text().length();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int stripper() {
+    int sum = 0;
+    for (String text : texts) {
+      sum += HtmlTextStripper.text(text).length();
+    }
+    return sum;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(StripBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
@@ -0,0 +1,60 @@
+package de.jetwick.snacktory.metadata;
+
+import static org.junit.Assert.*;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+public class MetadataIndexTest {
+
+    private static final String HTML = "<html lang='de'><head>"
+            + "<title> The  Title </title>"
+            + "<meta name=' Description ' content='head description'>"
+            + "<meta property='og:type' content='article'>"
+            + "<link rel='shortcut icon' href='/favicon.ico'>"
+            + "</head><body>"
+            + "<meta name='description' content='body description'>"
+            + "<span itemprop='datePublished'>2015-01-01</span>"
+            + "<meta itemprop='datePublished' content='2015-01-02'>"
+            + "<a rel='author' href='/me'>Me</a>"
+            + "</body></html>";
+
+    @Test
+    public void testSameAsSelect() {
+        Document doc = Jsoup.parse(HTML);
+        MetadataIndex index = new MetadataIndex(doc);
+        assertEquals(doc.select("meta[name=description]"), index.select("meta", "name", "description"));
+        assertEquals(doc.select("head meta[name=description]"), index.selectInHead("meta", "name", "description"));
+        assertEquals("head description", index.selectInHead("meta", "name", "description").attr("content"));
+        assertEquals(doc.select("head meta[property=og:type]"), index.selectInHead("meta", "property", "og:type"));
+        assertEquals(doc.select("[itemprop=datePublished]"), index.select("itemprop", "datePublished"));
+        assertTrue(index.select("meta", "name", "keywords").isEmpty());
+        assertTrue(index.select("span", "name", "description").isEmpty());
+
+        assertEquals(doc.title(), index.getTitle());
+        assertEquals(doc.select("head title"), index.getTitlesInHead());
+        assertEquals("de", index.getHtmlElements().attr("lang"));
+    }
+
+    @Test
+    public void testHeadAndBody() {
+        Document doc = Jsoup.parse(HTML);
+        MetadataIndex index = new MetadataIndex(doc);
+        assertEquals(2, index.withAttribute("rel").size());
+        assertTrue(index.isInHead(index.withAttribute("rel").get(0)));
+        assertEquals(1, index.withAttributeInBody("rel").size());
+        assertSame(index.withAttribute("rel").get(1), index.withAttributeInBody("rel").get(0));
+        assertFalse(index.isInHead(doc.head()));
+    }
+
+    @Test
+    public void testExtractor() {
+        Document doc = Jsoup.parse(HTML);
+        MetadataExtractor extractor = new MetadataExtractor();
+        assertEquals("/favicon.ico", extractor.extractFaviconUrl(doc));
+        assertEquals("article", extractor.extractType(doc));
+        assertEquals("de", extractor.extractLanguage(doc));
+        assertEquals("head description", extractor.extractDescription(doc));
+    }
+}
@@ -0,0 +1,221 @@
+package de.jetwick.snacktory.output;
+
+import de.jetwick.snacktory.ArticleTextExtractor;
+import de.jetwick.snacktory.BestNodeFinder;
+import de.jetwick.snacktory.Converter;
+import de.jetwick.snacktory.ExtractionContext;
+import de.jetwick.snacktory.benchmark.Corpus;
+import de.jetwick.snacktory.utils.Utf8Utils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutputFormatterTest {
+
+  private static final String LONG = "This text is long enough to stay in the output of the formatter.";
+
+  @Test
+  public void testRemoveNodesWithNegativeScores() {
+    Document doc = Jsoup.parse("<div id='top'>"
+        + "<p id='short'>Too short to stay.</p>"
+        // more than 50 characters in the html, but less after normalising the white space
+        + "<p id='spaces'>a          b          c          d          e          f</p>"
+        + "<p id='long'>" + LONG + "</p>"
+        + "<div id='lines'>first line of twenty-six<br>second line of twenty-six</div>"
+        + "<div id='negative'><p id='inner'>" + LONG + "</p></div>"
+        + "<div id='unscored'>short</div>"
+        + "</div>");
+    ExtractionContext ctx = new ExtractionContext();
+    for (Element el : doc.select("p, div:not(#unscored)")) {
+      ctx.setScore(el, 0);
+    }
+    ctx.setScore(doc.getElementById("negative"), -10);
+    ctx.setScore(doc.getElementById("inner"), -10);
+
+    Element top = doc.getElementById("top");
+    new PlainTextOutputFormatter().removeNodesWithNegativeScores(top, ctx);
+
+    assertTrue(ctx.isRemoved(doc.getElementById("short")));
+    assertTrue(ctx.isRemoved(doc.getElementById("spaces")));
+    assertFalse(ctx.isRemoved(doc.getElementById("long")));
+    // 50 characters only with the space for the br
+    assertFalse(ctx.isRemoved(doc.getElementById("lines")));
+    assertTrue(ctx.isRemoved(doc.getElementById("negative")));
+    // not visited below a removed node
+    assertFalse(ctx.isRemoved(doc.getElementById("inner")));
+    assertFalse(ctx.isRemoved(doc.getElementById("unscored")));
+    assertFalse(ctx.isRemoved(top));
+  }
+
+  @Test
+  public void testFindUnlikely() {
+    Document doc = Jsoup.parse("<div id='top' class='caption'>"
+        + "<div id='hidden' style='display:none'><p id='below'>text</p></div>"
+        + "<div id='caption' class='Image-Caption'>caption</div>"
+        + "<div id='removed' style='display:none'><p id='belowRemoved'>text</p></div>"
+        + "<p id='visible'>text <span id='span'>more</span></p>"
+        + "</div>");
+    Element top = doc.getElementById("top");
+    ExtractionContext ctx = new ExtractionContext();
+    ctx.remove(doc.getElementById("removed"));
+    OutputFormatter formatter = new PlainTextOutputFormatter();
+
+    Set<Element> unlikely = formatter.findUnlikely(top, ctx);
+    assertEquals(3, unlikely.size());
+    for (Element el : doc.getElementsByAttribute("id")) {
+      if (!ctx.isRemoved(el, top))
+        assertEquals(el.id(), formatter.isUnlikely(el, top, ctx), formatter.isUnlikely(el, top, unlikely, ctx));
+    }
+    assertTrue(formatter.isUnlikely(doc.getElementById("below"), top, unlikely, ctx));
+    assertTrue(formatter.isUnlikely(doc.getElementById("caption"), top, unlikely, ctx));
+    // the root itself is never unlikely
+    assertFalse(formatter.isUnlikely(top, top, unlikely, ctx));
+    assertFalse(formatter.isUnlikely(doc.getElementById("span"), top, unlikely, ctx));
+  }
+
+  @Test
+  public void testHtmlFormat_letterRatioOfImages() throws Exception {
+    // the ratio of letters counts the markup of the element as it is in the
+    // document. Since the scores are kept in the context no paragraphindex
+    // attribute adds letters, so an image whose url is mostly digits and
+    // punctuation is dropped, like the first image of the vimeo.com page.
+    Document doc = Jsoup.parse("<div id='top'><p>" + LONG + "</p>"
+        + "<img src='http://b.vimeocdn.com/ts/134/104/134104048_100.jpg' alt=''>"
+        + "<img src='http://example.com/images/article-header.jpg' alt='The header of the article'></div>");
+    String html = new HTMLOutputFormater().format(doc.getElementById("top"), new ExtractionContext());
+    assertFalse(html, html.contains("134104048_100.jpg"));
+    assertTrue(html, html.contains("article-header.jpg"));
+    assertFalse(html, html.contains("paragraphindex") || html.contains("gravityscore"));
+
+    boolean found = false;
+    for (File file : Corpus.files("input_plain")) {
+      if (!file.getName().equals("vimeo.com.html"))
+        continue;
+      found = true;
+      String page = new Converter().streamToString(new FileInputStream(file));
+      String text = new ArticleTextExtractor().extractContent(page, new HTMLOutputFormater()).getText();
+      assertTrue(text, text.contains("title=\"tinte\""));
+      assertFalse(text, text.contains("134104048_100.jpg"));
+    }
+    assertTrue(found);
+  }
+
+  @Test
+  public void testFormat_budget() throws Exception {
+    OutputFormatter[] formatters = {new PlainTextOutputFormatter(), new HTMLOutputFormater()};
+    int[] budgets = {0, 50, 101, 3000};
+    for (String html : Corpus.load("input_plain")) {
+      Document doc = Jsoup.parse(html);
+      ExtractionContext scores = new ExtractionContext();
+      Element best = new BestNodeFinder().find(doc, scores);
+      if (best == null)
+        continue;
+      for (OutputFormatter formatter : formatters) {
+        String full = formatter.format(best, copyScores(doc, scores));
+        for (int budget : budgets) {
+          ExtractionContext ctx = copyScores(doc, scores);
+          StringBuilder sb = new StringBuilder();
+          boolean complete = formatter.format(best, ctx, sb, budget);
+          String expected = Utf8Utils.utf8truncate(full, budget);
+          assertEquals(expected, sb.toString());
+          assertEquals(expected.equals(full), complete);
+
+          // the same text, the length is counted past the budget
+          for (int minLength : new int[]{0, 30, 2000}) {
+            sb.setLength(0);
+            int length = formatter.format(best, copyScores(doc, scores), sb, budget, minLength);
+            assertEquals(expected, sb.toString());
+            if (full.length() < minLength)
+              assertEquals(full.length(), length);
+            else
+              assertTrue(length >= Math.min(minLength, full.length()) && length <= full.length());
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTextLength() {
+    for (String html : Corpus.load("input_plain")) {
+      Document doc = Jsoup.parse(html);
+      ExtractionContext ctx = new ExtractionContext();
+      Element best = new BestNodeFinder().find(doc, ctx);
+      if (best == null)
+        continue;
+      // with removed nodes
+      new PlainTextOutputFormatter().format(best, ctx);
+      assertEquals(ctx.text(doc.body()).length(), ctx.textLength(doc.body()));
+      for (Element el : best.getAllElements()) {
+        assertEquals(ctx.text(el).length(), ctx.textLength(el));
+      }
+    }
+  }
+
+  @Test
+  public void testFormatBlocks() {
+    Document doc = Jsoup.parse("<div id='top'><h2>The  heading</h2>"
+        + "<p>" + LONG + "</p><p>Too short to stay.</p>"
+        + "<p style='display:none'>" + LONG + "</p>"
+        + "<img src='/a.jpg'><ol><li>" + LONG + "</li></ol></div>");
+    Element top = doc.getElementById("top");
+
+    TextBlocks blocks = new PlainTextOutputFormatter().formatBlocks(top, new ExtractionContext());
+    assertEquals(3, blocks.size());
+    assertEquals(TextBlocks.HEADING, blocks.getType(0));
+    assertEquals("The heading", blocks.getBlock(0).toString());
+    assertEquals(TextBlocks.PARAGRAPH, blocks.getType(1));
+    assertEquals(LONG, blocks.getBlock(1).toString());
+    assertEquals(TextBlocks.LIST, blocks.getType(2));
+    assertEquals(11 + LONG.length(), blocks.getStart(2));
+    assertEquals(blocks.length(), blocks.getEnd(2));
+    assertEquals("The heading" + LONG + LONG, blocks.toString());
+    assertEquals("heading", blocks.getBlock(0).subSequence(4, 11).toString());
+
+    // the html formatter keeps the images
+    blocks = new HTMLOutputFormater().formatBlocks(top, new ExtractionContext());
+    assertEquals(4, blocks.size());
+    assertEquals(TextBlocks.IMAGE, blocks.getType(2));
+    assertEquals("/a.jpg", blocks.getBlock(2).toString());
+  }
+
+  @Test
+  public void testFormatBlocks_sameTextAsFormat() {
+    PlainTextOutputFormatter formatter = new PlainTextOutputFormatter();
+    for (String html : Corpus.load("input_plain")) {
+      Document doc = Jsoup.parse(html);
+      ExtractionContext ctx = new ExtractionContext();
+      Element best = new BestNodeFinder().find(doc, ctx);
+      if (best == null)
+        continue;
+      TextBlocks blocks = formatter.formatBlocks(best, ctx.fork());
+
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < blocks.size(); i++) {
+        if (blocks.getType(i) == TextBlocks.HEADING)
+          continue;
+        if (sb.length() > 0)
+          sb.append(' ');
+        sb.append(blocks.getBlock(i));
+      }
+      assertEquals(formatter.format(best, ctx), sb.toString());
+    }
+  }
+
+  private static ExtractionContext copyScores(Document doc, ExtractionContext from) {
+    ExtractionContext ctx = new ExtractionContext();
+    for (Element el : doc.getAllElements()) {
+      if (from.hasScore(el))
+        ctx.setScore(el, from.getScore(el));
+    }
+    return ctx;
+  }
+}
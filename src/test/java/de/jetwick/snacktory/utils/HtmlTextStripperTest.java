@@ -0,0 +1,102 @@
+package de.jetwick.snacktory.utils;
+
+import de.jetwick.snacktory.Converter;
+import de.jetwick.snacktory.benchmark.Corpus;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class HtmlTextStripperTest {
+
+  private static final String[] FRAGMENTS = {
+    "a", "B", " ", "  ", "\n", "\t", "\r", "\f", "\u000B", " ", "x1", "<", ">", "/", "=", "\"", "'", "!",
+    "-", "?", "&", ";", "#", "&amp;", "&amp", "&ampx", "&lt", "&notin;", "&notin", "&not", "&#65;", "&#x42",
+    "&#xZ", "&#;", "&#55296;", "&#99999999999;", "&#x1F600;", "<b>", "</b>", "<div>", "</div>", "<p>", "<br>",
+    "</br>", "<br/>", "<li>", "<h2 class='x'>", "<a href=\"a>b\">", "</a>", "<span =\">\">", "<i a=b>",
+    "<!--", "-->", "--!>", "<!---->", "<!-->", "<!DOCTYPE html>", "<?xml?>", "</>", "</ x>", "<meta>",
+    "<hr/>", "<foo>", "<b/c=\">\">", "<table>", "<script>", "<pre>", "</p>", "<![CDATA[", "]]>", "<a>", "<i>",
+    "</i>", "<nobr>", "<s>", "<object>", "</object>", "<button>", "<ul>", "</ul>", "<body x=y>", "</html>",
+    "</script>", "<style>", "</style>"
+  };
+
+  @Test
+  public void testText() {
+    assertEquals("a & b", HtmlTextStripper.text("a &amp; b"));
+    assertEquals("a &amp b", HtmlTextStripper.text("a &amp;amp b"));
+    assertEquals("x<y & z", HtmlTextStripper.text(" x&lt;y &  z\n"));
+    assertEquals("one two", HtmlTextStripper.text("one<br>two"));
+    assertEquals("one two", HtmlTextStripper.text("one<div>two</div>"));
+    assertEquals("onetwo", HtmlTextStripper.text("one<b class=\"a > b\">two</b>"));
+    assertEquals("one", HtmlTextStripper.text("one<!-- two -->"));
+    assertEquals("one", HtmlTextStripper.text("one<b"));
+    assertEquals("1 < 2", HtmlTextStripper.text("1 < 2"));
+    // no prefix of a longer name is taken, unlike in browsers
+    assertEquals("© &copyx &copyx; ∉", HtmlTextStripper.text("&copy; &copyx &copyx; &notin;"));
+    assertEquals("", HtmlTextStripper.text(""));
+  }
+
+  @Test
+  public void testNormalisedTextIsReturned() {
+    String text = "Already normalised text, with a single space between words.";
+    assertSame(text, HtmlTextStripper.strip(text));
+  }
+
+  @Test
+  public void testParserTags() {
+    assertNull(HtmlTextStripper.strip("a<title>b</title>"));
+    assertNull(HtmlTextStripper.strip("a</p>b"));
+    assertNull(HtmlTextStripper.strip("<b>a<div>b</b>c</div>"));
+    assertEquals("a c", HtmlTextStripper.strip("a<script>b</script>c"));
+    assertEquals("a b", HtmlTextStripper.strip("<body class=x>a<style>p { }</style>b</body>"));
+    assertEquals("a b", HtmlTextStripper.text("a<table><tr><td>b</table>"));
+  }
+
+  @Test
+  public void testSameAsJsoupForOutputFixtures() throws Exception {
+    for (File file : Corpus.files("output_plain")) {
+      String text = new Converter().streamToString(new FileInputStream(file));
+      // the formatted text of the pages needs no parser
+      assertNotNull(file.getName(), HtmlTextStripper.strip(text));
+      assertEquals(file.getName(), Jsoup.parse(text).text(), HtmlTextStripper.text(text));
+    }
+  }
+
+  @Test
+  public void testSameAsJsoupForPages() {
+    for (String html : Corpus.load("input_plain")) {
+      for (Element el : Jsoup.parse(html).select("p, div, li")) {
+        // the large ones only repeat the text of their children
+        String text = el.text();
+        if (text.length() > 5000)
+          continue;
+        assertEquals(text, Jsoup.parse(text).text(), HtmlTextStripper.text(text));
+        String markup = el.html();
+        if (markup.length() <= 2000)
+          assertEquals(markup, Jsoup.parse(markup).text(), HtmlTextStripper.text(markup));
+      }
+    }
+  }
+
+  @Test
+  public void testSameAsJsoupForRandomMarkup() {
+    Random random = new Random(42);
+    for (int run = 0; run < 20000; run++) {
+      StringBuilder sb = new StringBuilder();
+      int len = random.nextInt(12);
+      for (int i = 0; i < len; i++) {
+        sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+      }
+      String html = sb.toString();
+      assertEquals(html, Jsoup.parse(html).text(), HtmlTextStripper.text(html));
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package de.jetwick.snacktory.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IdentityIntMapTest {
+
+  @Test
+  public void testPutAndGet() {
+    IdentityIntMap<String> map = new IdentityIntMap<String>();
+    String a = new String("a");
+    String equalToA = new String("a");
+    map.put(a, 5);
+    assertTrue(map.containsKey(a));
+    // keys are compared by identity
+    assertFalse(map.containsKey(equalToA));
+    assertEquals(5, map.get(a, -1));
+    assertEquals(-1, map.get(equalToA, -1));
+    assertEquals(2, map.add(a, -3));
+    assertEquals(7, map.add(equalToA, 7));
+    assertEquals(2, map.size());
+  }
+
+  @Test
+  public void testGrow() {
+    IdentityIntMap<Object> map = new IdentityIntMap<Object>();
+    Object[] keys = new Object[1000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = new Object();
+      map.put(keys[i], i);
+    }
+    assertEquals(keys.length, map.size());
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(i, map.get(keys[i], -1));
+    }
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertFalse(map.containsKey(keys[0]));
+  }
+}
@@ -0,0 +1,57 @@
+package de.jetwick.snacktory.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MultiPatternCounterTest {
+
+  @Test
+  public void testCount() {
+    MultiPatternCounter counter = new MultiPatternCounter("&quot;", "&lt;", "&gt;", "px");
+    assertEquals(4, counter.getPatternCount());
+    int[] counts = new int[4];
+    counter.count("a &lt;b&gt; of 10px and &quot;10px&quot; &lt", counts);
+    assertArrayEquals(new int[]{2, 1, 1, 2}, counts);
+    assertEquals(6, counter.countAll("a &lt;b&gt; of 10px and &quot;10px&quot; &lt"));
+    assertEquals(0, counter.countAll(""));
+
+    // one pattern within another and non ascii chars
+    counter = new MultiPatternCounter("he", "she", "hers", "äh");
+    counts = new int[4];
+    counter.count("ushers ähe", counts);
+    assertArrayEquals(new int[]{2, 1, 1, 1}, counts);
+  }
+
+  @Test
+  public void testSameAsSHelper() {
+    String[] patterns = {"ab", "aa", "aba", "b", "bab", "abab"};
+    MultiPatternCounter counter = new MultiPatternCounter(patterns);
+    Random random = new Random(42);
+    for (int run = 0; run < 1000; run++) {
+      StringBuilder sb = new StringBuilder();
+      int len = random.nextInt(40);
+      for (int i = 0; i < len; i++) {
+        sb.append("abc".charAt(random.nextInt(3)));
+      }
+      String text = sb.toString();
+
+      int[] counts = new int[patterns.length];
+      counter.count(text, counts);
+      int sum = 0;
+      for (int p = 0; p < patterns.length; p++) {
+        assertEquals(text + " " + patterns[p], SHelper.count(text, patterns[p]), counts[p]);
+        sum += counts[p];
+      }
+      assertEquals(sum, counter.countAll(text));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyPattern() {
+    new MultiPatternCounter("a", "");
+  }
+}
@@ -45,6 +45,15 @@ public class SHelperTest {
         assertEquals(2, SHelper.count("&test;&test;", "&test;"));
         assertEquals(2, SHelper.count("&test; &test;", "&test;"));
         assertEquals(3, SHelper.count("&test; test; &test; plu &test;", "&test;"));
+        assertEquals(2, SHelper.count("aaaaa", "aa"));
+        assertEquals(0, SHelper.count("abc", ""));
+
+        // used to recurse once per occurrence
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append("px ");
+        }
+        assertEquals(100000, SHelper.count(sb.toString(), "px"));
     }
 
     @Test
@@ -0,0 +1,129 @@
+package de.jetwick.snacktory.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TextNormalizerTest {
+
+  private static final String[] FRAGMENTS = {
+    "a", "Bc", " ", "  ", "\n", "\t", "\r", "\f", "\u0001", "é", "€", "😀", "x y", " \n\t"
+  };
+
+  @Test
+  public void testNormalize() {
+    assertEquals("a b", TextNormalizer.normalize("  a \n\t b \n", TextNormalizer.COLLAPSE_WHITESPACE, -1, -1));
+    assertEquals("a \r b", TextNormalizer.normalize("a \r b \r", TextNormalizer.COLLAPSE_WHITESPACE, -1, -1));
+    assertEquals("a ", TextNormalizer.normalize("a  b", TextNormalizer.COLLAPSE_WHITESPACE, -1, 2));
+    assertEquals("a", TextNormalizer.normalize("a \r", TextNormalizer.COLLAPSE_WHITESPACE, 2, -1));
+    assertEquals("é", TextNormalizer.normalize("éé", 0, 3, -1));
+    assertEquals("", TextNormalizer.normalize("😀", 0, 3, -1));
+    assertEquals("ab", TextNormalizer.normalize(new StringBuilder("abc"), 0, -1, 2));
+
+    StringBuilder sb = new StringBuilder("x");
+    assertEquals(3, TextNormalizer.normalize(" a  b \r", TextNormalizer.COLLAPSE_WHITESPACE, -1, -1, sb));
+    assertEquals("xa b", sb.toString());
+  }
+
+  @Test
+  public void testUnchangedTextIsReturned() {
+    String text = "Nothing to collapse in this text.";
+    assertSame(text, TextNormalizer.normalize(text, TextNormalizer.COLLAPSE_WHITESPACE, 100, 100));
+    assertSame(text, SHelper.innerTrim(text));
+    assertSame(text, Utf8Utils.utf8truncate(text, text.length()));
+    assertSame("", SHelper.innerTrim(""));
+  }
+
+  @Test
+  public void testAppend() {
+    TextNormalizer text = new TextNormalizer(TextNormalizer.COLLAPSE_WHITESPACE, -1, 5);
+    text.append("  one ").append('\n').append("two three  ");
+    assertEquals("one t", text.toString());
+    assertEquals(13, text.length());
+    assertTrue(text.isFull());
+
+    text = new TextNormalizer(TextNormalizer.COLLAPSE_WHITESPACE, -1, 4);
+    text.append("one \r");
+    assertEquals("one", text.toString());
+    // the white space is kept if more text follows
+    assertFalse(text.isFull());
+    text.append("x");
+    assertEquals("one ", text.toString());
+    assertTrue(text.isFull());
+  }
+
+  @Test
+  public void testSameAsSeparateSteps() {
+    Random random = new Random(42);
+    for (int run = 0; run < 20000; run++) {
+      StringBuilder sb = new StringBuilder();
+      int len = random.nextInt(10);
+      for (int i = 0; i < len; i++) {
+        sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+      }
+      String input = sb.toString();
+      int maxBytes = random.nextInt(20) - 2;
+      int maxChars = random.nextInt(20) - 2;
+
+      String trimmed = innerTrim(input);
+      String expected = lessText(maxBytes < 0 ? trimmed : utf8truncate(trimmed, maxBytes), maxChars);
+      assertEquals(input, trimmed, TextNormalizer.normalize(input, TextNormalizer.COLLAPSE_WHITESPACE, -1, -1));
+      assertEquals(input, expected,
+          TextNormalizer.normalize(input, TextNormalizer.COLLAPSE_WHITESPACE, maxBytes, maxChars));
+      if (maxBytes >= 0)
+        assertEquals(input, utf8truncate(input, maxBytes), TextNormalizer.normalize(input, 0, maxBytes, -1));
+
+      TextNormalizer text = new TextNormalizer(TextNormalizer.COLLAPSE_WHITESPACE, maxBytes, maxChars);
+      int start = 0;
+      while (start < input.length()) {
+        int end = start + 1 + random.nextInt(input.length() - start);
+        text.append(input, start, end);
+        start = end;
+      }
+      assertEquals(input, expected, text.toString());
+      assertEquals(input, trimmed.length(), text.length());
+    }
+  }
+
+  // the implementations before TextNormalizer
+
+  private static String innerTrim(String str) {
+    StringBuilder sb = new StringBuilder();
+    boolean previousSpace = false;
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      if (c == ' ' || c == '\t' || c == '\n') {
+        previousSpace = true;
+        continue;
+      }
+      if (previousSpace)
+        sb.append(' ');
+      previousSpace = false;
+      sb.append(c);
+    }
+    return sb.toString().trim();
+  }
+
+  private static String utf8truncate(String input, int length) {
+    StringBuilder result = new StringBuilder();
+    int resultlen = 0;
+    for (int i = 0; i < input.length(); i++) {
+      char c = input.charAt(i);
+      int charlen = Utf8Utils.utf8Length(c);
+      if (resultlen + charlen > length)
+        break;
+      result.append(c);
+      resultlen += charlen;
+    }
+    return result.toString();
+  }
+
+  private static String lessText(String text, int maxTextLength) {
+    return maxTextLength >= 0 && text.length() > maxTextLength ? text.substring(0, maxTextLength) : text;
+  }
+}